@@ -0,0 +1,104 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Element;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class JenkinsClientBenchmark {
+
+    private static final String JOB_NAME = "folder/sub folder/job";
+
+    private static final byte[] BUILD_JSON = "{\"_class\":\"hudson.model.FreeStyleBuild\",\"building\":false,\"result\":\"SUCCESS\",\"timestamp\":1536000000000,\"estimatedDuration\":120000}".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] QUEUE_ITEM_JSON = "{\"_class\":\"hudson.model.Queue$LeftItem\",\"cancelled\":false,\"executable\":{\"_class\":\"hudson.model.FreeStyleBuild\",\"number\":42}}".getBytes(StandardCharsets.UTF_8);
+
+    private JenkinsClient jenkinsClient;
+
+    private Map<String, String> parameters;
+
+    private Document document;
+
+    @Setup
+    public void setUp() throws Exception {
+        jenkinsClient = new DefaultJenkinsClient(new StubHttpClient(this::handle), new URI("http://localhost:8080"));
+        parameters = Collections.singletonMap("foo", "bar");
+        document = createDocument();
+    }
+
+    private HttpResponse handle(HttpUriRequest request) {
+        String path = request.getURI().getPath();
+        if (path.endsWith("/buildWithParameters")) {
+            HttpResponse response = StubHttpClient.response(HttpStatus.SC_CREATED);
+            response.setHeader(HttpHeaders.LOCATION, "http://localhost:8080/queue/item/12345/");
+            return response;
+        } else if (path.startsWith("/queue/item/")) {
+            return json(QUEUE_ITEM_JSON);
+        } else if (path.endsWith("/api/json")) {
+            return json(BUILD_JSON);
+        }
+        return StubHttpClient.response(HttpStatus.SC_OK);
+    }
+
+    private HttpResponse json(byte[] body) {
+        HttpResponse response = StubHttpClient.response(HttpStatus.SC_OK);
+        response.setEntity(new ByteArrayEntity(body, ContentType.APPLICATION_JSON));
+        return response;
+    }
+
+    private Document createDocument() {
+        Document document = DocumentHelper.createDocument();
+        Element executionElement = document.addElement("notification").addElement("executions").addElement("execution");
+        executionElement.addAttribute("id", "1234");
+        executionElement.addAttribute("href", "http://localhost:4440/project/foo/execution/show/1234");
+        executionElement.addAttribute("status", "succeeded");
+        executionElement.addAttribute("project", "foo");
+        executionElement.addElement("user").addText("admin");
+        Element jobElement = executionElement.addElement("job");
+        jobElement.addAttribute("id", "3b8a86d5-4fc3-4cc1-95a2-8b51421c2069");
+        jobElement.addElement("name").addText("deploy");
+        jobElement.addElement("group").addText("services/api");
+        return document;
+    }
+
+    @Benchmark
+    public long build() throws Exception {
+        return jenkinsClient.build(JOB_NAME, parameters, "token");
+    }
+
+    @Benchmark
+    public Build getBuild() throws Exception {
+        return jenkinsClient.getBuild(JOB_NAME, 42);
+    }
+
+    @Benchmark
+    public QueueItem getQueueItem() throws Exception {
+        return jenkinsClient.getQueueItem(12345);
+    }
+
+    @Benchmark
+    public void deliver() throws Exception {
+        jenkinsClient.deliver(document);
+    }
+}
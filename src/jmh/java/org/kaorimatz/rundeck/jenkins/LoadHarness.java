@@ -0,0 +1,258 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+public class LoadHarness {
+
+    private final int builds = Integer.getInteger("harness.builds", 2000);
+
+    private final int concurrency = Integer.getInteger("harness.concurrency", 1000);
+
+    private final long durationMillis = TimeUnit.SECONDS.toMillis(Long.getLong("harness.durationSeconds", 0));
+
+    private final int jobs = Integer.getInteger("harness.jobs", 10);
+
+    private final int serverThreads = Integer.getInteger("harness.serverThreads", 64);
+
+    private final long latencyMillis = Long.getLong("harness.latencyMillis", 20);
+
+    private final long queueDelayMillis = Long.getLong("harness.queueDelayMillis", 2000);
+
+    private final long buildDurationMillis = Long.getLong("harness.buildDurationMillis", 10000);
+
+    private final int logLinesPerSecond = Integer.getInteger("harness.logLinesPerSecond", 100);
+
+    private final double errorRate = Double.parseDouble(System.getProperty("harness.errorRate", "0"));
+
+    private final boolean crumbRequired = Boolean.getBoolean("harness.crumbRequired");
+
+    private final long maxPollIntervalMillis = Long.getLong("harness.maxPollIntervalMillis", 10000);
+
+    private final boolean logConsoleOutput = Boolean.parseBoolean(System.getProperty("harness.logConsoleOutput", "true"));
+
+    private final boolean followConsoleOutput = Boolean.getBoolean("harness.followConsoleOutput");
+
+    private final boolean callback = Boolean.getBoolean("harness.callback");
+
+    private final long callbackVerificationIntervalMillis = Long.getLong("harness.callbackVerificationIntervalMillis", 300000);
+
+    private final int maxRequestsPerSecond = Integer.getInteger("harness.maxRequestsPerSecond", 0);
+
+    private final int maxConcurrentRequests = Integer.getInteger("harness.maxConcurrentRequests", 0);
+
+    private final boolean compression = Boolean.parseBoolean(System.getProperty("harness.compression", "true"));
+
+    private final int controllers = Integer.getInteger("harness.controllers", 1);
+
+    private final int executors = Integer.getInteger("harness.executors", 100);
+
+    private final int artifactBytes = Integer.getInteger("harness.artifactBytes", 0);
+
+    private final long consoleOutputHeadBytes = Long.getLong("harness.consoleOutputHeadBytes", 0);
+
+    private final long consoleOutputTailBytes = Long.getLong("harness.consoleOutputTailBytes", 0);
+
+    private final long statusCacheTtlMillis = Long.getLong("harness.statusCacheTtlMillis", 1000);
+
+    private final AtomicInteger startedBuilds = new AtomicInteger();
+
+    private final LongAdder succeededBuilds = new LongAdder();
+
+    private final LongAdder failedBuilds = new LongAdder();
+
+    private final LongAdder consoleOutputLines = new LongAdder();
+
+    private final LongAdder downloadedArtifacts = new LongAdder();
+
+    private final AtomicLong maxHeapUsed = new AtomicLong();
+
+    private final AtomicInteger maxThreadCount = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        new LoadHarness().run();
+    }
+
+    private void run() throws Exception {
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "harness-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        sampler.scheduleAtFixedRate(() -> {
+            maxHeapUsed.accumulateAndGet(memoryMXBean.getHeapMemoryUsage().getUsed(), Math::max);
+            maxThreadCount.accumulateAndGet(threadMXBean.getThreadCount(), Math::max);
+        }, 0, 100, TimeUnit.MILLISECONDS);
+
+        List<StubJenkinsServer> servers = new ArrayList<>();
+        try {
+            StringJoiner baseUrls = new StringJoiner(",");
+            for (int i = 0; i < controllers; i++) {
+                StubJenkinsServer server = new StubJenkinsServer(serverThreads);
+                servers.add(server);
+                server.setLatencyMillis(latencyMillis)
+                        .setQueueDelayMillis(queueDelayMillis)
+                        .setBuildDurationMillis(buildDurationMillis)
+                        .setLogLinesPerSecond(logLinesPerSecond)
+                        .setErrorRate(errorRate)
+                        .setCrumbRequired(crumbRequired)
+                        .setCompression(compression)
+                        .setArtifactBytes(artifactBytes)
+                        // The first controller has the most executors, so routing has something to tell apart
+                        .setExecutors(Math.max(1, executors / (i + 1)));
+                baseUrls.add(server.getBaseUrl());
+            }
+
+            JenkinsControllerRegistry.getInstance().setRequestLimits(maxRequestsPerSecond, maxConcurrentRequests);
+            JenkinsMetrics metrics = new JenkinsMetrics(JenkinsMetrics.getInstance());
+            JenkinsControllerRouter router = new DefaultJenkinsClientBuilder(baseUrls.toString())
+                    .setMetrics(metrics)
+                    .setStatusCacheTtl(statusCacheTtlMillis)
+                    .buildRouter();
+            PollingStrategy pollingStrategy = new AdaptivePollingStrategy(TimeUnit.SECONDS.toMillis(1), maxPollIntervalMillis, 2, 0.2);
+
+            if (durationMillis > 0) {
+                System.out.printf("Running builds for %d s (concurrency=%d) against %s%n", TimeUnit.MILLISECONDS.toSeconds(durationMillis), concurrency, baseUrls);
+            } else {
+                System.out.printf("Running %d builds (concurrency=%d) against %s%n", builds, concurrency, baseUrls);
+            }
+
+            long startTime = System.currentTimeMillis();
+            long deadline = startTime + durationMillis;
+            AtomicInteger threadNumber = new AtomicInteger();
+            ExecutorService steps = Executors.newFixedThreadPool(concurrency, runnable -> {
+                Thread thread = new Thread(runnable, String.format("harness-step-%d", threadNumber.incrementAndGet()));
+                thread.setDaemon(true);
+                return thread;
+            });
+            for (int i = 0; i < concurrency; i++) {
+                steps.execute(() -> runSteps(router, metrics, pollingStrategy, deadline));
+            }
+            steps.shutdown();
+            while (!steps.awaitTermination(10, TimeUnit.SECONDS)) {
+                System.out.printf("... %d succeeded, %d failed%n", succeededBuilds.sum(), failedBuilds.sum());
+            }
+            long elapsed = System.currentTimeMillis() - startTime;
+            sampler.shutdownNow();
+            report(servers, metrics, elapsed, threadMXBean);
+        } finally {
+            for (StubJenkinsServer server : servers) {
+                server.close();
+            }
+        }
+        JenkinsHttpClientRegistry.getInstance().close();
+    }
+
+    private void runSteps(JenkinsControllerRouter router, JenkinsMetrics metrics, PollingStrategy pollingStrategy, long deadline) {
+        while (true) {
+            int build = startedBuilds.getAndIncrement();
+            // A positive duration turns the run into a soak test that keeps starting builds until the deadline
+            if (durationMillis > 0 ? System.currentTimeMillis() >= deadline : build >= builds) {
+                return;
+            }
+            String jobName = String.format("harness/job-%d", build % jobs);
+            Map<String, String> parameters = new HashMap<>();
+            parameters.put("BUILD", String.valueOf(build));
+            JenkinsCallback jenkinsCallback = null;
+            try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger((level, message) -> consoleOutputLines.increment())) {
+                PollingStrategy strategy = pollingStrategy;
+                if (callback) {
+                    JenkinsCallbackServer callbackServer = JenkinsCallbackServer.getInstance(0);
+                    jenkinsCallback = callbackServer.register(new URI(String.format("http://127.0.0.1:%d", callbackServer.getPort())));
+                    parameters.put("RUNDECK_CALLBACK_URL", jenkinsCallback.getUrl());
+                    strategy = new CallbackPollingStrategy(pollingStrategy, callbackVerificationIntervalMillis, jenkinsCallback.getFuture());
+                }
+                JenkinsBuildOptions options = new JenkinsBuildOptions()
+                        .setPollingStrategy(strategy)
+                        .setLogConsoleOutput(logConsoleOutput)
+                        .setFollowConsoleOutput(followConsoleOutput)
+                        .setConsoleOutputTail(new ConsoleOutputTail(consoleOutputHeadBytes, consoleOutputTailBytes))
+                        .setCallback(jenkinsCallback);
+                JenkinsBuildResult result = new JenkinsBuildExecutor(router, logger, JenkinsBuildPoller.getInstance(), metrics).execute(jobName, parameters, options);
+                if (artifactBytes > 0) {
+                    downloadArtifacts(result.getController(), jobName, result.getBuild().getNumber());
+                }
+                succeededBuilds.increment();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (failedBuilds.sum() < 10) {
+                    System.err.printf("Build %d of %s failed: %s%n", build, jobName, e);
+                }
+                failedBuilds.increment();
+            } finally {
+                if (jenkinsCallback != null) {
+                    jenkinsCallback.close();
+                }
+            }
+        }
+    }
+
+    private void downloadArtifacts(JenkinsClient jenkinsClient, String jobName, int buildNumber) throws Exception {
+        Path directory = Files.createTempDirectory("harness-artifacts");
+        try {
+            List<Path> paths = new JenkinsArtifactDownloader(jenkinsClient).download(jobName, buildNumber, directory);
+            downloadedArtifacts.add(paths.size());
+        } finally {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private void report(List<StubJenkinsServer> servers, JenkinsMetrics metrics, long elapsed, ThreadMXBean threadMXBean) {
+        double seconds = elapsed / 1000.0;
+        System.out.printf("%nFinished in %.1f s: %d succeeded, %d failed, %d console output messages, %d artifacts downloaded%n",
+                seconds, succeededBuilds.sum(), failedBuilds.sum(), consoleOutputLines.sum(), downloadedArtifacts.sum());
+        System.out.printf("%-12s %10s %8s %8s %10s %10s %8s %8s %8s %8s%n", "endpoint", "requests", "errors", "req/s", "KiB recv", "KiB gzip", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        long totalRequests = 0;
+        for (JenkinsEndpoint endpoint : JenkinsEndpoint.values()) {
+            long requests = 0;
+            long errors = 0;
+            for (StubJenkinsServer server : servers) {
+                requests += server.getRequestCount(endpoint);
+                errors += server.getErrorCount(endpoint);
+            }
+            if (requests == 0) {
+                continue;
+            }
+            totalRequests += requests;
+            JenkinsEndpointMetrics endpointMetrics = metrics.getEndpointMetrics(endpoint);
+            System.out.printf("%-12s %10d %8d %8.1f %10d %10d %8d %8d %8d %8d%n", endpoint.getMetricName(), requests, errors, requests / seconds,
+                    endpointMetrics.getBytesReceived() / 1024, endpointMetrics.getCompressedBytesReceived() / 1024, endpointMetrics.getLatencyMillis50thPercentile(), endpointMetrics.getLatencyMillis90thPercentile(),
+                    endpointMetrics.getLatencyMillis99thPercentile(), endpointMetrics.getMaxLatencyMillis());
+        }
+        System.out.printf("%-12s %10d %8s %8.1f%n", "total", totalRequests, "", totalRequests / seconds);
+        System.out.println(metrics.getSummary());
+        if (servers.size() > 1) {
+            StringJoiner triggers = new StringJoiner(", ");
+            for (StubJenkinsServer server : servers) {
+                triggers.add(String.valueOf(server.getRequestCount(JenkinsEndpoint.TRIGGER)));
+            }
+            System.out.printf("Triggers per controller: %s%n", triggers);
+        }
+        System.out.printf("Threads: max %d sampled, peak %d%n", maxThreadCount.get(), threadMXBean.getPeakThreadCount());
+        System.out.printf("Heap: max %d MiB used%n", maxHeapUsed.get() / (1024 * 1024));
+    }
+}
@@ -0,0 +1,82 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LogTextBenchmark {
+
+    @Param({"1048576", "16777216"})
+    private int logSize;
+
+    private HttpServer server;
+
+    private JenkinsClient jenkinsClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        byte[] log = createLog(logSize);
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/plain;charset=UTF-8");
+            exchange.getResponseHeaders().add("X-Text-Size", String.valueOf(log.length));
+            exchange.sendResponseHeaders(200, log.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(log);
+            }
+        });
+        server.start();
+        String baseUrl = String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+        jenkinsClient = new DefaultJenkinsClientBuilder(baseUrl).build();
+    }
+
+    private static byte[] createLog(int size) {
+        StringBuilder builder = new StringBuilder(size);
+        int lineNumber = 0;
+        while (builder.length() < size) {
+            builder.append(String.format("[INFO] %08d Compiling 42 source files to /var/lib/jenkins/workspace/job/target/classes%n", lineNumber++));
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Benchmark
+    public LogText getLogText(Blackhole blackhole) throws Exception {
+        LogText logText = jenkinsClient.getLogText("job", 1, 0);
+        new DefaultConsoleOutputLogger((level, message) -> blackhole.consume(message)).log(logText.getContent());
+        return logText;
+    }
+
+    @Benchmark
+    public LogTextProgress streamLogTextToDefaultLogger(Blackhole blackhole) throws Exception {
+        return jenkinsClient.getLogText("job", 1, 0, new DefaultConsoleOutputLogger((level, message) -> blackhole.consume(message)));
+    }
+
+    @Benchmark
+    public LogTextProgress streamLogTextToBatchingLogger(Blackhole blackhole) throws Exception {
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger((level, message) -> blackhole.consume(message))) {
+            return jenkinsClient.getLogText("job", 1, 0, logger);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+public class AdaptivePollingStrategy implements PollingStrategy {
+
+    private final long initialInterval;
+
+    private final long maxInterval;
+
+    private final double multiplier;
+
+    private final double jitter;
+
+    public AdaptivePollingStrategy(long initialInterval, long maxInterval, double multiplier, double jitter) {
+        this.initialInterval = initialInterval;
+        this.maxInterval = Math.max(initialInterval, maxInterval);
+        this.multiplier = multiplier;
+        this.jitter = jitter;
+    }
+
+    @Override
+    public long getQueuedDelay(int attempt) {
+        return getBackoffDelay(attempt);
+    }
+
+    @Override
+    public long getRunningDelay(int attempt, Build build) {
+        if (build == null || build.getTimestamp() <= 0 || build.getEstimatedDuration() <= 0) {
+            return getBackoffDelay(attempt);
+        }
+        // Sleep until the expected finish, then back off relative to how long the build has overrun its estimate
+        long remaining = build.getTimestamp() + build.getEstimatedDuration() - System.currentTimeMillis();
+        if (remaining > 0) {
+            return clamp(remaining);
+        }
+        return withJitter(-remaining);
+    }
+
+    @Override
+    public long getLoggingDelay(int attempt) {
+        return getBackoffDelay(attempt);
+    }
+
+    private long getBackoffDelay(int attempt) {
+        double delay = initialInterval * Math.pow(multiplier, attempt);
+        return withJitter(delay >= maxInterval ? maxInterval : (long) delay);
+    }
+
+    private long withJitter(long delay) {
+        double factor = 1 + jitter * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return clamp((long) (delay * factor));
+    }
+
+    private long clamp(long delay) {
+        return Math.min(maxInterval, Math.max(initialInterval, delay));
+    }
+}
@@ -0,0 +1,27 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Artifact {
+
+    private final String relativePath;
+
+    private final String fileName;
+
+    @JsonCreator
+    public Artifact(@JsonProperty("relativePath") String relativePath, @JsonProperty("fileName") String fileName) {
+        this.relativePath = relativePath;
+        this.fileName = fileName;
+    }
+
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+}
@@ -0,0 +1,11 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncHttpClient {
+
+    CompletableFuture<HttpResponse> execute(HttpUriRequest request);
+}
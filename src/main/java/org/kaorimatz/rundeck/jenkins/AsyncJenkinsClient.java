@@ -0,0 +1,27 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface AsyncJenkinsClient {
+
+    CompletableFuture<Build> getBuildAsync(String jobName, int buildNumber);
+
+    // The lines are passed to the logger on the thread that completes the response, so it should only buffer them
+    CompletableFuture<LogTextProgress> getLogTextAsync(String jobName, int buildNumber, long start, ConsoleOutputLogger consoleOutputLogger);
+
+    CompletableFuture<QueueItem> getQueueItemAsync(long queueItemId);
+
+    CompletableFuture<Queue> getQueueAsync();
+
+    CompletableFuture<ComputerSet> getComputerSetAsync();
+
+    CompletableFuture<Job> getJobAsync(String jobName, int maxBuilds);
+
+    default CompletableFuture<QueueItem> pollQueueItemAsync(long queueItemId) {
+        return getQueueItemAsync(queueItemId);
+    }
+
+    default CompletableFuture<Build> pollBuildAsync(String jobName, int buildNumber) {
+        return getBuildAsync(jobName, buildNumber);
+    }
+}
@@ -0,0 +1,206 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.dtolabs.rundeck.core.Constants;
+import com.dtolabs.rundeck.plugins.PluginLogger;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+
+public class BatchingConsoleOutputLogger implements ConsoleOutputLogger {
+
+    private static final int MAX_BATCH_LINES = 200;
+
+    private static final int MAX_BATCH_LENGTH = 65536;
+
+    private static final long MAX_BATCH_AGE = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private static final long RATE_WINDOW = TimeUnit.SECONDS.toNanos(1);
+
+    private final PluginLogger pluginLogger;
+
+    private final long maxBytes;
+
+    private final int maxLinesPerSecond;
+
+    private final int headLines;
+
+    private final int tailLines;
+
+    private final StringBuilder partialLine = new StringBuilder();
+
+    private final StringBuilder batch = new StringBuilder();
+
+    private final Deque<String> tail = new ArrayDeque<>();
+
+    private int batchLines;
+
+    private long batchStartTime;
+
+    private long lines;
+
+    private long omittedLines;
+
+    private long loggedBytes;
+
+    private boolean truncated;
+
+    private long rateWindowStartTime;
+
+    private int rateWindowLines;
+
+    private long suppressedLines;
+
+    public BatchingConsoleOutputLogger(PluginLogger pluginLogger) {
+        this(pluginLogger, 0, 0, 0, 0);
+    }
+
+    public BatchingConsoleOutputLogger(PluginLogger pluginLogger, long maxBytes, int maxLinesPerSecond, int headLines, int tailLines) {
+        this.pluginLogger = pluginLogger;
+        this.maxBytes = maxBytes;
+        this.maxLinesPerSecond = maxLinesPerSecond;
+        this.headLines = headLines;
+        this.tailLines = tailLines;
+    }
+
+    @Override
+    public void log(String consoleOutput) {
+        int offset = 0;
+        for (int i = 0; i < consoleOutput.length(); i++) {
+            if (consoleOutput.charAt(i) == '\n') {
+                partialLine.append(consoleOutput, offset, i);
+                acceptPartialLine();
+                offset = i + 1;
+            }
+        }
+        partialLine.append(consoleOutput, offset, consoleOutput.length());
+        if (partialLine.length() >= MAX_LINE_LENGTH) {
+            acceptPartialLine();
+        }
+        if (batchLines > 0 && System.nanoTime() - batchStartTime >= MAX_BATCH_AGE) {
+            flush();
+        }
+    }
+
+    private void acceptPartialLine() {
+        int end = partialLine.length();
+        if (end > 0 && partialLine.charAt(end - 1) == '\r') {
+            end--;
+        }
+        String line = partialLine.substring(0, end);
+        partialLine.setLength(0);
+        accept(line);
+    }
+
+    private void accept(String line) {
+        lines++;
+        if ((headLines <= 0 && tailLines <= 0) || lines <= headLines) {
+            emit(line);
+            return;
+        }
+        if (tailLines <= 0) {
+            omittedLines++;
+            return;
+        }
+        tail.addLast(line);
+        if (tail.size() > tailLines) {
+            tail.removeFirst();
+            omittedLines++;
+        }
+    }
+
+    private void emit(String line) {
+        if (maxLinesPerSecond > 0) {
+            long now = System.nanoTime();
+            if (now - rateWindowStartTime >= RATE_WINDOW) {
+                appendSuppressedLinesMarker();
+                rateWindowStartTime = now;
+                rateWindowLines = 0;
+            }
+            if (rateWindowLines >= maxLinesPerSecond) {
+                suppressedLines++;
+                return;
+            }
+            rateWindowLines++;
+        }
+        append(line);
+    }
+
+    private void append(String line) {
+        if (truncated) {
+            return;
+        }
+        long bytes = getUtf8Length(line) + 1;
+        if (maxBytes > 0 && loggedBytes + bytes > maxBytes) {
+            truncated = true;
+            appendToBatch(String.format("... console output truncated at %d bytes ...", maxBytes));
+            return;
+        }
+        loggedBytes += bytes;
+        appendToBatch(line);
+    }
+
+    private void appendSuppressedLinesMarker() {
+        if (suppressedLines > 0) {
+            appendToBatch(String.format("... %d lines suppressed by the rate limit of %d lines per second ...", suppressedLines, maxLinesPerSecond));
+            suppressedLines = 0;
+        }
+    }
+
+    private void appendToBatch(String line) {
+        if (batchLines == 0) {
+            batchStartTime = System.nanoTime();
+        } else {
+            batch.append('\n');
+        }
+        batch.append(line);
+        batchLines++;
+        if (batchLines >= MAX_BATCH_LINES || batch.length() >= MAX_BATCH_LENGTH) {
+            flush();
+        }
+    }
+
+    private static long getUtf8Length(String line) {
+        long length = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800 || Character.isSurrogate(c)) {
+                length += 2;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    @Override
+    public void flush() {
+        if (batchLines == 0) {
+            return;
+        }
+        pluginLogger.log(Constants.INFO_LEVEL, batch.toString());
+        batch.setLength(0);
+        batchLines = 0;
+    }
+
+    @Override
+    public void close() {
+        if (partialLine.length() > 0) {
+            acceptPartialLine();
+        }
+        appendSuppressedLinesMarker();
+        if (omittedLines > 0) {
+            appendToBatch(String.format("... %d lines omitted ...", omittedLines));
+            omittedLines = 0;
+        }
+        for (String line : tail) {
+            append(line);
+        }
+        tail.clear();
+        flush();
+    }
+}
@@ -11,10 +11,20 @@ public class Build {
 
     private final Result result;
 
+    private final long timestamp;
+
+    private final long estimatedDuration;
+
+    private final int number;
+
     @JsonCreator
-    public Build(@JsonProperty("building") boolean building, @JsonProperty("result") Result result) {
+    public Build(@JsonProperty("building") boolean building, @JsonProperty("result") Result result, @JsonProperty("timestamp") long timestamp, @JsonProperty("estimatedDuration") long estimatedDuration,
+                 @JsonProperty("number") int number) {
         this.building = building;
         this.result = result;
+        this.timestamp = timestamp;
+        this.estimatedDuration = estimatedDuration;
+        this.number = number;
     }
 
     public boolean isBuilding() {
@@ -24,4 +34,16 @@ public class Build {
     public Result getResult() {
         return result;
     }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getEstimatedDuration() {
+        return estimatedDuration;
+    }
+
+    public int getNumber() {
+        return number;
+    }
 }
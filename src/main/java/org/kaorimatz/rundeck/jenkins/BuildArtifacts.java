@@ -0,0 +1,30 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.Collections;
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class BuildArtifacts {
+
+    private final List<Artifact> artifacts;
+
+    private final List<Fingerprint> fingerprints;
+
+    @JsonCreator
+    public BuildArtifacts(@JsonProperty("artifacts") List<Artifact> artifacts, @JsonProperty("fingerprint") List<Fingerprint> fingerprints) {
+        this.artifacts = artifacts != null ? artifacts : Collections.emptyList();
+        this.fingerprints = fingerprints != null ? fingerprints : Collections.emptyList();
+    }
+
+    public List<Artifact> getArtifacts() {
+        return artifacts;
+    }
+
+    public List<Fingerprint> getFingerprints() {
+        return fingerprints;
+    }
+}
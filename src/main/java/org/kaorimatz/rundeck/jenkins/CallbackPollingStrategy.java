@@ -0,0 +1,34 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.concurrent.CompletableFuture;
+
+public class CallbackPollingStrategy implements PollingStrategy {
+
+    private final PollingStrategy pollingStrategy;
+
+    private final long verificationInterval;
+
+    private final CompletableFuture<?> callback;
+
+    public CallbackPollingStrategy(PollingStrategy pollingStrategy, long verificationInterval, CompletableFuture<?> callback) {
+        this.pollingStrategy = pollingStrategy;
+        this.verificationInterval = verificationInterval;
+        this.callback = callback;
+    }
+
+    @Override
+    public long getQueuedDelay(int attempt) {
+        return callback.isDone() ? pollingStrategy.getQueuedDelay(attempt) : verificationInterval;
+    }
+
+    @Override
+    public long getRunningDelay(int attempt, Build build) {
+        // The callback may be sent before Jenkins marks the build as finished, so poll normally after it arrives
+        return callback.isDone() ? pollingStrategy.getRunningDelay(attempt, build) : verificationInterval;
+    }
+
+    @Override
+    public long getLoggingDelay(int attempt) {
+        return pollingStrategy.getLoggingDelay(attempt);
+    }
+}
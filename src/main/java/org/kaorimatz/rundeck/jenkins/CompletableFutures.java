@@ -0,0 +1,45 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+final class CompletableFutures {
+
+    private CompletableFutures() {
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable throwable) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(throwable);
+        return future;
+    }
+
+    static Throwable unwrap(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException) && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        return throwable;
+    }
+
+    // Rethrows the cause of a failed future as one of the checked exceptions of the client, so that callers can write
+    // "throw CompletableFutures.rethrow(e)". Any other checked exception is wrapped in a JenkinsClientException
+    static JenkinsClientException rethrow(ExecutionException e) throws EncoderException, IOException {
+        Throwable cause = unwrap(e);
+        if (cause instanceof JenkinsClientException) {
+            return (JenkinsClientException) cause;
+        } else if (cause instanceof EncoderException) {
+            throw (EncoderException) cause;
+        } else if (cause instanceof IOException) {
+            throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new JenkinsClientException(cause.getMessage(), cause);
+    }
+}
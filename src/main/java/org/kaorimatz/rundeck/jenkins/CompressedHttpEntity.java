@@ -0,0 +1,86 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.LongConsumer;
+import java.util.zip.GZIPInputStream;
+
+public class CompressedHttpEntity extends HttpEntityWrapper {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final boolean deflate;
+
+    private volatile LongConsumer compressedBytesConsumer = bytes -> {
+    };
+
+    private InputStream content;
+
+    public CompressedHttpEntity(HttpEntity entity, boolean deflate) {
+        super(entity);
+        this.deflate = deflate;
+    }
+
+    public void setCompressedBytesConsumer(LongConsumer compressedBytesConsumer) {
+        this.compressedBytesConsumer = compressedBytesConsumer;
+    }
+
+    @Override
+    public synchronized InputStream getContent() throws IOException {
+        // The same stream is returned on every call so that consuming the entity after reading it is harmless
+        if (content != null) {
+            return content;
+        }
+        InputStream compressed = new FilterInputStream(super.getContent()) {
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    compressedBytesConsumer.accept(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) {
+                    compressedBytesConsumer.accept(n);
+                }
+                return n;
+            }
+        };
+        // Decompressed as it is read, so that a large console log is never held in memory
+        content = deflate ? new DeflateInputStream(compressed) : new GZIPInputStream(compressed, BUFFER_SIZE);
+        return content;
+    }
+
+    @Override
+    public Header getContentEncoding() {
+        return null;
+    }
+
+    @Override
+    public long getContentLength() {
+        return -1;
+    }
+
+    @Override
+    public void writeTo(OutputStream outputStream) throws IOException {
+        try (InputStream inputStream = getContent()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int n;
+            while ((n = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, n);
+            }
+        }
+    }
+}
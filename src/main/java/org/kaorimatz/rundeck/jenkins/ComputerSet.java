@@ -0,0 +1,27 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class ComputerSet {
+
+    private final int busyExecutors;
+
+    private final int totalExecutors;
+
+    @JsonCreator
+    public ComputerSet(@JsonProperty("busyExecutors") int busyExecutors, @JsonProperty("totalExecutors") int totalExecutors) {
+        this.busyExecutors = busyExecutors;
+        this.totalExecutors = totalExecutors;
+    }
+
+    public int getBusyExecutors() {
+        return busyExecutors;
+    }
+
+    public int getTotalExecutors() {
+        return totalExecutors;
+    }
+}
@@ -0,0 +1,39 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.io.IOException;
+import java.io.Reader;
+
+public final class ConsoleOutputLines {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private ConsoleOutputLines() {
+    }
+
+    public static void copy(Reader reader, ConsoleOutputLogger consoleOutputLogger) throws IOException {
+        char[] buffer = new char[BUFFER_SIZE];
+        StringBuilder line = new StringBuilder();
+        int length;
+        while ((length = reader.read(buffer)) != -1) {
+            int offset = 0;
+            for (int i = 0; i < length; i++) {
+                if (buffer[i] == '\n') {
+                    line.append(buffer, offset, i + 1 - offset);
+                    consoleOutputLogger.log(line.toString());
+                    line.setLength(0);
+                    offset = i + 1;
+                }
+            }
+            line.append(buffer, offset, length - offset);
+            if (line.length() >= MAX_LINE_LENGTH) {
+                consoleOutputLogger.log(line.toString());
+                line.setLength(0);
+            }
+        }
+        if (line.length() > 0) {
+            consoleOutputLogger.log(line.toString());
+        }
+    }
+}
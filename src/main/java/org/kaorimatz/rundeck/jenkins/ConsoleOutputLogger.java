@@ -1,8 +1,18 @@
 package org.kaorimatz.rundeck.jenkins;
 
+import java.io.Closeable;
+import java.io.Flushable;
 import java.io.IOException;
 
-public interface ConsoleOutputLogger {
+public interface ConsoleOutputLogger extends Closeable, Flushable {
 
     void log(String consoleOutput) throws IOException;
+
+    @Override
+    default void flush() throws IOException {
+    }
+
+    @Override
+    default void close() throws IOException {
+    }
 }
@@ -0,0 +1,99 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+public class ConsoleOutputSpool implements ConsoleOutputLogger {
+
+    // Most polls fetch a few lines, which are not worth a file
+    private static final int MEMORY_LIMIT_CHARS = 32 * 1024;
+
+    private final Deque<String> buffered = new ArrayDeque<>();
+
+    private int bufferedChars;
+
+    private Path file;
+
+    private DataOutputStream output;
+
+    private DataInputStream input;
+
+    @Override
+    public void log(String consoleOutput) throws IOException {
+        if (input != null) {
+            throw new IllegalStateException("The console output spool is being read");
+        }
+        if (output == null && bufferedChars + consoleOutput.length() <= MEMORY_LIMIT_CHARS) {
+            buffered.add(consoleOutput);
+            bufferedChars += consoleOutput.length();
+            return;
+        }
+        if (output == null) {
+            // Created once and reused, as a watch spools the console output of every poll
+            if (file == null) {
+                file = Files.createTempFile("jenkins-console-output", ".log");
+            }
+            output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)));
+        }
+        // Each piece is kept as it was logged, so that it can be read back one at a time
+        byte[] bytes = consoleOutput.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    public String next() throws IOException {
+        // The pieces kept in memory were logged before any that were written to the file
+        String consoleOutput = buffered.poll();
+        if (consoleOutput != null) {
+            bufferedChars -= consoleOutput.length();
+            return consoleOutput;
+        }
+        if (output == null) {
+            return null;
+        }
+        if (input == null) {
+            output.close();
+            input = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+        }
+        int length;
+        try {
+            length = input.readInt();
+        } catch (EOFException e) {
+            // Drained, so the spool can be written again
+            input.close();
+            input = null;
+            output = null;
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffered.clear();
+        bufferedChars = 0;
+        try {
+            if (output != null) {
+                output.close();
+            }
+            if (input != null) {
+                input.close();
+            }
+        } finally {
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
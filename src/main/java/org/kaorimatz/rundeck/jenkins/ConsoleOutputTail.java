@@ -0,0 +1,42 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+
+import java.io.IOException;
+
+// Byte-based only, as Jenkins serves the log from a byte offset and cannot find where the last lines start without
+// sending them. Lines are counted afterwards, by the logger
+public final class ConsoleOutputTail {
+
+    public static final ConsoleOutputTail WHOLE = new ConsoleOutputTail(0, 0);
+
+    private final long headBytes;
+
+    private final long tailBytes;
+
+    public ConsoleOutputTail(long headBytes, long tailBytes) {
+        this.headBytes = Math.max(headBytes, 0);
+        this.tailBytes = Math.max(tailBytes, 0);
+    }
+
+    public boolean isWhole() {
+        return tailBytes == 0;
+    }
+
+    public long skip(JenkinsClient jenkinsClient, String jobName, int buildNumber, ConsoleOutputLogger consoleOutputLogger)
+            throws JenkinsClientException, EncoderException, IOException {
+
+        if (isWhole()) {
+            return 0;
+        }
+        long size = jenkinsClient.getLogTextSize(jobName, buildNumber);
+        if (size <= headBytes + tailBytes) {
+            return 0;
+        }
+        if (headBytes > 0) {
+            jenkinsClient.getLogText(jobName, buildNumber, 0, headBytes, false, consoleOutputLogger);
+        }
+        consoleOutputLogger.log(String.format("... %s of console output omitted ...\n", JenkinsMetrics.formatBytes(size - headBytes - tailBytes)));
+        return size - tailBytes;
+    }
+}
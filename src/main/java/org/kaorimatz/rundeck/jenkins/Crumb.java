@@ -0,0 +1,27 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Crumb {
+
+    private final String crumbRequestField;
+
+    private final String crumb;
+
+    @JsonCreator
+    public Crumb(@JsonProperty("crumbRequestField") String crumbRequestField, @JsonProperty("crumb") String crumb) {
+        this.crumbRequestField = crumbRequestField;
+        this.crumb = crumb;
+    }
+
+    public String getCrumbRequestField() {
+        return crumbRequestField;
+    }
+
+    public String getCrumb() {
+        return crumb;
+    }
+}
@@ -0,0 +1,111 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.utils.URIBuilder;
+import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+public class CrumbHttpClient implements HttpClient {
+
+    private static final Logger logger = Logger.getLogger(CrumbHttpClient.class);
+
+    private static final ObjectReader CRUMB_READER = new ObjectMapper().readerFor(Crumb.class);
+
+    private static final Crumb NO_CRUMB = new Crumb(null, null);
+
+    private final HttpClient httpClient;
+
+    private final CrumbCache crumbCache;
+
+    // Created per step, so that the crumb fetches count towards the metrics of the step that made them
+    public CrumbHttpClient(HttpClient httpClient, CrumbCache crumbCache) {
+        this.httpClient = httpClient;
+        this.crumbCache = crumbCache;
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        if (!"POST".equals(request.getMethod())) {
+            return httpClient.execute(request);
+        }
+        Crumb crumb = crumbCache.get(httpClient);
+        CloseableHttpResponse response = execute(request, crumb);
+        if (response.getStatusLine().getStatusCode() != HttpStatus.SC_FORBIDDEN || crumb.getCrumb() == null) {
+            return response;
+        }
+        // The crumb is bound to the session, which Jenkins may have expired. The body of the rejection differs between
+        // Jenkins versions and proxies, so any 403 refreshes the crumb once
+        logger.debug(String.format("Jenkins rejected a request with a crumb. Fetching a new one. uri=%s", request.getURI()));
+        EntityUtils.consumeQuietly(response.getEntity());
+        response.close();
+        crumbCache.invalidate(crumb);
+        return execute(request, crumbCache.get(httpClient));
+    }
+
+    private CloseableHttpResponse execute(HttpUriRequest request, Crumb crumb) throws IOException {
+        request.removeHeaders(crumb.getCrumbRequestField() != null ? crumb.getCrumbRequestField() : "Jenkins-Crumb");
+        if (crumb.getCrumb() != null) {
+            request.setHeader(crumb.getCrumbRequestField(), crumb.getCrumb());
+        }
+        return httpClient.execute(request);
+    }
+
+    // Shared by the clients of one session, as Jenkins binds crumbs to the session
+    public static final class CrumbCache {
+
+        private final URI crumbIssuerUri;
+
+        private Crumb crumb;
+
+        public CrumbCache(URI baseUri) {
+            URIBuilder uriBuilder = new URIBuilder(baseUri);
+            uriBuilder.setPath(String.format("%s/crumbIssuer/api/json", uriBuilder.getPath() != null ? uriBuilder.getPath() : ""));
+            uriBuilder.setParameter("tree", JsonTree.of(Crumb.class));
+            try {
+                this.crumbIssuerUri = uriBuilder.build();
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException(e.getMessage(), e);
+            }
+        }
+
+        private synchronized Crumb get(HttpClient httpClient) throws IOException {
+            if (crumb == null) {
+                crumb = fetch(httpClient);
+            }
+            return crumb;
+        }
+
+        private synchronized void invalidate(Crumb staleCrumb) {
+            if (crumb == staleCrumb) {
+                crumb = null;
+            }
+        }
+
+        private Crumb fetch(HttpClient httpClient) throws IOException {
+            try (CloseableHttpResponse response = httpClient.execute(new HttpGet(crumbIssuerUri))) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode == HttpStatus.SC_NOT_FOUND) {
+                    // CSRF protection is disabled
+                    EntityUtils.consume(response.getEntity());
+                    return NO_CRUMB;
+                }
+                if (statusCode != HttpStatus.SC_OK) {
+                    String message = String.format("Unexpected response status code from the crumb issuer. statusCode=%d, body=%s", statusCode, EntityUtils.toString(response.getEntity()));
+                    throw new IOException(message);
+                }
+                Crumb crumb = CRUMB_READER.readValue(response.getEntity().getContent());
+                EntityUtils.consume(response.getEntity());
+                return crumb.getCrumb() != null && crumb.getCrumbRequestField() != null ? crumb : NO_CRUMB;
+            }
+        }
+    }
+}
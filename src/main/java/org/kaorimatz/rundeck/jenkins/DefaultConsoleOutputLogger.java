@@ -3,25 +3,48 @@ package org.kaorimatz.rundeck.jenkins;
 import com.dtolabs.rundeck.core.Constants;
 import com.dtolabs.rundeck.plugins.PluginLogger;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.StringReader;
-
 public class DefaultConsoleOutputLogger implements ConsoleOutputLogger {
 
+    private static final int MAX_LINE_LENGTH = 65536;
+
     private final PluginLogger pluginLogger;
 
+    // A progressiveText chunk can end in the middle of a line, which is completed by the next chunk
+    private final StringBuilder partialLine = new StringBuilder();
+
     public DefaultConsoleOutputLogger(PluginLogger pluginLogger) {
         this.pluginLogger = pluginLogger;
     }
 
     @Override
-    public void log(String consoleOutput) throws IOException {
-        try (BufferedReader reader = new BufferedReader(new StringReader(consoleOutput))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                pluginLogger.log(Constants.INFO_LEVEL, line);
+    public void log(String consoleOutput) {
+        int offset = 0;
+        for (int i = 0; i < consoleOutput.length(); i++) {
+            if (consoleOutput.charAt(i) == '\n') {
+                partialLine.append(consoleOutput, offset, i);
+                logPartialLine();
+                offset = i + 1;
             }
         }
+        partialLine.append(consoleOutput, offset, consoleOutput.length());
+        if (partialLine.length() >= MAX_LINE_LENGTH) {
+            logPartialLine();
+        }
+    }
+
+    private void logPartialLine() {
+        int end = partialLine.length();
+        if (end > 0 && partialLine.charAt(end - 1) == '\r') {
+            end--;
+        }
+        pluginLogger.log(Constants.INFO_LEVEL, partialLine.substring(0, end));
+        partialLine.setLength(0);
+    }
+
+    @Override
+    public void close() {
+        if (partialLine.length() > 0) {
+            logPartialLine();
+        }
     }
 }
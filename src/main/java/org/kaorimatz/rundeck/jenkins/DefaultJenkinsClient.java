@@ -1,41 +1,121 @@
 package org.kaorimatz.rundeck.jenkins;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.apache.commons.codec.EncoderException;
 import org.apache.commons.codec.net.URLCodec;
 import org.apache.http.Header;
+import org.apache.http.HttpEntity;
 import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.protocol.HTTP;
 import org.apache.http.util.EntityUtils;
+import org.apache.log4j.Logger;
 import org.dom4j.Document;
 import org.dom4j.io.OutputFormat;
 import org.dom4j.io.XMLWriter;
 
 import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class DefaultJenkinsClient implements JenkinsClient {
 
+    private static final Logger logger = Logger.getLogger(DefaultJenkinsClient.class);
+
     private static final Pattern QUEUE_ITEM_PATH_PATTERN = Pattern.compile("/queue/item/(\\d+)/$");
 
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private static final URLCodec URL_CODEC = new URLCodec();
+
+    private static final long TRANSFER_SIZE = 1024 * 1024;
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> OBJECT_READERS = new ConcurrentHashMap<>();
+
     private final HttpClient httpClient;
 
+    private final AsyncHttpClient asyncHttpClient;
+
     private final URI baseUri;
 
+    private final JenkinsStatusCache statusCache;
+
+    private final long statusCacheTtlMillis;
+
+    private final String userId;
+
+    private final String apiTokenHash;
+
     public DefaultJenkinsClient(HttpClient httpClient, URI baseUri) {
+        this(httpClient, baseUri, null, 0);
+    }
+
+    public DefaultJenkinsClient(HttpClient httpClient, URI baseUri, JenkinsStatusCache statusCache, long statusCacheTtlMillis) {
+        this(httpClient, null, baseUri, statusCache, statusCacheTtlMillis);
+    }
+
+    public DefaultJenkinsClient(HttpClient httpClient, AsyncHttpClient asyncHttpClient, URI baseUri, JenkinsStatusCache statusCache, long statusCacheTtlMillis) {
+        this(httpClient, asyncHttpClient, baseUri, statusCache, statusCacheTtlMillis, null, null);
+    }
+
+    public DefaultJenkinsClient(HttpClient httpClient, AsyncHttpClient asyncHttpClient, URI baseUri, JenkinsStatusCache statusCache, long statusCacheTtlMillis, String userId, String apiTokenHash) {
         this.httpClient = httpClient;
+        // Without an asynchronous transport, the asynchronous methods complete on the calling thread
+        this.asyncHttpClient = asyncHttpClient != null ? asyncHttpClient : request -> {
+            try {
+                return CompletableFuture.completedFuture(httpClient.execute(request));
+            } catch (IOException e) {
+                return CompletableFutures.failed(e);
+            }
+        };
         this.baseUri = baseUri;
+        this.statusCache = statusCache;
+        this.statusCacheTtlMillis = statusCacheTtlMillis;
+        this.userId = userId;
+        this.apiTokenHash = apiTokenHash;
+    }
+
+    @Override
+    public URI getBaseUri() {
+        return baseUri;
+    }
+
+    @Override
+    public String getUserId() {
+        return userId;
+    }
+
+    @Override
+    public String getApiTokenHash() {
+        return apiTokenHash;
     }
 
     @Override
@@ -57,16 +137,16 @@ public class DefaultJenkinsClient implements JenkinsClient {
             if (locationHeader == null) {
                 throw new JenkinsClientException("No HTTP Location header");
             }
+            EntityUtils.consume(response.getEntity());
             return extractQueueItemIdFromLocation(locationHeader.getValue());
         }
     }
 
     private String toJobPath(String jobName) throws EncoderException {
         StringBuilder builder = new StringBuilder();
-        URLCodec codec = new URLCodec();
         for (String segment : jobName.split("/")) {
             builder.append("/job/");
-            builder.append(codec.encode(segment));
+            builder.append(URL_CODEC.encode(segment));
         }
         return builder.toString();
     }
@@ -79,9 +159,14 @@ public class DefaultJenkinsClient implements JenkinsClient {
         CloseableHttpResponse response = httpClient.execute(request);
         int statusCode = response.getStatusLine().getStatusCode();
         if (statusCode != expectedStatusCode) {
-            String body = EntityUtils.toString(response.getEntity());
+            String body;
+            try {
+                body = EntityUtils.toString(response.getEntity());
+            } finally {
+                response.close();
+            }
             String message = String.format("Unexpected response status code. statusCode=%d, body=%s", statusCode, body);
-            throw new JenkinsClientException(message);
+            throw new JenkinsClientException(message, statusCode);
         }
         return response;
     }
@@ -107,7 +192,9 @@ public class DefaultJenkinsClient implements JenkinsClient {
         URIBuilder uriBuilder = new URIBuilder(baseUri);
         uriBuilder.setPath(String.format("%s/queue/cancelItem", uriBuilder.getPath()));
         uriBuilder.setParameter("id", String.valueOf(queueItemId));
-        post(uriBuilder.toString(), HttpStatus.SC_MOVED_TEMPORARILY);
+        try (CloseableHttpResponse response = post(uriBuilder.toString(), HttpStatus.SC_MOVED_TEMPORARILY)) {
+            EntityUtils.consume(response.getEntity());
+        }
     }
 
     @Override
@@ -121,12 +208,20 @@ public class DefaultJenkinsClient implements JenkinsClient {
     public Build getBuild(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException {
         URIBuilder uriBuilder = new URIBuilder(baseUri);
         uriBuilder.setPath(String.format("%s%s/%d/api/json", uriBuilder.getPath(), toJobPath(jobName), buildNumber));
-        return get(uriBuilder.toString(), Build.class);
+        return get(uriBuilder, Build.class);
+    }
+
+    private <T> T get(URIBuilder uriBuilder, Class<T> responseClass) throws JenkinsClientException, IOException {
+        return get(uriBuilder, responseClass, JsonTree.of(responseClass));
     }
 
-    private <T> T get(String uri, Class<T> responseClass) throws JenkinsClientException, IOException {
-        try (CloseableHttpResponse response = get(uri)) {
-            return new ObjectMapper().readValue(response.getEntity().getContent(), responseClass);
+    private <T> T get(URIBuilder uriBuilder, Class<T> responseClass, String tree) throws JenkinsClientException, IOException {
+        uriBuilder.setParameter("tree", tree);
+        try (CloseableHttpResponse response = get(uriBuilder.toString())) {
+            ObjectReader reader = OBJECT_READERS.computeIfAbsent(responseClass, OBJECT_MAPPER::readerFor);
+            T value = reader.readValue(response.getEntity().getContent());
+            EntityUtils.consume(response.getEntity());
+            return value;
         }
     }
 
@@ -151,18 +246,331 @@ public class DefaultJenkinsClient implements JenkinsClient {
         }
     }
 
+    @Override
+    public LogTextProgress getLogText(String jobName, int buildNumber, long start, ConsoleOutputLogger consoleOutputLogger) throws JenkinsClientException, EncoderException, IOException {
+        return getLogText(jobName, buildNumber, start, -1, false, consoleOutputLogger);
+    }
+
+    @Override
+    public LogTextProgress getLogText(String jobName, int buildNumber, long start, long maxBytes, boolean skipPartialLine, ConsoleOutputLogger consoleOutputLogger)
+            throws JenkinsClientException, EncoderException, IOException {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s%s/%d/logText/progressiveText", uriBuilder.getPath(), toJobPath(jobName), buildNumber));
+        // Starting a byte early means that a start at the beginning of a line only skips the preceding newline
+        uriBuilder.addParameter("start", String.valueOf(skipPartialLine && start > 0 ? start - 1 : start));
+        HttpGet request = new HttpGet(uriBuilder.toString());
+        try (CloseableHttpResponse response = execute(request, HttpStatus.SC_OK)) {
+            Header positionHeader = response.getFirstHeader("X-Text-Size");
+            if (positionHeader == null) {
+                throw new JenkinsClientException("No X-Text-Size header");
+            }
+            long position = Long.parseLong(positionHeader.getValue());
+            boolean complete = !response.containsHeader("X-More-Data");
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return new LogTextProgress(position, complete);
+            }
+            Charset charset = ContentType.getOrDefault(entity).getCharset();
+            InputStream content = entity.getContent();
+            LimitedInputStream limitedContent = maxBytes >= 0 ? new LimitedInputStream(content, maxBytes) : null;
+            ConsoleOutputLogger logger = skipPartialLine || limitedContent != null ? new AligningConsoleOutputLogger(consoleOutputLogger, skipPartialLine, limitedContent) : consoleOutputLogger;
+            try (Reader reader = new InputStreamReader(limitedContent != null ? limitedContent : content, charset != null ? charset : HTTP.DEF_CONTENT_CHARSET)) {
+                ConsoleOutputLines.copy(reader, logger);
+                logger.flush();
+                if (limitedContent != null && limitedContent.isLimitReached()) {
+                    // Reading the rest just to close the stream would transfer the part of the log that is not wanted
+                    request.abort();
+                }
+            } catch (IOException e) {
+                if (!request.isAborted()) {
+                    throw e;
+                }
+            }
+            return new LogTextProgress(position, complete);
+        }
+    }
+
+    @Override
+    public long getLogTextSize(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s%s/%d/logText/progressiveText", uriBuilder.getPath(), toJobPath(jobName), buildNumber));
+        uriBuilder.addParameter("start", "0");
+        // Only the X-Text-Size header is needed, so the log itself is not transferred. Jenkins still reads through the
+        // whole log on its side to compute the size, as it handles HEAD like GET. A larger start is no cheaper, since
+        // Jenkins resets a start beyond the end of the log to 0 and the size is not known before this request
+        try (CloseableHttpResponse response = execute(new HttpHead(uriBuilder.toString()), HttpStatus.SC_OK)) {
+            Header positionHeader = response.getFirstHeader("X-Text-Size");
+            if (positionHeader == null) {
+                throw new JenkinsClientException("No X-Text-Size header");
+            }
+            return Long.parseLong(positionHeader.getValue());
+        }
+    }
+
     @Override
     public QueueItem getQueueItem(long queueItemId) throws JenkinsClientException, IOException {
         URIBuilder uriBuilder = new URIBuilder(baseUri);
         uriBuilder.setPath(String.format("%s/queue/item/%d/api/json", baseUri.getPath(), queueItemId));
-        return get(uriBuilder.toString(), QueueItem.class);
+        return get(uriBuilder, QueueItem.class);
+    }
+
+    @Override
+    public Queue getQueue() throws JenkinsClientException, IOException {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s/queue/api/json", baseUri.getPath()));
+        return get(uriBuilder, Queue.class);
+    }
+
+    @Override
+    public Job getJob(String jobName, int maxBuilds) throws JenkinsClientException, EncoderException, IOException {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s%s/api/json", uriBuilder.getPath(), toJobPath(jobName)));
+        return get(uriBuilder, Job.class, String.format("%s{0,%d}", JsonTree.of(Job.class), maxBuilds));
+    }
+
+    @Override
+    public BuildArtifacts getArtifacts(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s%s/%d/api/json", uriBuilder.getPath(), toJobPath(jobName), buildNumber));
+        return get(uriBuilder, BuildArtifacts.class);
+    }
+
+    @Override
+    public long downloadArtifact(String jobName, int buildNumber, String relativePath, FileChannel channel) throws JenkinsClientException, EncoderException, IOException {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s%s/%d/artifact/%s", uriBuilder.getPath(), toJobPath(jobName), buildNumber, relativePath));
+        HttpGet request = new HttpGet(uriBuilder.toString());
+        // Byte ranges would apply to the compressed content, so artifacts are transferred as they are
+        request.setHeader(HttpHeaders.ACCEPT_ENCODING, "identity");
+        long offset = channel.size();
+        if (offset > 0) {
+            request.setHeader(HttpHeaders.RANGE, String.format("bytes=%d-", offset));
+        }
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE && offset > 0) {
+                EntityUtils.consume(response.getEntity());
+                Header contentRange = response.getFirstHeader(HttpHeaders.CONTENT_RANGE);
+                if (contentRange != null && contentRange.getValue().endsWith("/" + offset)) {
+                    // Downloaded completely before the connection was lost
+                    return offset;
+                }
+                channel.truncate(0);
+                String message = String.format("Partially downloaded artifact is larger than the artifact. relativePath=%s, offset=%d", relativePath, offset);
+                throw new IOException(message);
+            }
+            long position;
+            if (statusCode == HttpStatus.SC_PARTIAL_CONTENT && offset > 0) {
+                position = offset;
+            } else if (statusCode == HttpStatus.SC_OK) {
+                // The range was ignored, so start over
+                channel.truncate(0);
+                position = 0;
+            } else {
+                String message = String.format("Unexpected response status code. statusCode=%d, body=%s", statusCode, EntityUtils.toString(response.getEntity()));
+                throw new JenkinsClientException(message, statusCode);
+            }
+            HttpEntity entity = response.getEntity();
+            long expectedEnd = entity.getContentLength() >= 0 ? position + entity.getContentLength() : -1;
+            try (ReadableByteChannel source = Channels.newChannel(entity.getContent())) {
+                long transferred;
+                while ((transferred = channel.transferFrom(source, position, TRANSFER_SIZE)) > 0) {
+                    position += transferred;
+                }
+            }
+            if (expectedEnd >= 0 && position != expectedEnd) {
+                String message = String.format("Artifact download ended early. relativePath=%s, position=%d, expected=%d", relativePath, position, expectedEnd);
+                throw new IOException(message);
+            }
+            return position;
+        }
+    }
+
+    @Override
+    public QueueItem pollQueueItem(long queueItemId) throws JenkinsClientException, EncoderException, IOException {
+        if (statusCache != null) {
+            try {
+                QueueItem queueItem = statusCache.getQueueItem(this, queueItemId, statusCacheTtlMillis);
+                if (queueItem != null) {
+                    return queueItem;
+                }
+            } catch (JenkinsClientException e) {
+                logger.debug("Failed to get the queue. Falling back to the queue item", e);
+            }
+        }
+        // Items leave the queue once they start, so they are only found by looking them up one by one
+        return getQueueItem(queueItemId);
+    }
+
+    @Override
+    public Build pollBuild(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException {
+        if (statusCache != null) {
+            try {
+                Build build = statusCache.getBuild(this, jobName, buildNumber, statusCacheTtlMillis);
+                if (build != null) {
+                    return build;
+                }
+            } catch (JenkinsClientException e) {
+                logger.debug(String.format("Failed to get the builds of %s. Falling back to the build", jobName), e);
+            }
+        }
+        return getBuild(jobName, buildNumber);
+    }
+
+    @Override
+    public CompletableFuture<Build> getBuildAsync(String jobName, int buildNumber) {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        try {
+            uriBuilder.setPath(String.format("%s%s/%d/api/json", uriBuilder.getPath(), toJobPath(jobName), buildNumber));
+        } catch (EncoderException e) {
+            return CompletableFutures.failed(e);
+        }
+        return getAsync(uriBuilder, Build.class, JsonTree.of(Build.class));
+    }
+
+    private <T> CompletableFuture<T> getAsync(URIBuilder uriBuilder, Class<T> responseClass, String tree) {
+        uriBuilder.setParameter("tree", tree);
+        return executeAsync(new HttpGet(uriBuilder.toString()), HttpStatus.SC_OK, response -> {
+            ObjectReader reader = OBJECT_READERS.computeIfAbsent(responseClass, OBJECT_MAPPER::readerFor);
+            return reader.readValue(response.getEntity().getContent());
+        });
+    }
+
+    private <T> CompletableFuture<T> executeAsync(HttpUriRequest request, int expectedStatusCode, ResponseReader<T> responseReader) {
+        return asyncHttpClient.execute(request).thenApply(response -> {
+            try {
+                int statusCode = response.getStatusLine().getStatusCode();
+                if (statusCode != expectedStatusCode) {
+                    String message = String.format("Unexpected response status code. statusCode=%d, body=%s", statusCode, EntityUtils.toString(response.getEntity()));
+                    throw new JenkinsClientException(message, statusCode);
+                }
+                T value = responseReader.read(response);
+                EntityUtils.consume(response.getEntity());
+                return value;
+            } catch (JenkinsClientException | IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                closeQuietly(response);
+            }
+        });
+    }
+
+    private static void closeQuietly(HttpResponse response) {
+        if (!(response instanceof Closeable)) {
+            return;
+        }
+        try {
+            ((Closeable) response).close();
+        } catch (IOException e) {
+            logger.debug("Failed to close the response", e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<LogTextProgress> getLogTextAsync(String jobName, int buildNumber, long start, ConsoleOutputLogger consoleOutputLogger) {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        try {
+            uriBuilder.setPath(String.format("%s%s/%d/logText/progressiveText", uriBuilder.getPath(), toJobPath(jobName), buildNumber));
+        } catch (EncoderException e) {
+            return CompletableFutures.failed(e);
+        }
+        uriBuilder.addParameter("start", String.valueOf(start));
+        return executeAsync(new HttpGet(uriBuilder.toString()), HttpStatus.SC_OK, response -> {
+            Header positionHeader = response.getFirstHeader("X-Text-Size");
+            if (positionHeader == null) {
+                throw new JenkinsClientException("No X-Text-Size header");
+            }
+            long position = Long.parseLong(positionHeader.getValue());
+            boolean complete = !response.containsHeader("X-More-Data");
+            HttpEntity entity = response.getEntity();
+            if (entity == null) {
+                return new LogTextProgress(position, complete);
+            }
+            // Decoded line by line, so that a large chunk is never held as one string on top of the received bytes
+            Charset charset = ContentType.getOrDefault(entity).getCharset();
+            try (Reader reader = new InputStreamReader(entity.getContent(), charset != null ? charset : HTTP.DEF_CONTENT_CHARSET)) {
+                ConsoleOutputLines.copy(reader, consoleOutputLogger);
+            }
+            consoleOutputLogger.flush();
+            return new LogTextProgress(position, complete);
+        });
+    }
+
+    @Override
+    public CompletableFuture<QueueItem> getQueueItemAsync(long queueItemId) {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s/queue/item/%d/api/json", baseUri.getPath(), queueItemId));
+        return getAsync(uriBuilder, QueueItem.class, JsonTree.of(QueueItem.class));
+    }
+
+    @Override
+    public CompletableFuture<Queue> getQueueAsync() {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s/queue/api/json", baseUri.getPath()));
+        return getAsync(uriBuilder, Queue.class, JsonTree.of(Queue.class));
+    }
+
+    @Override
+    public CompletableFuture<ComputerSet> getComputerSetAsync() {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        uriBuilder.setPath(String.format("%s/computer/api/json", baseUri.getPath()));
+        return getAsync(uriBuilder, ComputerSet.class, JsonTree.of(ComputerSet.class));
+    }
+
+    @Override
+    public CompletableFuture<Job> getJobAsync(String jobName, int maxBuilds) {
+        URIBuilder uriBuilder = new URIBuilder(baseUri);
+        try {
+            uriBuilder.setPath(String.format("%s%s/api/json", uriBuilder.getPath(), toJobPath(jobName)));
+        } catch (EncoderException e) {
+            return CompletableFutures.failed(e);
+        }
+        return getAsync(uriBuilder, Job.class, String.format("%s{0,%d}", JsonTree.of(Job.class), maxBuilds));
+    }
+
+    @Override
+    public CompletableFuture<QueueItem> pollQueueItemAsync(long queueItemId) {
+        if (statusCache == null) {
+            return getQueueItemAsync(queueItemId);
+        }
+        return statusCache.getQueueItemAsync(this, queueItemId, statusCacheTtlMillis).handle((queueItem, throwable) -> {
+            if (throwable == null) {
+                return queueItem != null ? CompletableFuture.completedFuture(queueItem) : getQueueItemAsync(queueItemId);
+            }
+            Throwable cause = CompletableFutures.unwrap(throwable);
+            if (!(cause instanceof JenkinsClientException)) {
+                return CompletableFutures.<QueueItem>failed(cause);
+            }
+            logger.debug("Failed to get the queue. Falling back to the queue item", cause);
+            return getQueueItemAsync(queueItemId);
+        }).thenCompose(Function.identity());
+    }
+
+    @Override
+    public CompletableFuture<Build> pollBuildAsync(String jobName, int buildNumber) {
+        if (statusCache == null) {
+            return getBuildAsync(jobName, buildNumber);
+        }
+        return statusCache.getBuildAsync(this, jobName, buildNumber, statusCacheTtlMillis).handle((build, throwable) -> {
+            if (throwable == null) {
+                return build != null ? CompletableFuture.completedFuture(build) : getBuildAsync(jobName, buildNumber);
+            }
+            Throwable cause = CompletableFutures.unwrap(throwable);
+            if (!(cause instanceof JenkinsClientException)) {
+                return CompletableFutures.<Build>failed(cause);
+            }
+            logger.debug(String.format("Failed to get the builds of %s. Falling back to the build", jobName), cause);
+            return getBuildAsync(jobName, buildNumber);
+        }).thenCompose(Function.identity());
     }
 
     @Override
     public void stopBuild(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException {
         URIBuilder uriBuilder = new URIBuilder(baseUri);
         uriBuilder.setPath(String.format("%s%s/%d/stop", uriBuilder.getPath(), toJobPath(jobName), buildNumber));
-        post(uriBuilder.toString(), HttpStatus.SC_MOVED_TEMPORARILY);
+        try (CloseableHttpResponse response = post(uriBuilder.toString(), HttpStatus.SC_MOVED_TEMPORARILY)) {
+            EntityUtils.consume(response.getEntity());
+        }
     }
 
     private void post(String uri, Document document, int expectedStatusCode) throws JenkinsClientException, IOException {
@@ -171,6 +579,96 @@ public class DefaultJenkinsClient implements JenkinsClient {
         XMLWriter writer = new XMLWriter(outputStream, OutputFormat.createCompactFormat());
         writer.write(document);
         request.setEntity(new ByteArrayEntity(outputStream.toByteArray()));
-        execute(request, expectedStatusCode);
+        try (CloseableHttpResponse response = execute(request, expectedStatusCode)) {
+            EntityUtils.consume(response.getEntity());
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private LimitedInputStream(InputStream in, long maxBytes) {
+            super(in);
+            this.remaining = maxBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b != -1) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // Closed with the response, which aborts the connection if the limit was reached
+        }
+
+        private boolean isLimitReached() {
+            return remaining <= 0;
+        }
+    }
+
+    private static final class AligningConsoleOutputLogger implements ConsoleOutputLogger {
+
+        private final ConsoleOutputLogger consoleOutputLogger;
+
+        private final LimitedInputStream limitedContent;
+
+        private boolean skipping;
+
+        private String pending;
+
+        private AligningConsoleOutputLogger(ConsoleOutputLogger consoleOutputLogger, boolean skipPartialLine, LimitedInputStream limitedContent) {
+            this.consoleOutputLogger = consoleOutputLogger;
+            this.skipping = skipPartialLine;
+            this.limitedContent = limitedContent;
+        }
+
+        @Override
+        public void log(String consoleOutput) throws IOException {
+            if (skipping) {
+                // Started in the middle of a line
+                skipping = !consoleOutput.endsWith("\n");
+                return;
+            }
+            if (pending != null) {
+                consoleOutputLogger.log(pending);
+            }
+            pending = consoleOutput;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            // A line cut off by the limit is dropped rather than logged in part
+            if (pending != null && (limitedContent == null || !limitedContent.isLimitReached() || pending.endsWith("\n"))) {
+                consoleOutputLogger.log(pending);
+            }
+            pending = null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResponseReader<T> {
+
+        T read(HttpResponse response) throws JenkinsClientException, IOException;
     }
 }
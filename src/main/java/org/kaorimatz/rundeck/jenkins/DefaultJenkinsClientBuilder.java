@@ -1,21 +1,13 @@
 package org.kaorimatz.rundeck.jenkins;
 
-import org.apache.http.HttpHost;
-import org.apache.http.auth.AuthScope;
-import org.apache.http.auth.UsernamePasswordCredentials;
-import org.apache.http.client.AuthCache;
-import org.apache.http.client.CredentialsProvider;
-import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.NoConnectionReuseStrategy;
-import org.apache.http.impl.auth.BasicScheme;
-import org.apache.http.impl.client.BasicAuthCache;
-import org.apache.http.impl.client.BasicCredentialsProvider;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.client.config.RequestConfig;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class DefaultJenkinsClientBuilder {
 
@@ -25,6 +17,16 @@ public class DefaultJenkinsClientBuilder {
 
     private String apiToken;
 
+    private JenkinsMetrics metrics = JenkinsMetrics.getInstance();
+
+    private RequestConfig requestConfig;
+
+    private int maxRetries = 3;
+
+    private long statusCacheTtlMillis = TimeUnit.SECONDS.toMillis(1);
+
+    private long controllerLoadTtlMillis = TimeUnit.SECONDS.toMillis(5);
+
     public DefaultJenkinsClientBuilder(String baseUrl) {
         this.baseUrl = baseUrl;
     }
@@ -39,35 +41,74 @@ public class DefaultJenkinsClientBuilder {
         return this;
     }
 
-    public DefaultJenkinsClient build() throws URISyntaxException {
-        CloseableHttpClient httpClient = HttpClients.custom()
-                .setConnectionManager(new BasicHttpClientConnectionManager())
-                .setConnectionReuseStrategy(NoConnectionReuseStrategy.INSTANCE)
-                .setUserAgent(getUserAgent())
-                .disableCookieManagement()
-                .disableAutomaticRetries()
-                .disableRedirectHandling()
+    public DefaultJenkinsClientBuilder setMetrics(JenkinsMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    public DefaultJenkinsClientBuilder setTimeouts(int connectTimeoutMillis, int readTimeoutMillis) {
+        this.requestConfig = RequestConfig.copy(JenkinsHttpClientRegistry.DEFAULT_REQUEST_CONFIG)
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(readTimeoutMillis)
                 .build();
+        return this;
+    }
 
-        URI baseUri = new URI(baseUrl);
-
-        HttpClientContext httpClientContext = HttpClientContext.create();
-        if (userId != null && apiToken != null) {
-            HttpHost httpHost = new HttpHost(baseUri.getHost(), baseUri.getPort(), baseUri.getScheme());
-            CredentialsProvider credentialsProvider = new BasicCredentialsProvider();
-            credentialsProvider.setCredentials(new AuthScope(httpHost), new UsernamePasswordCredentials(userId, apiToken));
-            AuthCache authCache = new BasicAuthCache();
-            authCache.put(httpHost, new BasicScheme());
-            httpClientContext.setCredentialsProvider(credentialsProvider);
-            httpClientContext.setAuthCache(authCache);
-        }
+    public DefaultJenkinsClientBuilder setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
 
-        return new DefaultJenkinsClient(request -> httpClient.execute(request, httpClientContext), baseUri);
+    public DefaultJenkinsClientBuilder setStatusCacheTtl(long statusCacheTtlMillis) {
+        this.statusCacheTtlMillis = statusCacheTtlMillis;
+        return this;
+    }
+
+    public DefaultJenkinsClientBuilder setControllerLoadTtl(long controllerLoadTtlMillis) {
+        this.controllerLoadTtlMillis = controllerLoadTtlMillis;
+        return this;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public DefaultJenkinsClient build() throws URISyntaxException {
+        return build(new URI(baseUrl));
+    }
+
+    public JenkinsControllerRouter buildRouter() throws URISyntaxException {
+        String[] baseUrls = StringUtils.split(baseUrl, ", \t\r\n");
+        if (baseUrls.length <= 1) {
+            return new JenkinsControllerRouter(build());
+        }
+        JenkinsControllerRegistry controllerRegistry = JenkinsControllerRegistry.getInstance();
+        List<JenkinsClient> controllers = new ArrayList<>();
+        List<JenkinsControllerLoad> loads = new ArrayList<>();
+        for (String url : baseUrls) {
+            DefaultJenkinsClient controller = build(new URI(url));
+            controllers.add(controller);
+            loads.add(controllerRegistry.getControllerLoad(controller.getBaseUri()));
+        }
+        return new JenkinsControllerRouter(controllers, loads, controllerLoadTtlMillis);
     }
 
-    private String getUserAgent() {
-        String title = getClass().getPackage().getImplementationTitle();
-        String version = getClass().getPackage().getImplementationVersion();
-        return String.format("%s/%s", title, version);
+    private DefaultJenkinsClient build(URI baseUri) {
+        JenkinsHttpClientRegistry registry = JenkinsHttpClientRegistry.getInstance();
+        JenkinsControllerRegistry controllerRegistry = JenkinsControllerRegistry.getInstance();
+        HttpClient httpClient = registry.getHttpClient(baseUri, userId, apiToken);
+        // The limiter is shared by all clients of the same Jenkins controller and configured by the controller registry
+        JenkinsRequestLimiter limiter = controllerRegistry.getLimiter(baseUri);
+        // The crumb is shared by the session, but fetched through the instrumented client of this step
+        HttpClient crumbHttpClient = new CrumbHttpClient(new InstrumentedHttpClient(httpClient, metrics), registry.getCrumbCache(baseUri, userId, apiToken));
+        HttpClient limitedHttpClient = new LimitedHttpClient(crumbHttpClient, limiter, metrics);
+        // Sync and async requests share one retry policy, so that they share the circuit breaker and the retry budget
+        JenkinsRetryPolicy retryPolicy = new JenkinsRetryPolicy(controllerRegistry.getCircuitBreaker(baseUri), maxRetries);
+        HttpClient retryingHttpClient = new RetryingHttpClient(limitedHttpClient, retryPolicy, requestConfig, metrics);
+        AsyncHttpClient asyncHttpClient = registry.getAsyncHttpClient(baseUri, userId, apiToken);
+        AsyncHttpClient limitedAsyncHttpClient = new LimitedAsyncHttpClient(new InstrumentedAsyncHttpClient(asyncHttpClient, metrics), limiter, metrics);
+        AsyncHttpClient retryingAsyncHttpClient = new RetryingAsyncHttpClient(limitedAsyncHttpClient, retryPolicy, requestConfig, metrics, registry.getScheduler());
+        JenkinsStatusCache statusCache = statusCacheTtlMillis > 0 ? JenkinsStatusCaches.getInstance().getStatusCache(baseUri, userId, apiToken) : null;
+        return new DefaultJenkinsClient(retryingHttpClient, retryingAsyncHttpClient, baseUri, statusCache, statusCacheTtlMillis, userId, JenkinsHttpClientRegistry.hashApiToken(apiToken));
     }
 }
@@ -0,0 +1,27 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Fingerprint {
+
+    private final String fileName;
+
+    private final String hash;
+
+    @JsonCreator
+    public Fingerprint(@JsonProperty("fileName") String fileName, @JsonProperty("hash") String hash) {
+        this.fileName = fileName;
+        this.hash = hash;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+}
@@ -0,0 +1,25 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public class FixedPollingStrategy implements PollingStrategy {
+
+    private final long interval;
+
+    public FixedPollingStrategy(long interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public long getQueuedDelay(int attempt) {
+        return interval;
+    }
+
+    @Override
+    public long getRunningDelay(int attempt, Build build) {
+        return interval;
+    }
+
+    @Override
+    public long getLoggingDelay(int attempt) {
+        return interval;
+    }
+}
@@ -0,0 +1,35 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class InstrumentedAsyncHttpClient implements AsyncHttpClient {
+
+    private final AsyncHttpClient httpClient;
+
+    private final JenkinsMetrics metrics;
+
+    public InstrumentedAsyncHttpClient(AsyncHttpClient httpClient, JenkinsMetrics metrics) {
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+        JenkinsEndpointMetrics endpointMetrics = metrics.getEndpointMetrics(JenkinsEndpoint.of(request.getURI().getPath()));
+        InstrumentedHttpClient.recordBytesSent(request, endpointMetrics);
+        long startTime = System.nanoTime();
+        return httpClient.execute(request).whenComplete((response, throwable) -> {
+            long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            if (throwable != null) {
+                endpointMetrics.recordRequest(latencyMillis, true);
+                return;
+            }
+            endpointMetrics.recordRequest(latencyMillis, response.getStatusLine().getStatusCode() >= 400);
+            InstrumentedHttpClient.countBytesReceived(response, endpointMetrics);
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+public class InstrumentedHttpClient implements HttpClient {
+
+    private final HttpClient httpClient;
+
+    private final JenkinsMetrics metrics;
+
+    public InstrumentedHttpClient(HttpClient httpClient, JenkinsMetrics metrics) {
+        this.httpClient = httpClient;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        JenkinsEndpointMetrics endpointMetrics = metrics.getEndpointMetrics(JenkinsEndpoint.of(request.getURI().getPath()));
+        recordBytesSent(request, endpointMetrics);
+        long startTime = System.nanoTime();
+        CloseableHttpResponse response;
+        try {
+            response = httpClient.execute(request);
+        } catch (IOException | RuntimeException e) {
+            endpointMetrics.recordRequest(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), true);
+            throw e;
+        }
+        endpointMetrics.recordRequest(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), response.getStatusLine().getStatusCode() >= 400);
+        countBytesReceived(response, endpointMetrics);
+        return response;
+    }
+
+    static void recordBytesSent(HttpUriRequest request, JenkinsEndpointMetrics endpointMetrics) {
+        if (request instanceof HttpEntityEnclosingRequest) {
+            HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+            if (entity != null && entity.getContentLength() > 0) {
+                endpointMetrics.addBytesSent(entity.getContentLength());
+            }
+        }
+    }
+
+    static void countBytesReceived(HttpResponse response, JenkinsEndpointMetrics endpointMetrics) {
+        HttpEntity entity = response.getEntity();
+        if (entity instanceof CompressedHttpEntity) {
+            ((CompressedHttpEntity) entity).setCompressedBytesConsumer(endpointMetrics::addCompressedBytesReceived);
+        }
+        if (entity != null) {
+            response.setEntity(new CountingHttpEntity(entity, endpointMetrics));
+        }
+    }
+
+    private static final class CountingHttpEntity extends HttpEntityWrapper {
+
+        private final JenkinsEndpointMetrics endpointMetrics;
+
+        private CountingHttpEntity(HttpEntity entity, JenkinsEndpointMetrics endpointMetrics) {
+            super(entity);
+            this.endpointMetrics = endpointMetrics;
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            return new FilterInputStream(super.getContent()) {
+
+                @Override
+                public int read() throws IOException {
+                    int b = super.read();
+                    if (b != -1) {
+                        endpointMetrics.addBytesReceived(1);
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int n = super.read(b, off, len);
+                    if (n > 0) {
+                        endpointMetrics.addBytesReceived(n);
+                    }
+                    return n;
+                }
+            };
+        }
+
+        @Override
+        public void writeTo(OutputStream outputStream) throws IOException {
+            try (InputStream inputStream = getContent()) {
+                byte[] buffer = new byte[8192];
+                int n;
+                while ((n = inputStream.read(buffer)) != -1) {
+                    outputStream.write(buffer, 0, n);
+                }
+            }
+        }
+    }
+}
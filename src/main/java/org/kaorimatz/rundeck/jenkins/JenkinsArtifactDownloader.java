@@ -0,0 +1,350 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+public class JenkinsArtifactDownloader {
+
+    private static final Logger logger = Logger.getLogger(JenkinsArtifactDownloader.class);
+
+    private static final Map<String, String> CHECKSUM_ALGORITHMS = new LinkedHashMap<>();
+
+    private static final String PART_SUFFIX = ".part";
+
+    private static final Pattern PART_JOB_NAME_PATTERN = Pattern.compile("[^A-Za-z0-9._-]");
+
+    private static final int DIGEST_BUFFER_SIZE = 64 * 1024;
+
+    // Shared by every step on this server, so that concurrent steps cannot start an unbounded number of threads
+    private static final int MAX_DOWNLOAD_THREADS = 16;
+
+    private static final ExecutorService EXECUTOR = createExecutor();
+
+    static {
+        CHECKSUM_ALGORITHMS.put(".sha512", "SHA-512");
+        CHECKSUM_ALGORITHMS.put(".sha256", "SHA-256");
+        CHECKSUM_ALGORITHMS.put(".sha1", "SHA-1");
+        CHECKSUM_ALGORITHMS.put(".md5", "MD5");
+    }
+
+    private final JenkinsClient jenkinsClient;
+
+    private List<PathMatcher> includes = Collections.emptyList();
+
+    private List<PathMatcher> excludes = Collections.emptyList();
+
+    private int maxConcurrentDownloads = 4;
+
+    private int maxRetries = 3;
+
+    private long deadline;
+
+    public JenkinsArtifactDownloader(JenkinsClient jenkinsClient) {
+        this.jenkinsClient = jenkinsClient;
+    }
+
+    private static ExecutorService createExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_DOWNLOAD_THREADS, MAX_DOWNLOAD_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, String.format("jenkins-artifact-download-%d", threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public JenkinsArtifactDownloader setIncludes(String includes) {
+        this.includes = parsePatterns(includes);
+        return this;
+    }
+
+    public JenkinsArtifactDownloader setExcludes(String excludes) {
+        this.excludes = parsePatterns(excludes);
+        return this;
+    }
+
+    public JenkinsArtifactDownloader setMaxConcurrentDownloads(int maxConcurrentDownloads) {
+        this.maxConcurrentDownloads = maxConcurrentDownloads;
+        return this;
+    }
+
+    public JenkinsArtifactDownloader setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+        return this;
+    }
+
+    public JenkinsArtifactDownloader setDeadline(long deadline) {
+        this.deadline = deadline;
+        return this;
+    }
+
+    public List<Path> download(String jobName, int buildNumber, Path directory) throws JenkinsClientException, EncoderException, IOException, InterruptedException {
+        BuildArtifacts buildArtifacts = JenkinsAvailability.await(() -> jenkinsClient.getArtifacts(jobName, buildNumber), deadline);
+        Map<String, Artifact> artifacts = new LinkedHashMap<>();
+        for (Artifact artifact : buildArtifacts.getArtifacts()) {
+            artifacts.put(artifact.getRelativePath(), artifact);
+        }
+
+        List<Artifact> selected = new ArrayList<>();
+        Map<Artifact, Artifact> checksumFiles = new LinkedHashMap<>();
+        for (Artifact artifact : artifacts.values()) {
+            if (!isSelected(artifact)) {
+                continue;
+            }
+            selected.add(artifact);
+            for (String extension : CHECKSUM_ALGORITHMS.keySet()) {
+                Artifact checksumFile = artifacts.get(artifact.getRelativePath() + extension);
+                if (checksumFile != null) {
+                    checksumFiles.put(artifact, checksumFile);
+                    break;
+                }
+            }
+        }
+        selected.removeAll(checksumFiles.values());
+        Map<String, String> fingerprints = getUniqueFingerprints(buildArtifacts);
+
+        Path root = directory.toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        // Checksum files are downloaded first, since verifying an artifact needs its checksum file
+        List<Callable<Path>> tasks = new ArrayList<>();
+        for (Artifact checksumFile : checksumFiles.values()) {
+            tasks.add(() -> download(jobName, buildNumber, root, checksumFile, null, null));
+        }
+        List<Path> paths = new ArrayList<>(invokeAll(tasks));
+
+        tasks.clear();
+        for (Artifact artifact : selected) {
+            Artifact checksumFile = checksumFiles.get(artifact);
+            String algorithm;
+            String checksum;
+            if (checksumFile != null) {
+                String relativePath = checksumFile.getRelativePath();
+                algorithm = CHECKSUM_ALGORITHMS.get(relativePath.substring(relativePath.lastIndexOf('.')));
+                checksum = readChecksum(resolve(root, relativePath));
+            } else {
+                algorithm = "MD5";
+                checksum = fingerprints.get(artifact.getFileName());
+            }
+            tasks.add(() -> download(jobName, buildNumber, root, artifact, algorithm, checksum));
+        }
+        paths.addAll(invokeAll(tasks));
+        return paths;
+    }
+
+    private boolean isSelected(Artifact artifact) {
+        return (includes.isEmpty() || matches(includes, artifact)) && !matches(excludes, artifact);
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Artifact artifact) {
+        Path path = Paths.get(artifact.getRelativePath());
+        Path fileName = Paths.get(artifact.getFileName());
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path) || matcher.matches(fileName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static List<PathMatcher> parsePatterns(String patterns) {
+        List<PathMatcher> matchers = new ArrayList<>();
+        if (patterns == null) {
+            return matchers;
+        }
+        for (String pattern : patterns.split(",")) {
+            if (StringUtils.isNotBlank(pattern)) {
+                matchers.add(FileSystems.getDefault().getPathMatcher("glob:" + pattern.trim()));
+            }
+        }
+        return matchers;
+    }
+
+    private static Map<String, String> getUniqueFingerprints(BuildArtifacts buildArtifacts) {
+        Map<String, Integer> fileNameCounts = new HashMap<>();
+        for (Artifact artifact : buildArtifacts.getArtifacts()) {
+            fileNameCounts.merge(artifact.getFileName(), 1, Integer::sum);
+        }
+        // Fingerprints are recorded by file name only, so they are ambiguous for artifacts sharing a name
+        Map<String, String> fingerprints = new HashMap<>();
+        for (Fingerprint fingerprint : buildArtifacts.getFingerprints()) {
+            if (fingerprint.getHash() != null && fileNameCounts.getOrDefault(fingerprint.getFileName(), 0) == 1) {
+                fingerprints.put(fingerprint.getFileName(), fingerprint.getHash());
+            }
+        }
+        return fingerprints;
+    }
+
+    private List<Path> invokeAll(List<Callable<Path>> tasks) throws JenkinsClientException, EncoderException, IOException, InterruptedException {
+        CompletionService<Path> completionService = new ExecutorCompletionService<>(EXECUTOR);
+        List<Future<Path>> futures = new ArrayList<>();
+        Iterator<Callable<Path>> pending = tasks.iterator();
+        try {
+            // Only maxConcurrentDownloads of the tasks are submitted at once, as the threads are shared with other steps
+            while (futures.size() < Math.max(1, maxConcurrentDownloads) && pending.hasNext()) {
+                futures.add(completionService.submit(pending.next()));
+            }
+            List<Path> paths = new ArrayList<>();
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    paths.add(completionService.take().get());
+                } catch (ExecutionException e) {
+                    // Fail on the first error. The remaining downloads are cancelled below
+                    if (e.getCause() instanceof InterruptedException) {
+                        throw (InterruptedException) e.getCause();
+                    }
+                    throw CompletableFutures.rethrow(e);
+                }
+                if (pending.hasNext()) {
+                    futures.add(completionService.submit(pending.next()));
+                }
+            }
+            return paths;
+        } finally {
+            for (Future<Path> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private Path download(String jobName, int buildNumber, Path root, Artifact artifact, String algorithm, String checksum)
+            throws JenkinsClientException, EncoderException, IOException, InterruptedException {
+        Path target = resolve(root, artifact.getRelativePath());
+        if (checksum != null && Files.isRegularFile(target) && checksum.equalsIgnoreCase(digest(target, algorithm))) {
+            logger.debug(String.format("Artifact is already downloaded. relativePath=%s", artifact.getRelativePath()));
+            return target;
+        }
+        Files.createDirectories(target.getParent());
+        // Named after the build, so that a part file left by an earlier step is resumed only if it belongs to this build
+        String partPrefix = String.format("%s.%s-", target.getFileName(), PART_JOB_NAME_PATTERN.matcher(jobName).replaceAll("_"));
+        Path part = target.resolveSibling(partPrefix + buildNumber + PART_SUFFIX);
+        for (int verification = 0; ; verification++) {
+            transfer(jobName, buildNumber, artifact, part);
+            if (checksum == null) {
+                break;
+            }
+            String actual = digest(part, algorithm);
+            if (checksum.equalsIgnoreCase(actual)) {
+                break;
+            }
+            Files.deleteIfExists(part);
+            String message = String.format("Artifact checksum mismatch. relativePath=%s, algorithm=%s, expected=%s, actual=%s", artifact.getRelativePath(), algorithm, checksum, actual);
+            if (verification > 0) {
+                throw new IOException(message);
+            }
+            logger.warn(message + ". Downloading it again");
+        }
+        try {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(part, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        deleteStaleParts(target, partPrefix);
+        return target;
+    }
+
+    private static void deleteStaleParts(Path target, String partPrefix) throws IOException {
+        // Part files of other builds of the job are of no use once the artifact has been replaced
+        DirectoryStream.Filter<Path> filter = path -> {
+            String fileName = path.getFileName().toString();
+            return fileName.startsWith(partPrefix) && fileName.endsWith(PART_SUFFIX)
+                    && StringUtils.isNumeric(fileName.substring(partPrefix.length(), fileName.length() - PART_SUFFIX.length()));
+        };
+        try (DirectoryStream<Path> parts = Files.newDirectoryStream(target.getParent(), filter)) {
+            for (Path part : parts) {
+                Files.deleteIfExists(part);
+            }
+        }
+    }
+
+    private void transfer(String jobName, int buildNumber, Artifact artifact, Path part) throws JenkinsClientException, EncoderException, IOException, InterruptedException {
+        for (int attempt = 0; ; attempt++) {
+            try (FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                JenkinsAvailability.await(() -> jenkinsClient.downloadArtifact(jobName, buildNumber, artifact.getRelativePath(), channel), deadline);
+                return;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted() || JenkinsRetryPolicy.isInterrupted(e)) {
+                    throw new InterruptedException(String.format("Interrupted while downloading the artifact. relativePath=%s", artifact.getRelativePath()));
+                }
+                if (attempt >= maxRetries) {
+                    throw e;
+                }
+                // The next attempt resumes from the end of the part file
+                logger.debug(String.format("Artifact download failed. Resuming. relativePath=%s, attempt=%d", artifact.getRelativePath(), attempt + 1), e);
+                Thread.sleep(JenkinsRetryPolicy.getBackoffMillis(attempt));
+            }
+        }
+    }
+
+    private static Path resolve(Path root, String relativePath) throws IOException {
+        Path path = root.resolve(relativePath).normalize();
+        if (!path.startsWith(root) || path.equals(root)) {
+            throw new IOException(String.format("Artifact path is outside of the artifacts directory. relativePath=%s", relativePath));
+        }
+        return path;
+    }
+
+    private static String readChecksum(Path checksumFile) throws IOException {
+        // Either just the checksum or the output of sha256sum and the like, i.e. "<checksum>  <file name>"
+        String content = new String(Files.readAllBytes(checksumFile), StandardCharsets.UTF_8).trim();
+        String[] tokens = content.split("\\s+", 2);
+        if (tokens[0].isEmpty()) {
+            throw new IOException(String.format("Checksum file is empty. path=%s", checksumFile));
+        }
+        return tokens[0];
+    }
+
+    private static String digest(Path path, String algorithm) throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(DIGEST_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                messageDigest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return Hex.encodeHexString(messageDigest.digest());
+    }
+}
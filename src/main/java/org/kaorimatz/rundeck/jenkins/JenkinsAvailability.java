@@ -0,0 +1,38 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+
+public final class JenkinsAvailability {
+
+    private static final Logger logger = Logger.getLogger(JenkinsAvailability.class);
+
+    private JenkinsAvailability() {
+    }
+
+    public static <T> T await(Request<T> request, long deadline)
+            throws JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+        while (true) {
+            try {
+                return request.execute();
+            } catch (JenkinsUnavailableException e) {
+                // Paused like a waiting build instead of failing the step, unless the step would time out meanwhile
+                long waitMillis = e.getRetryAfterMillis();
+                if (deadline > 0 && System.currentTimeMillis() + waitMillis >= deadline) {
+                    throw e;
+                }
+                logger.info(e.getMessage());
+                Thread.sleep(waitMillis);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    public interface Request<T> {
+
+        T execute() throws JenkinsClientException, EncoderException, IOException;
+    }
+}
@@ -0,0 +1,174 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class JenkinsBuildCoalescer {
+
+    private static final Logger logger = Logger.getLogger(JenkinsBuildCoalescer.class);
+
+    private static final JenkinsBuildCoalescer INSTANCE = new JenkinsBuildCoalescer();
+
+    private final Map<Key, SharedBuild> builds = new HashMap<>();
+
+    public static JenkinsBuildCoalescer getInstance() {
+        return INSTANCE;
+    }
+
+    public synchronized SharedBuild join(JenkinsControllerRouter router, String jobName, Map<String, String> parameters, String token, long windowMillis) {
+        long now = System.currentTimeMillis();
+        for (Iterator<SharedBuild> iterator = builds.values().iterator(); iterator.hasNext(); ) {
+            SharedBuild build = iterator.next();
+            if (build.participants == 0 && !build.isReusable(now, windowMillis)) {
+                iterator.remove();
+            }
+        }
+        // Only steps with the same credentials share a build, as each one reads its log and may abort it
+        Key key = new Key(router.getBaseUri(), router.getUserId(), router.getApiTokenHash(), jobName, new HashMap<>(parameters),
+                JenkinsHttpClientRegistry.hashApiToken(token));
+        SharedBuild build = builds.get(key);
+        if (build == null || !build.isReusable(now, windowMillis)) {
+            build = new SharedBuild(key);
+            builds.put(key, build);
+        }
+        build.participants++;
+        return build;
+    }
+
+    public synchronized void leave(SharedBuild build, boolean abort, JenkinsClient controller) {
+        build.participants--;
+        if (build.watch.isCompletedExceptionally()) {
+            // The trigger failed, so there is no build to abort. The entry is dropped by the next join
+            return;
+        }
+        if (build.participants > 0 || build.isDone()) {
+            return;
+        }
+        // Nobody is waiting for the build anymore
+        builds.remove(build.key, build);
+        JenkinsBuildWatch watch = build.watch.getNow(null);
+        if (watch == null) {
+            return;
+        }
+        if (!abort) {
+            watch.cancel();
+            return;
+        }
+        try {
+            watch.abort(controller != null ? controller : watch.getJenkinsClient());
+        } catch (JenkinsClientException | EncoderException | IOException e) {
+            logger.warn(String.format("Failed to abort the build of %s", build.key.jobName), e);
+        }
+    }
+
+    public static final class SharedBuild {
+
+        private final Key key;
+
+        private final AtomicBoolean triggered = new AtomicBoolean();
+
+        private final CompletableFuture<JenkinsBuildWatch> watch = new CompletableFuture<>();
+
+        private volatile long completedTime;
+
+        private int participants;
+
+        private SharedBuild(Key key) {
+            this.key = key;
+        }
+
+        public boolean claimTrigger() {
+            return triggered.compareAndSet(false, true);
+        }
+
+        public void setWatch(JenkinsBuildWatch watch) {
+            watch.getFuture().whenComplete((build, throwable) -> completedTime = System.currentTimeMillis());
+            this.watch.complete(watch);
+        }
+
+        public void setTriggerFailure(Throwable throwable) {
+            watch.completeExceptionally(throwable);
+        }
+
+        public JenkinsBuildWatch getWatch() throws JenkinsClientException, EncoderException, InterruptedException, IOException {
+            try {
+                return watch.get();
+            } catch (ExecutionException e) {
+                throw CompletableFutures.rethrow(e);
+            }
+        }
+
+        private boolean isDone() {
+            // getNow would throw the trigger failure instead of returning
+            if (this.watch.isCompletedExceptionally()) {
+                return true;
+            }
+            JenkinsBuildWatch watch = this.watch.getNow(null);
+            return watch != null && watch.getFuture().isDone();
+        }
+
+        private boolean isReusable(long now, long windowMillis) {
+            if (watch.isCompletedExceptionally()) {
+                return false;
+            }
+            JenkinsBuildWatch watch = this.watch.getNow(null);
+            if (watch == null || !watch.getFuture().isDone()) {
+                return true;
+            }
+            // An aborted or failed watch has no result worth sharing, unlike a build that finished with a bad result
+            long completedTime = this.completedTime;
+            return !watch.getFuture().isCompletedExceptionally() && (completedTime == 0 || now - completedTime < windowMillis);
+        }
+    }
+
+    private static final class Key {
+
+        private final URI baseUri;
+
+        private final String userId;
+
+        private final String apiTokenHash;
+
+        private final String jobName;
+
+        private final Map<String, String> parameters;
+
+        private final String tokenHash;
+
+        private Key(URI baseUri, String userId, String apiTokenHash, String jobName, Map<String, String> parameters, String tokenHash) {
+            this.baseUri = baseUri;
+            this.userId = userId;
+            this.apiTokenHash = apiTokenHash;
+            this.jobName = jobName;
+            this.parameters = parameters;
+            this.tokenHash = tokenHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return baseUri.equals(key.baseUri) && Objects.equals(userId, key.userId) && Objects.equals(apiTokenHash, key.apiTokenHash) && jobName.equals(key.jobName) && parameters.equals(key.parameters) && Objects.equals(tokenHash, key.tokenHash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(baseUri, userId, apiTokenHash, jobName, parameters, tokenHash);
+        }
+    }
+}
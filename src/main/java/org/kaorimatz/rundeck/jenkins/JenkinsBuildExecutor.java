@@ -1,93 +1,133 @@
 package org.kaorimatz.rundeck.jenkins;
 
 import org.apache.commons.codec.EncoderException;
+import org.apache.log4j.Logger;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
 import java.util.Map;
 
 public class JenkinsBuildExecutor {
 
-    private final JenkinsClient jenkinsClient;
+    private static final Logger logger = Logger.getLogger(JenkinsBuildExecutor.class);
+
+    private final JenkinsControllerRouter router;
 
     private final ConsoleOutputLogger consoleOutputLogger;
 
-    public JenkinsBuildExecutor(JenkinsClient jenkinsClient, ConsoleOutputLogger consoleOutputLogger) {
-        this.jenkinsClient = jenkinsClient;
+    private final JenkinsBuildPoller poller;
+
+    private final JenkinsMetrics metrics;
+
+    public JenkinsBuildExecutor(JenkinsControllerRouter router, ConsoleOutputLogger consoleOutputLogger) {
+        this(router, consoleOutputLogger, JenkinsBuildPoller.getInstance());
+    }
+
+    public JenkinsBuildExecutor(JenkinsControllerRouter router, ConsoleOutputLogger consoleOutputLogger, JenkinsBuildPoller poller) {
+        this(router, consoleOutputLogger, poller, JenkinsMetrics.getInstance());
+    }
+
+    public JenkinsBuildExecutor(JenkinsControllerRouter router, ConsoleOutputLogger consoleOutputLogger, JenkinsBuildPoller poller, JenkinsMetrics metrics) {
+        this.router = router;
         this.consoleOutputLogger = consoleOutputLogger;
+        this.poller = poller;
+        this.metrics = metrics;
     }
 
-    public Build execute(String jobName, Map<String, String> parameters, String token, boolean waitForBuildToFinish, int pollInterval, boolean logConsoleOutput, boolean followConsoleOutput)
+    public JenkinsBuildResult execute(String jobName, Map<String, String> parameters, JenkinsBuildOptions options)
             throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, InterruptedException, IOException {
 
-        long queueItemId = jenkinsClient.build(jobName, parameters, token);
-        if (!waitForBuildToFinish) {
-            return null;
+        long deadline = options.getTimeoutMillis() > 0 ? System.currentTimeMillis() + options.getTimeoutMillis() : 0;
+        if (options.isWaitForBuildToFinish() && options.getCoalesceWindowMillis() > 0) {
+            return executeCoalesced(jobName, parameters, options, deadline);
         }
-        int buildNumber = waitForBuildToBeCreated(jobName, queueItemId, pollInterval);
-
-        if (followConsoleOutput) {
-            followConsoleOutput(jobName, buildNumber, pollInterval);
-            return jenkinsClient.getBuild(jobName, buildNumber);
-        } else {
-            Build build = waitForBuildToFinish(jobName, buildNumber, pollInterval);
-            if (logConsoleOutput) {
-                followConsoleOutput(jobName, buildNumber, pollInterval);
-            }
-            return build;
+
+        // Every later request for the build goes to the controller it was triggered on
+        JenkinsControllerRouter.Assignment assignment = router.assignBuild();
+        JenkinsClient controller = assignment.getController();
+        long queueItemId = assignment.build(jobName, parameters, options.getToken(), deadline);
+        if (!options.isWaitForBuildToFinish()) {
+            return new JenkinsBuildResult(null, controller, deadline);
         }
-    }
 
-    private int waitForBuildToBeCreated(String jobName, long queueItemId, int pollInterval) throws JenkinsBuildCanceledException, JenkinsClientException, InterruptedException, IOException {
-        while (true) {
-            try {
-                QueueItem queueItem = jenkinsClient.getQueueItem(queueItemId);
-                if (queueItem.isCancelled()) {
-                    String message = String.format("Job %s has been canceled", jobName);
-                    throw new JenkinsBuildCanceledException(message);
-                }
-                Executable executable = queueItem.getExecutable();
-                if (executable != null) {
-                    return executable.getNumber();
-                }
-                Thread.sleep(pollInterval * 1000);
-            } catch (InterruptedIOException | InterruptedException e) {
-                jenkinsClient.cancelQueueItem(queueItemId);
-                throw e;
-            }
+        JenkinsBuildWatch watch = poller.watch(controller, jobName, queueItemId, options.getPollingStrategy(), options.isLogConsoleOutput(),
+                options.isFollowConsoleOutput(), options.isPrefetchConsoleOutput(), options.getConsoleOutputTail());
+        if (options.getCallback() != null) {
+            options.getCallback().getFuture().thenRun(watch::wake);
+        }
+        try {
+            Build build = watch.await(consoleOutputLogger, deadline);
+            metrics.recordPhases(watch);
+            return new JenkinsBuildResult(build, controller, deadline);
+        } catch (InterruptedException | JenkinsTimeoutException e) {
+            watch.abort();
+            throw e;
+        } finally {
+            watch.cancel();
         }
     }
 
-    private Build waitForBuildToFinish(String jobName, int buildNumber, int pollInterval) throws InterruptedException, JenkinsClientException, EncoderException, IOException {
-        while (true) {
-            try {
-                Build build = jenkinsClient.getBuild(jobName, buildNumber);
-                if (!build.isBuilding()) {
-                    return build;
+    private JenkinsBuildResult executeCoalesced(String jobName, Map<String, String> parameters, JenkinsBuildOptions options, long deadline)
+            throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+        JenkinsBuildCoalescer.SharedBuild sharedBuild = JenkinsBuildCoalescer.getInstance().join(router, jobName, parameters, options.getToken(), options.getCoalesceWindowMillis());
+        boolean triggered = sharedBuild.claimTrigger();
+        boolean abort = false;
+        JenkinsClient controller = null;
+        try {
+            JenkinsBuildWatch watch;
+            if (triggered) {
+                try {
+                    JenkinsControllerRouter.Assignment assignment = router.assignBuild();
+                    long queueItemId = assignment.build(jobName, parameters, options.getToken(), deadline);
+                    // The console output is fetched by each caller once the build has finished, as the watch is shared
+                    watch = poller.watch(assignment.getController(), jobName, queueItemId, options.getPollingStrategy(), false, false, false);
+                } catch (JenkinsClientException | EncoderException | InterruptedException | IOException | RuntimeException e) {
+                    sharedBuild.setTriggerFailure(e);
+                    throw e;
                 }
-                Thread.sleep(pollInterval * 1000);
-            } catch (InterruptedIOException | InterruptedException e) {
-                jenkinsClient.stopBuild(jobName, buildNumber);
-                throw e;
+                sharedBuild.setWatch(watch);
+                if (options.getCallback() != null) {
+                    options.getCallback().getFuture().thenRun(watch::wake);
+                }
+            } else {
+                watch = sharedBuild.getWatch();
+                logger.info(String.format("Attached to the build of %s triggered by another execution. queueItemId=%d", jobName, watch.getQueueItemId()));
+            }
+            // The log is read and the build aborted through this step's own client. The coalescing key guarantees the same
+            // credentials, so the shared client is only used if this step is not configured with the build's controller
+            JenkinsClient ownController = router.getController(watch.getJenkinsClient().getBaseUri());
+            controller = ownController != null ? ownController : watch.getJenkinsClient();
+            Build build = watch.awaitResult(deadline);
+            if (triggered) {
+                metrics.recordPhases(watch);
+            }
+            if (options.isLogConsoleOutput()) {
+                logConsoleOutput(controller, jobName, watch.getBuildNumber(), options, deadline);
             }
+            return new JenkinsBuildResult(build, controller, deadline);
+        } catch (InterruptedException | JenkinsTimeoutException e) {
+            abort = true;
+            throw e;
+        } finally {
+            JenkinsBuildCoalescer.getInstance().leave(sharedBuild, abort, controller);
         }
     }
 
-    private void followConsoleOutput(String jobName, int buildNumber, int pollInterval) throws InterruptedException, JenkinsClientException, EncoderException, IOException {
-        long position = 0;
-        while (true) {
-            try {
-                LogText logText = jenkinsClient.getLogText(jobName, buildNumber, position);
-                consoleOutputLogger.log(logText.getContent());
-                if (logText.isComplete()) {
-                    return;
-                }
-                position = logText.getPosition();
-                Thread.sleep(pollInterval * 1000);
-            } catch (InterruptedIOException | InterruptedException e) {
-                jenkinsClient.stopBuild(jobName, buildNumber);
-                throw e;
+    private void logConsoleOutput(JenkinsClient controller, String jobName, int buildNumber, JenkinsBuildOptions options, long deadline)
+            throws JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+        long position = JenkinsAvailability.await(() -> options.getConsoleOutputTail().skip(controller, jobName, buildNumber, consoleOutputLogger), deadline);
+        boolean skipPartialLine = position > 0;
+        for (int attempt = 0; ; attempt++) {
+            long start = position;
+            boolean skip = skipPartialLine;
+            LogTextProgress logText = JenkinsAvailability.await(() -> controller.getLogText(jobName, buildNumber, start, -1, skip, consoleOutputLogger), deadline);
+            skipPartialLine = false;
+            if (logText.isComplete()) {
+                return;
             }
+            position = logText.getPosition();
+            Thread.sleep(options.getPollingStrategy().getLoggingDelay(attempt));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,118 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.concurrent.TimeUnit;
+
+public class JenkinsBuildOptions {
+
+    private static final long DEFAULT_POLL_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private String token;
+
+    private boolean waitForBuildToFinish = true;
+
+    private PollingStrategy pollingStrategy = new FixedPollingStrategy(DEFAULT_POLL_INTERVAL_MILLIS);
+
+    private boolean logConsoleOutput;
+
+    private boolean followConsoleOutput;
+
+    private boolean prefetchConsoleOutput;
+
+    private ConsoleOutputTail consoleOutputTail = ConsoleOutputTail.WHOLE;
+
+    private JenkinsCallback callback;
+
+    private long timeoutMillis;
+
+    private long coalesceWindowMillis;
+
+    public String getToken() {
+        return token;
+    }
+
+    public JenkinsBuildOptions setToken(String token) {
+        this.token = token;
+        return this;
+    }
+
+    public boolean isWaitForBuildToFinish() {
+        return waitForBuildToFinish;
+    }
+
+    public JenkinsBuildOptions setWaitForBuildToFinish(boolean waitForBuildToFinish) {
+        this.waitForBuildToFinish = waitForBuildToFinish;
+        return this;
+    }
+
+    public PollingStrategy getPollingStrategy() {
+        return pollingStrategy;
+    }
+
+    public JenkinsBuildOptions setPollingStrategy(PollingStrategy pollingStrategy) {
+        this.pollingStrategy = pollingStrategy;
+        return this;
+    }
+
+    public boolean isLogConsoleOutput() {
+        return logConsoleOutput;
+    }
+
+    public JenkinsBuildOptions setLogConsoleOutput(boolean logConsoleOutput) {
+        this.logConsoleOutput = logConsoleOutput;
+        return this;
+    }
+
+    public boolean isFollowConsoleOutput() {
+        return followConsoleOutput;
+    }
+
+    public JenkinsBuildOptions setFollowConsoleOutput(boolean followConsoleOutput) {
+        this.followConsoleOutput = followConsoleOutput;
+        return this;
+    }
+
+    public boolean isPrefetchConsoleOutput() {
+        return prefetchConsoleOutput;
+    }
+
+    public JenkinsBuildOptions setPrefetchConsoleOutput(boolean prefetchConsoleOutput) {
+        this.prefetchConsoleOutput = prefetchConsoleOutput;
+        return this;
+    }
+
+    public ConsoleOutputTail getConsoleOutputTail() {
+        return consoleOutputTail;
+    }
+
+    public JenkinsBuildOptions setConsoleOutputTail(ConsoleOutputTail consoleOutputTail) {
+        this.consoleOutputTail = consoleOutputTail;
+        return this;
+    }
+
+    public JenkinsCallback getCallback() {
+        return callback;
+    }
+
+    public JenkinsBuildOptions setCallback(JenkinsCallback callback) {
+        this.callback = callback;
+        return this;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public JenkinsBuildOptions setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public long getCoalesceWindowMillis() {
+        return coalesceWindowMillis;
+    }
+
+    public JenkinsBuildOptions setCoalesceWindow(long coalesceWindowMillis) {
+        this.coalesceWindowMillis = coalesceWindowMillis;
+        return this;
+    }
+}
@@ -0,0 +1,113 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.log4j.Logger;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JenkinsBuildPoller {
+
+    private static final Logger logger = Logger.getLogger(JenkinsBuildPoller.class);
+
+    private static final int SCHEDULER_THREADS = 1;
+
+    private static final int MAX_WORKER_THREADS = 32;
+
+    private static final int MAX_LOG_THREADS = 16;
+
+    private static final JenkinsBuildPoller INSTANCE = new JenkinsBuildPoller(createScheduler(), createWorkerExecutor(), createLogExecutor());
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ExecutorService workerExecutor;
+
+    private final ExecutorService logExecutor;
+
+    public JenkinsBuildPoller(ScheduledExecutorService scheduler, ExecutorService workerExecutor, ExecutorService logExecutor) {
+        this.scheduler = scheduler;
+        this.workerExecutor = workerExecutor;
+        this.logExecutor = logExecutor;
+    }
+
+    public static JenkinsBuildPoller getInstance() {
+        return INSTANCE;
+    }
+
+    private static ScheduledExecutorService createScheduler() {
+        return Executors.newScheduledThreadPool(SCHEDULER_THREADS, createThreadFactory("jenkins-build-poller-scheduler"));
+    }
+
+    private static ExecutorService createWorkerExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads are not available. Falling back to a platform thread pool");
+        }
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_WORKER_THREADS, MAX_WORKER_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), createThreadFactory("jenkins-build-poller-worker"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ExecutorService createLogExecutor() {
+        // Console output is streamed by its own threads, so that downloading large logs does not hold up polling
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(MAX_LOG_THREADS, MAX_LOG_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), createThreadFactory("jenkins-build-poller-log"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format("%s-%d", namePrefix, threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public JenkinsBuildWatch watch(JenkinsClient jenkinsClient, String jobName, long queueItemId, PollingStrategy pollingStrategy, boolean logConsoleOutput, boolean followConsoleOutput, boolean prefetchConsoleOutput) {
+        return watch(jenkinsClient, jobName, queueItemId, pollingStrategy, logConsoleOutput, followConsoleOutput, prefetchConsoleOutput, ConsoleOutputTail.WHOLE);
+    }
+
+    public JenkinsBuildWatch watch(JenkinsClient jenkinsClient, String jobName, long queueItemId, PollingStrategy pollingStrategy, boolean logConsoleOutput, boolean followConsoleOutput, boolean prefetchConsoleOutput,
+            ConsoleOutputTail consoleOutputTail) {
+        JenkinsBuildWatch watch = new JenkinsBuildWatch(this, jenkinsClient, jobName, queueItemId, pollingStrategy, logConsoleOutput, followConsoleOutput, prefetchConsoleOutput, consoleOutputTail);
+        watch.wake();
+        return watch;
+    }
+
+    Executor getWorkerExecutor() {
+        return workerExecutor;
+    }
+
+    Executor getLogExecutor() {
+        return logExecutor;
+    }
+
+    void schedule(JenkinsBuildWatch watch, long delayMillis, long generation) {
+        try {
+            scheduler.schedule(() -> execute(watch, generation), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            watch.fail(e);
+        }
+    }
+
+    private void execute(JenkinsBuildWatch watch, long generation) {
+        try {
+            workerExecutor.execute(() -> watch.poll(generation));
+        } catch (RejectedExecutionException e) {
+            watch.fail(e);
+        }
+    }
+}
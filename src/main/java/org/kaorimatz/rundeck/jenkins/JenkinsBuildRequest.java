@@ -0,0 +1,36 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+
+public class JenkinsBuildRequest {
+
+    private final String jobName;
+
+    private final Map<String, String> parameters;
+
+    public JenkinsBuildRequest(String jobName, Map<String, String> parameters) {
+        this.jobName = jobName;
+        this.parameters = parameters;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    public String getLabel(Map<String, String> commonParameters) {
+        StringJoiner label = new StringJoiner(" ");
+        label.add(jobName);
+        for (Map.Entry<String, String> parameter : new TreeMap<>(parameters).entrySet()) {
+            if (!parameter.getValue().equals(commonParameters.get(parameter.getKey()))) {
+                label.add(String.format("%s=%s", parameter.getKey(), parameter.getValue()));
+            }
+        }
+        return label.toString();
+    }
+}
@@ -0,0 +1,31 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public class JenkinsBuildResult {
+
+    private final Build build;
+
+    private final JenkinsClient controller;
+
+    private final long deadline;
+
+    public JenkinsBuildResult(Build build, JenkinsClient controller, long deadline) {
+        this.build = build;
+        this.controller = controller;
+        this.deadline = deadline;
+    }
+
+    // Null if the step did not wait for the build to finish
+    public Build getBuild() {
+        return build;
+    }
+
+    // The controller the build ran on, to which any later request for the build must go
+    public JenkinsClient getController() {
+        return controller;
+    }
+
+    // The end of the step timeout, or 0 if there is none, so that later work such as downloading artifacts is bounded too
+    public long getDeadline() {
+        return deadline;
+    }
+}
@@ -1,11 +1,11 @@
 package org.kaorimatz.rundeck.jenkins;
 
+import com.dtolabs.rundeck.core.Constants;
 import com.dtolabs.rundeck.core.execution.workflow.steps.StepException;
 import com.dtolabs.rundeck.core.execution.workflow.steps.StepFailureReason;
 import com.dtolabs.rundeck.core.plugins.Plugin;
 import com.dtolabs.rundeck.core.plugins.configuration.PropertyScope;
 import com.dtolabs.rundeck.core.plugins.configuration.StringRenderingConstants;
-import com.dtolabs.rundeck.core.storage.ResourceMeta;
 import com.dtolabs.rundeck.plugins.ServiceNameConstants;
 import com.dtolabs.rundeck.plugins.descriptions.PluginDescription;
 import com.dtolabs.rundeck.plugins.descriptions.PluginProperty;
@@ -16,16 +16,14 @@ import com.dtolabs.rundeck.plugins.step.PluginStepContext;
 import com.dtolabs.rundeck.plugins.step.StepPlugin;
 import org.apache.commons.codec.EncoderException;
 import org.apache.commons.lang.StringUtils;
-import org.rundeck.storage.api.StorageException;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.StringReader;
-import java.net.URISyntaxException;
-import java.util.Collections;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
+import java.util.concurrent.TimeUnit;
 
 @Plugin(name = "jenkins-build", service = ServiceNameConstants.WorkflowStep)
 @PluginDescription(title = "Jenkins Build", description = "Build a Jenkins job")
@@ -52,23 +50,95 @@ public class JenkinsBuildStepPlugin implements StepPlugin {
     @PluginProperty(title = "Wait for the triggered build to finish", scope = PropertyScope.Instance)
     private boolean waitForBuildToFinish;
 
-    @PluginProperty(title = "Poll interval (seconds)", description = "The interval to wait between polling the build until it finishes", defaultValue = "10", scope = PropertyScope.Instance)
+    @PluginProperty(title = "Polling strategy", description = "FIXED polls at the poll interval. ADAPTIVE polls fast at first, backs off up to the maximum poll interval and uses the estimated duration of the build", defaultValue = "FIXED", scope = PropertyScope.Instance)
+    @SelectValues(values = {"FIXED", "ADAPTIVE"})
+    private String pollingStrategy;
+
+    @PluginProperty(title = "Poll interval (seconds)", description = "The interval to wait between polling the build until it finishes with the FIXED polling strategy", defaultValue = "10", scope = PropertyScope.Instance)
     private int pollInterval;
 
+    @PluginProperty(title = "Maximum poll interval (seconds)", description = "The maximum interval to wait between polling the build with the ADAPTIVE polling strategy", defaultValue = "60", scope = PropertyScope.Instance)
+    private int maxPollInterval;
+
     @PluginProperty(title = "Log the console output of the triggered build", scope = PropertyScope.Instance)
     private boolean logConsoleOutput;
 
     @PluginProperty(title = "Follow the console output of the triggered build", scope = PropertyScope.Instance)
     private boolean followConsoleOutput;
 
+    @PluginProperty(title = "Batch console output", description = "Log several console output lines as one log entry, which is much faster for large outputs. Always on when the console output is capped", scope = PropertyScope.Instance)
+    private boolean batchConsoleOutput;
+
+    @PluginProperty(title = "Prefetch the console output of the triggered build", description = "Fetch the console output in the background while the build runs and log it when the build finishes. Only applies when the console output is logged but not followed", scope = PropertyScope.Instance)
+    private boolean prefetchConsoleOutput;
+
+    @PluginProperty(title = "Maximum console output size (bytes)", description = "The maximum size of the console output to log. 0 means unlimited", defaultValue = "0", scope = PropertyScope.Instance)
+    private long maxConsoleOutputBytes;
+
+    @PluginProperty(title = "Maximum console output lines per second", description = "The maximum number of console output lines to log per second. 0 means unlimited", defaultValue = "0", scope = PropertyScope.Instance)
+    private int maxConsoleOutputLinesPerSecond;
+
+    @PluginProperty(title = "Console output head lines", description = "The number of lines to keep from the head of the console output when the output is truncated", defaultValue = "0", scope = PropertyScope.Instance)
+    private int consoleOutputHeadLines;
+
+    @PluginProperty(title = "Console output tail lines", description = "The number of lines to keep from the tail of the console output when the output is truncated. If either this or the number of head lines is set, the lines in between are omitted", defaultValue = "0", scope = PropertyScope.Instance)
+    private int consoleOutputTailLines;
+
+    @PluginProperty(title = "Console output tail size (bytes)", description = "Once the build has finished, fetch only this many bytes from the end of its console output, so that the rest of a huge log is not transferred. Counted in bytes, as Jenkins cannot seek the log by lines; use the tail lines to truncate what is logged. Does not apply when the console output is followed or prefetched. 0 means the whole console output", defaultValue = "0", scope = PropertyScope.Instance)
+    private long consoleOutputTailBytes;
+
+    @PluginProperty(title = "Console output head size (bytes)", description = "The number of bytes to fetch from the start of the console output along with its tail. Only applies when the tail size is set", defaultValue = "0", scope = PropertyScope.Instance)
+    private long consoleOutputHeadBytes;
+
+    @PluginProperty(title = "Timeout (seconds)", description = "The maximum time to wait for the build to finish. The build is aborted when the timeout expires. 0 means no timeout", defaultValue = "0", scope = PropertyScope.Instance)
+    private int timeout;
+
+    @PluginProperty(title = "Coalesce window (seconds)", description = "Wait for an identical build (same job, parameters and token) that is still running or finished within this many seconds instead of triggering a new one. The console output is logged when the build finishes and callbacks are not used. 0 disables coalescing", defaultValue = "0", scope = PropertyScope.Instance)
+    private int coalesceWindow;
+
     @PluginProperty(title = "Failure threshold", description = "Fail the step if the build result is worse or equal to this", scope = PropertyScope.Instance)
     @SelectValues(values = {"SUCCESS", "UNSTABLE", "FAILURE"})
     private String failureThreshold;
 
-    @PluginProperty(title = "Jenkins base URL", description = "The base URL of Jenkins", scope = PropertyScope.Instance, validatorClass = URIPropertyValidator.class)
+    @PluginProperty(title = "Artifacts directory", description = "The local directory to download the artifacts of the build to once it finishes without failing. Empty disables downloading", scope = PropertyScope.Instance)
+    private String artifactsDirectory;
+
+    @PluginProperty(title = "Artifact includes", description = "Comma-separated glob patterns of the artifacts to download, e.g. target/*.jar. A pattern without a slash also matches the file name. Empty means all. Checksum files (.sha512, .sha256, .sha1 or .md5) next to a matching artifact are downloaded and verified along with it", scope = PropertyScope.Instance)
+    private String artifactIncludes;
+
+    @PluginProperty(title = "Artifact excludes", description = "Comma-separated glob patterns of the artifacts not to download", scope = PropertyScope.Instance)
+    private String artifactExcludes;
+
+    @PluginProperty(title = "Callback parameter", description = "The build parameter to pass the callback URL in. The Jenkins job is expected to send a POST request to it when the build finishes", defaultValue = "RUNDECK_CALLBACK_URL", scope = PropertyScope.Instance)
+    private String callbackParameter;
+
+    @PluginProperty(title = "Callback verification interval (seconds)", description = "The interval to poll the build at while waiting for the callback", defaultValue = "300", scope = PropertyScope.Instance)
+    private int callbackVerificationInterval;
+
+    @PluginProperty(title = "Connect timeout (seconds)", description = "The timeout for connecting to Jenkins", defaultValue = "10", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int connectTimeout;
+
+    @PluginProperty(title = "Read timeout (seconds)", description = "The timeout for waiting for data from Jenkins", defaultValue = "60", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int readTimeout;
+
+    @PluginProperty(title = "Maximum retries", description = "The maximum number of times to retry a failed status or console output request. A trigger is only retried if it could not connect to Jenkins", defaultValue = "3", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int maxRetries;
+
+    @PluginProperty(title = "Maximum concurrent downloads", description = "The maximum number of artifacts to download at once", defaultValue = "4", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int maxConcurrentDownloads;
+
+    @PluginProperty(title = "Jenkins base URL", description = "The base URL of Jenkins. Separate the URLs of identical controllers with commas to send each build to the least loaded one", scope = PropertyScope.Instance, validatorClass = URIListPropertyValidator.class)
     @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
     private String baseUrl;
 
+    @PluginProperty(title = "Callback URL", description = "The base URL of the callback listener on this Rundeck server as reachable from Jenkins, e.g. http://rundeck.example.com:4441. If set, the step waits for the Jenkins job to call back instead of polling it frequently", scope = PropertyScope.Instance, validatorClass = URIPropertyValidator.class)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private String callbackUrl;
+
     @PluginProperty(title = "User ID", description = "The ID of the user to access Jenkins", scope = PropertyScope.Instance)
     @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
     private String userId;
@@ -84,88 +154,86 @@ public class JenkinsBuildStepPlugin implements StepPlugin {
 
     @Override
     public void executeStep(PluginStepContext context, Map<String, Object> configuration) throws StepException {
-        JenkinsClient jenkinsClient = buildJenkinsClient(getApiToken(apiTokenPath, context));
-        ConsoleOutputLogger logger = new DefaultConsoleOutputLogger(context.getLogger());
-        JenkinsBuildExecutor executor = new JenkinsBuildExecutor(jenkinsClient, logger);
+        JenkinsMetrics metrics = new JenkinsMetrics(JenkinsMetrics.getInstance());
+        JenkinsControllerRouter router = JenkinsSteps.buildControllerRouter(JenkinsSteps.newJenkinsClientBuilder(context, baseUrl, userId, JenkinsSteps.getApiToken(apiTokenPath, context))
+                .setMetrics(metrics)
+                .setTimeouts((int) TimeUnit.SECONDS.toMillis(connectTimeout), (int) TimeUnit.SECONDS.toMillis(readTimeout))
+                .setMaxRetries(maxRetries));
+        Map<String, String> buildParameters = JenkinsSteps.parseParameters(parameters);
+        PollingStrategy strategy = JenkinsSteps.createPollingStrategy(pollingStrategy, pollInterval, maxPollInterval);
+        JenkinsCallback callback = null;
+        if (waitForBuildToFinish && coalesceWindow <= 0 && StringUtils.isNotBlank(callbackUrl)) {
+            callback = JenkinsSteps.registerCallback(callbackUrl);
+            buildParameters = new HashMap<>(buildParameters);
+            buildParameters.put(callbackParameter, callback.getUrl());
+            strategy = new CallbackPollingStrategy(strategy, TimeUnit.SECONDS.toMillis(callbackVerificationInterval), callback.getFuture());
+        }
         Build build;
-        try {
-            build = executor.execute(jobName, parseParameters(parameters), getAuthorizationToken(authorizationTokenPath, context), waitForBuildToFinish, pollInterval, logConsoleOutput, followConsoleOutput);
+        try (ConsoleOutputLogger logger = JenkinsSteps.createConsoleOutputLogger(context.getLogger(), batchConsoleOutput, maxConsoleOutputBytes, maxConsoleOutputLinesPerSecond, consoleOutputHeadLines, consoleOutputTailLines)) {
+            JenkinsBuildOptions options = new JenkinsBuildOptions()
+                    .setToken(JenkinsSteps.getAuthorizationToken(authorizationTokenPath, context))
+                    .setWaitForBuildToFinish(waitForBuildToFinish)
+                    .setPollingStrategy(strategy)
+                    .setLogConsoleOutput(logConsoleOutput)
+                    .setFollowConsoleOutput(followConsoleOutput)
+                    .setPrefetchConsoleOutput(prefetchConsoleOutput)
+                    .setConsoleOutputTail(new ConsoleOutputTail(consoleOutputHeadBytes, consoleOutputTailBytes))
+                    .setCallback(callback)
+                    .setTimeout(TimeUnit.SECONDS.toMillis(timeout))
+                    .setCoalesceWindow(TimeUnit.SECONDS.toMillis(coalesceWindow));
+            JenkinsBuildResult result = new JenkinsBuildExecutor(router, logger, JenkinsBuildPoller.getInstance(), metrics).execute(jobName, buildParameters, options);
+            build = result.getBuild();
+            if (build != null && StringUtils.isNotBlank(artifactsDirectory) && !isFailed(build)) {
+                downloadArtifacts(context, result.getController(), build, result.getDeadline());
+            }
         } catch (JenkinsBuildCanceledException e) {
             throw new StepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsBuildCanceled);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new StepException(e.getMessage(), e, StepFailureReason.Interrupted);
+        } catch (JenkinsTimeoutException e) {
+            throw new StepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsBuildTimedOut);
         } catch (JenkinsClientException e) {
+            JenkinsSteps.invalidateSecrets(context, e, apiTokenPath, authorizationTokenPath);
             throw new StepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsFailure);
         } catch (IOException e) {
             throw new StepException(e.getMessage(), e, StepFailureReason.IOFailure);
         } catch (EncoderException e) {
             throw new StepException(e.getMessage(), e, StepFailureReason.ConfigurationFailure);
+        } finally {
+            if (callback != null) {
+                callback.close();
+            }
+            context.getLogger().log(Constants.INFO_LEVEL, metrics.getSummary());
         }
-        if (build != null && failureThreshold != null && build.getResult().isWorseOrEqualTo(Result.valueOf(failureThreshold))) {
+        if (build != null && isFailed(build)) {
             String message = String.format("Build result is worse or equal to '%s'. result = %s", failureThreshold, build.getResult());
             throw new StepException(message, JenkinsStepFailureReason.JenkinsBuildFailure);
         }
     }
 
-    private String getApiToken(String path, PluginStepContext context) throws StepException {
-        try {
-            return readValueFromKeyStorage(context, path);
-        } catch (StorageException | IOException e) {
-            String message = String.format("Failed to get API token from Key Storage, apiTokenPath=%s", path);
-            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
-        }
-    }
-
-    private String readValueFromKeyStorage(PluginStepContext context, String path) throws IOException {
-        if (StringUtils.isBlank(path)) {
-            return null;
-        }
-        ResourceMeta contents = context.getExecutionContext().getStorageTree().getResource(path).getContents();
-        ByteArrayOutputStream stream = new ByteArrayOutputStream();
-        contents.writeContent(stream);
-        return stream.toString();
-    }
-
-    private JenkinsClient buildJenkinsClient(String apiToken) throws StepException {
-        if (StringUtils.isBlank(baseUrl)) {
-            throw new StepException("baseUrl is required", StepFailureReason.ConfigurationFailure);
-        }
-        try {
-            return new DefaultJenkinsClientBuilder(baseUrl)
-                    .setUserId(StringUtils.trimToNull(userId))
-                    .setApiToken(StringUtils.trimToNull(apiToken))
-                    .build();
-        } catch (URISyntaxException e) {
-            String message = String.format("Invalid Jenkins base URL. baseUrl=%s", baseUrl);
-            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
-        }
+    private boolean isFailed(Build build) {
+        return failureThreshold != null && build.getResult().isWorseOrEqualTo(Result.valueOf(failureThreshold));
     }
 
-    private String getAuthorizationToken(String path, PluginStepContext context) throws StepException {
-        try {
-            return readValueFromKeyStorage(context, path);
-        } catch (StorageException | IOException e) {
-            String message = String.format("Failed to get authorization token from Key Storage, authorizationTokenPath=%s", path);
-            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
-        }
-    }
-
-    private Map<String, String> parseParameters(String parametersString) throws StepException {
-        if (StringUtils.isBlank(parametersString)) {
-            return Collections.emptyMap();
-        }
-        Properties properties = new Properties();
+    private void downloadArtifacts(PluginStepContext context, JenkinsClient jenkinsClient, Build build, long deadline) throws StepException, JenkinsClientException, EncoderException, InterruptedException {
+        Path directory = Paths.get(artifactsDirectory);
+        List<Path> paths;
         try {
-            properties.load(new StringReader(parametersString));
+            paths = new JenkinsArtifactDownloader(jenkinsClient)
+                    .setIncludes(artifactIncludes)
+                    .setExcludes(artifactExcludes)
+                    .setMaxConcurrentDownloads(maxConcurrentDownloads)
+                    .setMaxRetries(maxRetries)
+                    .setDeadline(deadline)
+                    .download(jobName, build.getNumber(), directory);
         } catch (IOException e) {
-            String message = String.format("Unable to parse parameters. parameters=%s", parametersString);
-            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
+            throw new StepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsArtifactDownloadFailure);
         }
-        Map<String, String> parameters = new HashMap<>();
-        for (String key : properties.stringPropertyNames()) {
-            parameters.put(key, properties.getProperty(key));
+        long bytes = 0;
+        for (Path path : paths) {
+            bytes += path.toFile().length();
         }
-        return parameters;
+        context.getLogger().log(Constants.INFO_LEVEL, String.format("Downloaded %d artifacts (%s) to %s", paths.size(), JenkinsMetrics.formatBytes(bytes), directory));
     }
 }
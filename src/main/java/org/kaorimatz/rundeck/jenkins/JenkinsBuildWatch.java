@@ -0,0 +1,581 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class JenkinsBuildWatch {
+
+    private static final Logger logger = Logger.getLogger(JenkinsBuildWatch.class);
+
+    private static final int CONSOLE_OUTPUT_CAPACITY = 1024;
+
+    private static final long CONSOLE_OUTPUT_POLL_TIMEOUT = 100;
+
+    // Returned by a poll that left console output undelivered. The step thread wakes the watch once it has drained some
+    private static final long PARKED = -2;
+
+    private static final long NO_POLL = -1;
+
+    // A watch whose step has no timeout would otherwise wait for an unreachable Jenkins forever
+    private static final long MAX_UNAVAILABLE_MILLIS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final long ABORT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    public enum State {
+        QUEUED, RUNNING, LOGGING, DONE
+    }
+
+    private final JenkinsBuildPoller poller;
+
+    private final JenkinsClient jenkinsClient;
+
+    private final String jobName;
+
+    private final long queueItemId;
+
+    private final PollingStrategy pollingStrategy;
+
+    private final boolean logConsoleOutput;
+
+    private final boolean followConsoleOutput;
+
+    private final boolean prefetchConsoleOutput;
+
+    private final ConsoleOutputTail consoleOutputTail;
+
+    private final CompletableFuture<Build> future = new CompletableFuture<>();
+
+    private final BlockingQueue<ConsoleOutput> consoleOutputs = new LinkedBlockingQueue<>(CONSOLE_OUTPUT_CAPACITY);
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final AtomicBoolean polling = new AtomicBoolean();
+
+    private final AtomicBoolean parked = new AtomicBoolean();
+
+    private volatile State state = State.QUEUED;
+
+    private volatile boolean cancelled;
+
+    private volatile int buildNumber;
+
+    private volatile Runnable listener;
+
+    // The fields below belong to the poll in flight, of which there is at most one. They are only touched on the worker
+    // threads, which take turns through the poller and the completion of each request. Work handed to the log threads
+    // gets what it needs as arguments and returns its result for a worker thread to apply. Only the spool goes along
+
+    private long position;
+
+    private Build build;
+
+    private int attempt;
+
+    // One spool for the whole watch, which only creates a file once a poll fetches more than it keeps in memory
+    private final ConsoleOutputSpool consoleOutputSpool = new ConsoleOutputSpool();
+
+    private boolean undelivered;
+
+    private ConsoleOutput nextConsoleOutput;
+
+    private boolean logComplete;
+
+    private boolean tailSkipped;
+
+    private boolean skipPartialLine;
+
+    private long unavailableSince;
+
+    private final long[] durations = new long[State.values().length];
+
+    private long stateStartTime = System.nanoTime();
+
+    JenkinsBuildWatch(JenkinsBuildPoller poller, JenkinsClient jenkinsClient, String jobName, long queueItemId, PollingStrategy pollingStrategy, boolean logConsoleOutput, boolean followConsoleOutput, boolean prefetchConsoleOutput, ConsoleOutputTail consoleOutputTail) {
+        this.poller = poller;
+        this.jenkinsClient = jenkinsClient;
+        this.jobName = jobName;
+        this.queueItemId = queueItemId;
+        this.pollingStrategy = pollingStrategy;
+        this.logConsoleOutput = logConsoleOutput;
+        this.followConsoleOutput = followConsoleOutput;
+        this.prefetchConsoleOutput = logConsoleOutput && !followConsoleOutput && prefetchConsoleOutput;
+        this.consoleOutputTail = consoleOutputTail;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public JenkinsClient getJenkinsClient() {
+        return jenkinsClient;
+    }
+
+    public long getQueueItemId() {
+        return queueItemId;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public CompletableFuture<Build> getFuture() {
+        return future;
+    }
+
+    public String getJobName() {
+        return jobName;
+    }
+
+    public long getDuration(State state) {
+        return TimeUnit.NANOSECONDS.toMillis(durations[state.ordinal()]);
+    }
+
+    public Build await(ConsoleOutputLogger consoleOutputLogger)
+            throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+        return await(consoleOutputLogger, 0);
+    }
+
+    public Build await(ConsoleOutputLogger consoleOutputLogger, long deadline)
+            throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+        while (!drain(consoleOutputLogger, CONSOLE_OUTPUT_POLL_TIMEOUT)) {
+            if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                String message = String.format("Timed out waiting for the build of %s to finish", jobName);
+                throw new JenkinsTimeoutException(message);
+            }
+        }
+        return getResult();
+    }
+
+    public Build awaitResult(long deadline)
+            throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+        try {
+            if (deadline > 0) {
+                future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } else {
+                future.get();
+            }
+        } catch (TimeoutException e) {
+            String message = String.format("Timed out waiting for the build of %s to finish", jobName);
+            throw new JenkinsTimeoutException(message);
+        } catch (ExecutionException e) {
+            // Rethrown by getResult
+        }
+        return getResult();
+    }
+
+    public void setListener(Runnable listener) {
+        // Run whenever console output is queued or the watch ends, so that one thread can drain many watches without
+        // polling each of them. Anything queued before the listener was set is not signalled
+        this.listener = listener;
+    }
+
+    private void signal() {
+        Runnable listener = this.listener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    public boolean drain(ConsoleOutputLogger consoleOutputLogger, long timeout) throws InterruptedException, IOException {
+        ConsoleOutput consoleOutput = consoleOutputs.poll(timeout, TimeUnit.MILLISECONDS);
+        if (consoleOutput == null) {
+            consoleOutputLogger.flush();
+            unpark();
+            return future.isDone() && consoleOutputs.isEmpty();
+        }
+        do {
+            if (consoleOutput.isEnd()) {
+                return true;
+            }
+            consoleOutputLogger.log(consoleOutput.getContent());
+        } while ((consoleOutput = consoleOutputs.poll()) != null);
+        unpark();
+        return false;
+    }
+
+    private void unpark() {
+        if (parked.compareAndSet(true, false)) {
+            wake();
+        }
+    }
+
+    public Build getResult() throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, InterruptedException, IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof JenkinsBuildCanceledException) {
+                throw (JenkinsBuildCanceledException) e.getCause();
+            }
+            throw CompletableFutures.rethrow(e);
+        }
+    }
+
+    public void abort() throws JenkinsClientException, EncoderException, IOException {
+        abort(jenkinsClient);
+    }
+
+    public void abort(JenkinsClient jenkinsClient) throws JenkinsClientException, EncoderException, IOException {
+        State state = cancel();
+        if (state == State.DONE) {
+            return;
+        }
+        // Retried for a while, as the client no longer waits out a failed request itself
+        long deadline = System.currentTimeMillis() + ABORT_TIMEOUT_MILLIS;
+        try {
+            JenkinsAvailability.await(() -> {
+                if (state == State.QUEUED) {
+                    jenkinsClient.cancelQueueItem(queueItemId);
+                } else {
+                    jenkinsClient.stopBuild(jobName, buildNumber);
+                }
+                return null;
+            }, deadline);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while aborting the build");
+        }
+    }
+
+    public State cancel() {
+        cancelled = true;
+        if (parked.compareAndSet(true, false)) {
+            // Nothing drains the console output any more, so the parked watch is polled once to discard it
+            poller.schedule(this, 0, generation.incrementAndGet());
+        }
+        return state;
+    }
+
+    public void wake() {
+        if (cancelled || future.isDone()) {
+            return;
+        }
+        poller.schedule(this, 0, generation.incrementAndGet());
+    }
+
+    void poll(long generation) {
+        if (generation != this.generation.get()) {
+            // Superseded by a wake-up that scheduled another poll
+            return;
+        }
+        if (!polling.compareAndSet(false, true)) {
+            // The poll in flight schedules another one when it finishes
+            return;
+        }
+        if (cancelled || future.isDone()) {
+            discardConsoleOutputSpool();
+            finishPoll(generation, NO_POLL);
+            return;
+        }
+        CompletableFuture<Long> delay;
+        try {
+            delay = advance();
+        } catch (Exception e) {
+            delay = CompletableFutures.failed(e);
+        }
+        delay.whenCompleteAsync((value, throwable) -> finishPoll(generation, handle(value, throwable)), poller.getWorkerExecutor());
+    }
+
+    private long handle(Long delay, Throwable throwable) {
+        if (throwable == null) {
+            unavailableSince = 0;
+            if (delay == PARKED) {
+                if (cancelled) {
+                    discardConsoleOutputSpool();
+                }
+                return NO_POLL;
+            } else if (delay < 0) {
+                discardConsoleOutputSpool();
+                complete();
+            } else if (!cancelled) {
+                return delay;
+            } else {
+                discardConsoleOutputSpool();
+            }
+            return NO_POLL;
+        }
+        Throwable cause = CompletableFutures.unwrap(throwable);
+        if (cause instanceof JenkinsUnavailableException) {
+            long now = System.currentTimeMillis();
+            if (unavailableSince == 0) {
+                unavailableSince = now;
+            }
+            if (now - unavailableSince < MAX_UNAVAILABLE_MILLIS) {
+                // Wait for Jenkins to come back instead of failing the build
+                logger.debug(cause.getMessage());
+                return ((JenkinsUnavailableException) cause).getRetryAfterMillis();
+            }
+        }
+        discardConsoleOutputSpool();
+        fail(cause);
+        return NO_POLL;
+    }
+
+    private void finishPoll(long generation, long delay) {
+        // Scheduled only once the poll is over, as a poll that starts while this one is still in flight is dropped
+        polling.set(false);
+        if (cancelled || future.isDone()) {
+            return;
+        }
+        if (delay >= 0 && this.generation.compareAndSet(generation, generation + 1)) {
+            poller.schedule(this, delay, generation + 1);
+            return;
+        }
+        long current = this.generation.get();
+        if (current != generation) {
+            // Woken up while the poll was in flight
+            poller.schedule(this, 0, current);
+        }
+    }
+
+    private CompletableFuture<Long> advance() throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, IOException {
+        if (cancelled) {
+            return CompletableFuture.completedFuture(0L);
+        }
+        if (undelivered) {
+            return then(deliver(), delivered -> delivered ? advance() : CompletableFuture.completedFuture(PARKED));
+        }
+        switch (state) {
+            case QUEUED:
+                return then(jenkinsClient.pollQueueItemAsync(queueItemId), queueItem -> {
+                    if (queueItem.isCancelled()) {
+                        String message = String.format("Job %s has been canceled", jobName);
+                        throw new JenkinsBuildCanceledException(message);
+                    }
+                    Executable executable = queueItem.getExecutable();
+                    if (executable == null) {
+                        return CompletableFuture.completedFuture(pollingStrategy.getQueuedDelay(attempt++));
+                    }
+                    buildNumber = executable.getNumber();
+                    transition(followConsoleOutput ? State.LOGGING : State.RUNNING);
+                    return advance();
+                });
+            case RUNNING:
+                CompletableFuture<Build> runningBuild;
+                if (prefetchConsoleOutput) {
+                    // Streamed like the log of a finished build, as the log may have grown a lot since the last poll
+                    long start = position;
+                    runningBuild = then(stream(() -> prefetchLogText(start)), prefetchedPosition -> {
+                        position = prefetchedPosition;
+                        // The log is fetched from its start, so there is no tail to skip any more
+                        tailSkipped = true;
+                        return jenkinsClient.pollBuildAsync(jobName, buildNumber);
+                    });
+                } else {
+                    runningBuild = jenkinsClient.pollBuildAsync(jobName, buildNumber);
+                }
+                return then(runningBuild, polledBuild -> {
+                    if (polledBuild.isBuilding()) {
+                        return CompletableFuture.completedFuture(pollingStrategy.getRunningDelay(attempt++, polledBuild));
+                    }
+                    build = polledBuild;
+                    transition(logConsoleOutput ? State.LOGGING : State.DONE);
+                    return advance();
+                });
+            case LOGGING:
+                if (logComplete) {
+                    return finishLogging();
+                }
+                if (build != null && !tailSkipped && position == 0) {
+                    // Nothing has been fetched yet, so the middle of a huge log need not be transferred at all
+                    return then(stream(() -> consoleOutputTail.skip(jenkinsClient, jobName, buildNumber, consoleOutputSpool)), skippedPosition -> {
+                        position = skippedPosition;
+                        tailSkipped = true;
+                        skipPartialLine = skippedPosition > 0;
+                        return advance();
+                    });
+                }
+                long start = position;
+                boolean finished = build != null;
+                boolean skipLine = skipPartialLine;
+                return then(stream(() -> fetchLogText(start, finished, skipLine)), logText -> {
+                    skipPartialLine = false;
+                    return advanceLogging(logText.getPosition(), logText.isComplete());
+                });
+            case DONE:
+            default:
+                return CompletableFuture.completedFuture(-1L);
+        }
+    }
+
+    private long prefetchLogText(long start) throws JenkinsClientException, EncoderException, IOException {
+        return jenkinsClient.getLogText(jobName, buildNumber, start, consoleOutputSpool).getPosition();
+    }
+
+    private LogTextProgress fetchLogText(long start, boolean finished, boolean skipLine) throws JenkinsClientException, EncoderException, IOException {
+        // Spooled rather than handed to the step thread directly, so that a slow step never holds up the download
+        if (!finished) {
+            // Followed while the build is running. Still streamed, since a fast-growing log or one followed from the
+            // start of a finished build can be large, so it must not be buffered in memory
+            return jenkinsClient.getLogText(jobName, buildNumber, start, consoleOutputSpool);
+        }
+        // The rest of the log of a finished build can be large, so it is streamed instead of being buffered
+        return jenkinsClient.getLogText(jobName, buildNumber, start, -1, skipLine, consoleOutputSpool);
+    }
+
+    private CompletableFuture<Long> advanceLogging(long newPosition, boolean complete) {
+        if (newPosition > position) {
+            attempt = 0;
+        }
+        position = newPosition;
+        logComplete = complete;
+        long delay = complete ? 0 : pollingStrategy.getLoggingDelay(attempt++);
+        undelivered = true;
+        return then(deliver(), delivered -> CompletableFuture.completedFuture(delivered ? delay : PARKED));
+    }
+
+    private CompletableFuture<Long> finishLogging() throws JenkinsBuildCanceledException, JenkinsClientException, EncoderException, IOException {
+        if (build == null) {
+            return then(jenkinsClient.getBuildAsync(jobName, buildNumber), finishedBuild -> {
+                build = finishedBuild;
+                transition(State.DONE);
+                return advance();
+            });
+        }
+        transition(State.DONE);
+        return advance();
+    }
+
+    private <T> CompletableFuture<T> stream(Callable<T> call) {
+        // Console output is read on the log threads, as a large log can take a long time to transfer
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            poller.getLogExecutor().execute(() -> {
+                try {
+                    future.complete(call.call());
+                } catch (Exception e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T, U> CompletableFuture<U> then(CompletableFuture<T> stage, Step<T, U> step) {
+        // Continued on a worker thread rather than on the I/O thread that completed the request
+        return stage.thenComposeAsync(value -> {
+            try {
+                return step.apply(value);
+            } catch (Exception e) {
+                return CompletableFutures.failed(e);
+            }
+        }, poller.getWorkerExecutor());
+    }
+
+    private void transition(State state) {
+        long now = System.nanoTime();
+        durations[this.state.ordinal()] += now - stateStartTime;
+        stateStartTime = now;
+        this.state = state;
+        attempt = 0;
+    }
+
+    private void discardConsoleOutputSpool() {
+        try {
+            consoleOutputSpool.close();
+        } catch (IOException e) {
+            logger.warn("Failed to discard the console output spool", e);
+        }
+        undelivered = false;
+        nextConsoleOutput = null;
+    }
+
+    private CompletableFuture<Boolean> deliver() {
+        ConsoleOutput pending = nextConsoleOutput;
+        return then(stream(() -> deliver(pending)), undeliveredConsoleOutput -> {
+            nextConsoleOutput = undeliveredConsoleOutput;
+            undelivered = undeliveredConsoleOutput != null;
+            return CompletableFuture.completedFuture(!undelivered);
+        });
+    }
+
+    private ConsoleOutput deliver(ConsoleOutput pending) throws IOException {
+        // Never waits for the step thread, so that the buffered console output stays bounded without holding a thread.
+        // Returns the piece that did not fit, if any
+        ConsoleOutput consoleOutput = pending;
+        boolean offered = false;
+        try {
+            while (true) {
+                if (consoleOutput == null) {
+                    String content = consoleOutputSpool.next();
+                    if (content == null) {
+                        return null;
+                    }
+                    consoleOutput = new ConsoleOutput(content);
+                }
+                if (!consoleOutputs.offer(consoleOutput)) {
+                    parked.set(true);
+                    // The step thread may have drained the queue before the watch was parked
+                    if (!consoleOutputs.offer(consoleOutput)) {
+                        return consoleOutput;
+                    }
+                    parked.compareAndSet(true, false);
+                }
+                offered = true;
+                consoleOutput = null;
+            }
+        } finally {
+            if (offered) {
+                signal();
+            }
+        }
+    }
+
+    private void complete() {
+        future.complete(build);
+        end();
+    }
+
+    void fail(Throwable throwable) {
+        future.completeExceptionally(throwable);
+        end();
+    }
+
+    private void end() {
+        // If the queue is full, the step thread notices the end once it has drained it
+        consoleOutputs.offer(ConsoleOutput.END);
+        signal();
+    }
+
+    @FunctionalInterface
+    private interface Step<T, U> {
+
+        CompletableFuture<U> apply(T value) throws Exception;
+    }
+
+    private static final class ConsoleOutput {
+
+        private static final ConsoleOutput END = new ConsoleOutput(null);
+
+        private final String content;
+
+        private ConsoleOutput(String content) {
+            this.content = content;
+        }
+
+        private String getContent() {
+            return content;
+        }
+
+        private boolean isEnd() {
+            return this == END;
+        }
+    }
+}
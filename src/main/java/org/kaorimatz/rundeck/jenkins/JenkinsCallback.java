@@ -0,0 +1,38 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+public class JenkinsCallback implements Closeable {
+
+    private final JenkinsCallbackServer server;
+
+    private final String id;
+
+    private final String url;
+
+    private final CompletableFuture<Void> future = new CompletableFuture<>();
+
+    JenkinsCallback(JenkinsCallbackServer server, String id, String url) {
+        this.server = server;
+        this.id = id;
+        this.url = url;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public CompletableFuture<Void> getFuture() {
+        return future;
+    }
+
+    @Override
+    public void close() {
+        server.unregister(id);
+    }
+}
@@ -0,0 +1,135 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JenkinsCallbackServer {
+
+    private static final Logger logger = Logger.getLogger(JenkinsCallbackServer.class);
+
+    private static final String CONTEXT_PATH = "/jenkins-callback/";
+
+    private static final int WORKER_THREADS = 2;
+
+    private static final Map<Integer, JenkinsCallbackServer> INSTANCES = new HashMap<>();
+
+    private final ConcurrentMap<String, JenkinsCallback> callbacks = new ConcurrentHashMap<>();
+
+    private final int port;
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private boolean stopped;
+
+    JenkinsCallbackServer(int port) throws IOException {
+        this.port = port;
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(WORKER_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, String.format("jenkins-callback-server-%d", threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext(CONTEXT_PATH, this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info(String.format("Listening for Jenkins build callbacks. port=%d", server.getAddress().getPort()));
+    }
+
+    public static synchronized JenkinsCallbackServer getInstance(int port) throws IOException {
+        JenkinsCallbackServer instance = INSTANCES.get(port);
+        if (instance == null) {
+            instance = new JenkinsCallbackServer(port);
+            INSTANCES.put(port, instance);
+        }
+        return instance;
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public static JenkinsCallback register(int port, URI callbackBaseUri) throws IOException {
+        synchronized (JenkinsCallbackServer.class) {
+            return getInstance(port).register(callbackBaseUri);
+        }
+    }
+
+    public JenkinsCallback register(URI callbackBaseUri) throws IOException {
+        synchronized (JenkinsCallbackServer.class) {
+            if (stopped) {
+                throw new IOException(String.format("The callback listener has been stopped. port=%d", port));
+            }
+            String id = UUID.randomUUID().toString();
+            String baseUrl = callbackBaseUri.toString().replaceAll("/+$", "");
+            JenkinsCallback callback = new JenkinsCallback(this, id, baseUrl + CONTEXT_PATH + id);
+            callbacks.put(id, callback);
+            return callback;
+        }
+    }
+
+    void unregister(String id) {
+        synchronized (JenkinsCallbackServer.class) {
+            if (callbacks.remove(id) == null || !callbacks.isEmpty()) {
+                return;
+            }
+            // Stopped with its last callback, so that the port is not held after the plugin has been reloaded
+            stopped = true;
+            INSTANCES.remove(port, this);
+        }
+        int listeningPort = getPort();
+        server.stop(0);
+        executor.shutdown();
+        logger.info(String.format("Stopped listening for Jenkins build callbacks. port=%d", listeningPort));
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            byte[] buffer = new byte[1024];
+            while (inputStream.read(buffer) != -1) {
+                // The body is ignored. The result of the build is always verified through the API
+            }
+        }
+        String method = exchange.getRequestMethod();
+        if (!"POST".equals(method) && !"GET".equals(method)) {
+            respond(exchange, 405, "Method Not Allowed");
+            return;
+        }
+        String id = exchange.getRequestURI().getPath().substring(CONTEXT_PATH.length());
+        JenkinsCallback callback = callbacks.get(id);
+        if (callback == null) {
+            respond(exchange, 404, "Not Found");
+            return;
+        }
+        logger.debug(String.format("Received a Jenkins build callback. id=%s", id));
+        callback.getFuture().complete(null);
+        respond(exchange, 200, "OK");
+    }
+
+    private void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+            outputStream.write(bytes);
+        }
+    }
+}
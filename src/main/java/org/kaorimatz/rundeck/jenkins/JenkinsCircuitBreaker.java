@@ -0,0 +1,55 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.log4j.Logger;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+public class JenkinsCircuitBreaker {
+
+    private static final Logger logger = Logger.getLogger(JenkinsCircuitBreaker.class);
+
+    private static final int FAILURE_THRESHOLD = 3;
+
+    private static final long OPEN_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final URI baseUri;
+
+    private int consecutiveFailures;
+
+    private long openUntil;
+
+    public JenkinsCircuitBreaker(URI baseUri) {
+        this.baseUri = baseUri;
+    }
+
+    public synchronized long getWaitMillis() {
+        if (consecutiveFailures < FAILURE_THRESHOLD) {
+            return 0;
+        }
+        long now = System.currentTimeMillis();
+        if (openUntil > now) {
+            return openUntil - now;
+        }
+        // Let a single request through to see whether Jenkins is back and keep the others waiting
+        openUntil = now + OPEN_MILLIS;
+        return 0;
+    }
+
+    public synchronized void recordSuccess() {
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            logger.info(String.format("Jenkins is available again. baseUri=%s", baseUri));
+        }
+        consecutiveFailures = 0;
+    }
+
+    public synchronized void recordFailure() {
+        consecutiveFailures++;
+        if (consecutiveFailures == FAILURE_THRESHOLD) {
+            logger.warn(String.format("Jenkins seems to be unavailable. Pausing requests for %d seconds. baseUri=%s", TimeUnit.MILLISECONDS.toSeconds(OPEN_MILLIS), baseUri));
+        }
+        if (consecutiveFailures >= FAILURE_THRESHOLD) {
+            openUntil = System.currentTimeMillis() + OPEN_MILLIS;
+        }
+    }
+}
@@ -4,9 +4,17 @@ import org.apache.commons.codec.EncoderException;
 import org.dom4j.Document;
 
 import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 
-public interface JenkinsClient {
+public interface JenkinsClient extends AsyncJenkinsClient {
+
+    URI getBaseUri();
+
+    String getUserId();
+
+    String getApiTokenHash();
 
     long build(String jobName, Map<String, String> parameters, String token) throws JenkinsClientException, EncoderException, IOException;
 
@@ -18,7 +26,30 @@ public interface JenkinsClient {
 
     LogText getLogText(String jobName, int buildNumber, long start) throws JenkinsClientException, EncoderException, IOException;
 
+    LogTextProgress getLogText(String jobName, int buildNumber, long start, ConsoleOutputLogger consoleOutputLogger) throws JenkinsClientException, EncoderException, IOException;
+
+    LogTextProgress getLogText(String jobName, int buildNumber, long start, long maxBytes, boolean skipPartialLine, ConsoleOutputLogger consoleOutputLogger)
+            throws JenkinsClientException, EncoderException, IOException;
+
+    long getLogTextSize(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException;
+
     QueueItem getQueueItem(long queueItemId) throws JenkinsClientException, IOException;
 
+    Queue getQueue() throws JenkinsClientException, IOException;
+
+    Job getJob(String jobName, int maxBuilds) throws JenkinsClientException, EncoderException, IOException;
+
+    default QueueItem pollQueueItem(long queueItemId) throws JenkinsClientException, EncoderException, IOException {
+        return getQueueItem(queueItemId);
+    }
+
+    default Build pollBuild(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException {
+        return getBuild(jobName, buildNumber);
+    }
+
+    BuildArtifacts getArtifacts(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException;
+
+    long downloadArtifact(String jobName, int buildNumber, String relativePath, FileChannel channel) throws JenkinsClientException, EncoderException, IOException;
+
     void stopBuild(String jobName, int buildNumber) throws JenkinsClientException, EncoderException, IOException;
 }
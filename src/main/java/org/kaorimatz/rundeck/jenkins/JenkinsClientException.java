@@ -2,11 +2,23 @@ package org.kaorimatz.rundeck.jenkins;
 
 public class JenkinsClientException extends Exception {
 
+    private final int statusCode;
+
     public JenkinsClientException(String message) {
+        this(message, 0);
+    }
+
+    public JenkinsClientException(String message, int statusCode) {
         super(message);
+        this.statusCode = statusCode;
     }
 
     public JenkinsClientException(String message, Throwable cause) {
         super(message, cause);
+        this.statusCode = 0;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
     }
 }
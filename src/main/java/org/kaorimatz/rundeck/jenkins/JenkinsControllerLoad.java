@@ -0,0 +1,137 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class JenkinsControllerLoad {
+
+    private final AtomicReference<CompletableFuture<Sample>> refresh = new AtomicReference<>();
+
+    private final Set<AssignedBuild> assignedBuilds = ConcurrentHashMap.newKeySet();
+
+    private volatile Sample sample;
+
+    public CompletableFuture<Sample> getSampleAsync(AsyncJenkinsClient jenkinsClient, long ttlMillis) {
+        Sample current = sample;
+        if (current != null && System.currentTimeMillis() - current.time < ttlMillis) {
+            return CompletableFuture.completedFuture(current);
+        }
+        CompletableFuture<Sample> future = refresh(jenkinsClient);
+        if (current != null) {
+            // Routed on the previous sample while the next one is fetched in the background
+            return CompletableFuture.completedFuture(current);
+        }
+        return future;
+    }
+
+    public AssignedBuild recordAssignedBuild() {
+        AssignedBuild assignedBuild = new AssignedBuild();
+        assignedBuilds.add(assignedBuild);
+        return assignedBuild;
+    }
+
+    public int getAssignedBuilds() {
+        Sample current = sample;
+        long requestTime = current != null ? current.requestTime : Long.MIN_VALUE;
+        int count = 0;
+        for (Iterator<AssignedBuild> iterator = assignedBuilds.iterator(); iterator.hasNext(); ) {
+            // A build triggered before the sample was requested is in its queue or busy executors by now
+            if (iterator.next().triggerTime < requestTime) {
+                iterator.remove();
+            } else {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private CompletableFuture<Sample> refresh(AsyncJenkinsClient jenkinsClient) {
+        while (true) {
+            CompletableFuture<Sample> pending = refresh.get();
+            if (pending != null) {
+                return pending;
+            }
+            CompletableFuture<Sample> future = new CompletableFuture<>();
+            if (!refresh.compareAndSet(null, future)) {
+                continue;
+            }
+            long requestTime = System.currentTimeMillis();
+            CompletableFuture<ComputerSet> computerSet;
+            CompletableFuture<Queue> queue;
+            try {
+                computerSet = jenkinsClient.getComputerSetAsync();
+                queue = jenkinsClient.getQueueAsync();
+            } catch (RuntimeException e) {
+                computerSet = CompletableFutures.failed(e);
+                queue = CompletableFutures.failed(e);
+            }
+            computerSet.thenCombine(queue, (computerSetValue, queueValue) -> new Sample(computerSetValue, queueValue, requestTime)).whenComplete((value, throwable) -> {
+                // An unreachable controller is avoided until the next refresh
+                Sample next = throwable != null ? new Sample(requestTime) : value;
+                sample = next;
+                refresh.set(null);
+                future.complete(next);
+            });
+            return future;
+        }
+    }
+
+    public static final class Sample {
+
+        private final boolean available;
+
+        private final int idleExecutors;
+
+        private final int queueLength;
+
+        private final long requestTime;
+
+        private final long time = System.currentTimeMillis();
+
+        private Sample(long requestTime) {
+            this.requestTime = requestTime;
+            this.available = false;
+            this.idleExecutors = 0;
+            this.queueLength = 0;
+        }
+
+        private Sample(ComputerSet computerSet, Queue queue, long requestTime) {
+            this.requestTime = requestTime;
+            this.available = true;
+            this.idleExecutors = Math.max(0, computerSet.getTotalExecutors() - computerSet.getBusyExecutors());
+            this.queueLength = queue.getItems() != null ? queue.getItems().size() : 0;
+        }
+
+        public boolean isAvailable() {
+            return available;
+        }
+
+        public int getIdleExecutors() {
+            return idleExecutors;
+        }
+
+        public int getQueueLength() {
+            return queueLength;
+        }
+    }
+
+    public final class AssignedBuild {
+
+        // Counted against the controller until a sample requested after the trigger includes it
+        private volatile long triggerTime = Long.MAX_VALUE;
+
+        private AssignedBuild() {
+        }
+
+        public void triggered() {
+            triggerTime = System.currentTimeMillis();
+        }
+
+        public void cancel() {
+            assignedBuilds.remove(this);
+        }
+    }
+}
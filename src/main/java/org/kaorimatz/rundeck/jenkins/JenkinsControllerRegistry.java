@@ -0,0 +1,98 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.dtolabs.rundeck.core.utils.IPropertyLookup;
+import org.apache.log4j.Logger;
+
+import java.net.URI;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Holds the state of each Jenkins controller that is shared by all credentials, as it describes the controller itself
+public class JenkinsControllerRegistry {
+
+    private static final Logger logger = Logger.getLogger(JenkinsControllerRegistry.class);
+
+    static final String MAX_REQUESTS_PER_SECOND_PROPERTY = "framework.jenkins.maxRequestsPerSecond";
+
+    static final String MAX_CONCURRENT_REQUESTS_PROPERTY = "framework.jenkins.maxConcurrentRequests";
+
+    private static final JenkinsControllerRegistry INSTANCE = new JenkinsControllerRegistry();
+
+    private final ScheduledExecutorService limiterScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "jenkins-request-limiter-scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ConcurrentMap<URI, JenkinsRequestLimiter> limiters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<URI, JenkinsCircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<URI, JenkinsControllerLoad> controllerLoads = new ConcurrentHashMap<>();
+
+    private double maxRequestsPerSecond;
+
+    private int maxConcurrentRequests;
+
+    public static JenkinsControllerRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public JenkinsRequestLimiter getLimiter(URI baseUri) {
+        JenkinsRequestLimiter limiter = limiters.get(baseUri);
+        if (limiter != null) {
+            return limiter;
+        }
+        synchronized (limiters) {
+            return limiters.computeIfAbsent(baseUri, uri -> {
+                JenkinsRequestLimiter created = new JenkinsRequestLimiter(limiterScheduler);
+                created.configure(maxRequestsPerSecond, maxConcurrentRequests);
+                return created;
+            });
+        }
+    }
+
+    public void loadRequestLimits(IPropertyLookup frameworkProperties) {
+        // Read by every step, so that a change to the framework properties applies without a restart. The limiters
+        // are shared by every step on this server, so the last step to start decides
+        double maxRequestsPerSecond = getLimit(frameworkProperties, MAX_REQUESTS_PER_SECOND_PROPERTY);
+        int maxConcurrentRequests = (int) getLimit(frameworkProperties, MAX_CONCURRENT_REQUESTS_PROPERTY);
+        setRequestLimits(maxRequestsPerSecond, maxConcurrentRequests);
+    }
+
+    public void setRequestLimits(double maxRequestsPerSecond, int maxConcurrentRequests) {
+        synchronized (limiters) {
+            if (this.maxRequestsPerSecond == maxRequestsPerSecond && this.maxConcurrentRequests == maxConcurrentRequests) {
+                return;
+            }
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            for (JenkinsRequestLimiter limiter : limiters.values()) {
+                limiter.configure(maxRequestsPerSecond, maxConcurrentRequests);
+            }
+        }
+    }
+
+    private static double getLimit(IPropertyLookup frameworkProperties, String name) {
+        if (!frameworkProperties.hasProperty(name)) {
+            return 0;
+        }
+        String value = frameworkProperties.getProperty(name);
+        try {
+            return Math.max(0, Double.parseDouble(value.trim()));
+        } catch (NumberFormatException e) {
+            logger.warn(String.format("Ignoring invalid request limit. %s=%s", name, value));
+            return 0;
+        }
+    }
+
+    public JenkinsCircuitBreaker getCircuitBreaker(URI baseUri) {
+        return circuitBreakers.computeIfAbsent(baseUri, JenkinsCircuitBreaker::new);
+    }
+
+    public JenkinsControllerLoad getControllerLoad(URI baseUri) {
+        return controllerLoads.computeIfAbsent(baseUri, uri -> new JenkinsControllerLoad());
+    }
+}
@@ -0,0 +1,146 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JenkinsControllerRouter {
+
+    private static final Logger logger = Logger.getLogger(JenkinsControllerRouter.class);
+
+    private static final long SAMPLE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final List<JenkinsClient> controllers;
+
+    private final List<JenkinsControllerLoad> loads;
+
+    private final long loadTtlMillis;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    public JenkinsControllerRouter(JenkinsClient controller) {
+        this(Collections.singletonList(controller), null, 0);
+    }
+
+    public JenkinsControllerRouter(List<JenkinsClient> controllers, List<JenkinsControllerLoad> loads, long loadTtlMillis) {
+        this.controllers = controllers;
+        this.loads = loads;
+        this.loadTtlMillis = loadTtlMillis;
+    }
+
+    public Assignment assignBuild() {
+        if (loads == null) {
+            return new Assignment(controllers.get(0), null);
+        }
+        int size = controllers.size();
+        // Ties go round robin, so that idle controllers share the builds
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        // Samples are fetched concurrently, so that cold or unreachable controllers share one timeout
+        List<CompletableFuture<JenkinsControllerLoad.Sample>> samples = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            samples.add(loads.get(i).getSampleAsync(controllers.get(i), loadTtlMillis));
+        }
+        long deadline = System.currentTimeMillis() + SAMPLE_TIMEOUT_MILLIS;
+        int selected = -1;
+        int bestScore = Integer.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            JenkinsControllerLoad load = loads.get(index);
+            JenkinsControllerLoad.Sample sample = getSample(samples.get(index), deadline);
+            if (sample == null || !sample.isAvailable()) {
+                continue;
+            }
+            int score = sample.getIdleExecutors() - sample.getQueueLength() - load.getAssignedBuilds();
+            if (selected == -1 || score > bestScore) {
+                selected = index;
+                bestScore = score;
+            }
+        }
+        if (selected == -1) {
+            // The load of no controller is known, so just spread the builds
+            selected = start;
+        }
+        JenkinsClient controller = controllers.get(selected);
+        logger.debug(String.format("Routing a build to %s. score=%d", controller.getBaseUri(), bestScore));
+        return new Assignment(controller, loads.get(selected).recordAssignedBuild());
+    }
+
+    private static JenkinsControllerLoad.Sample getSample(CompletableFuture<JenkinsControllerLoad.Sample> sample, long deadline) {
+        try {
+            return sample.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            logger.debug("Failed to get the load of the Jenkins controller", e);
+        }
+        return null;
+    }
+
+    public JenkinsClient getController(URI baseUri) {
+        for (JenkinsClient controller : controllers) {
+            if (controller.getBaseUri().equals(baseUri)) {
+                return controller;
+            }
+        }
+        return null;
+    }
+
+    // The controllers share the credentials, so they identify the router. The first base URI stands for all of them
+
+    public URI getBaseUri() {
+        return controllers.get(0).getBaseUri();
+    }
+
+    public String getUserId() {
+        return controllers.get(0).getUserId();
+    }
+
+    public String getApiTokenHash() {
+        return controllers.get(0).getApiTokenHash();
+    }
+
+    public static final class Assignment {
+
+        private final JenkinsClient controller;
+
+        private final JenkinsControllerLoad.AssignedBuild assignedBuild;
+
+        private Assignment(JenkinsClient controller, JenkinsControllerLoad.AssignedBuild assignedBuild) {
+            this.controller = controller;
+            this.assignedBuild = assignedBuild;
+        }
+
+        public JenkinsClient getController() {
+            return controller;
+        }
+
+        public long build(String jobName, Map<String, String> parameters, String token, long deadline)
+                throws JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+            long queueItemId;
+            try {
+                queueItemId = JenkinsAvailability.await(() -> controller.build(jobName, parameters, token), deadline);
+            } catch (JenkinsClientException | EncoderException | InterruptedException | IOException | RuntimeException e) {
+                if (assignedBuild != null) {
+                    assignedBuild.cancel();
+                }
+                throw e;
+            }
+            if (assignedBuild != null) {
+                assignedBuild.triggered();
+            }
+            return queueItemId;
+        }
+    }
+}
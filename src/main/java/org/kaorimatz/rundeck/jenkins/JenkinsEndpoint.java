@@ -0,0 +1,48 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.regex.Pattern;
+
+public enum JenkinsEndpoint {
+
+    TRIGGER, QUEUE_POLL, QUEUE_LIST, COMPUTER_LIST, BUILD_POLL, JOB_POLL, LOG_POLL, ARTIFACT, STOP, CANCEL, WEBHOOK, CRUMB, OTHER;
+
+    private static final Pattern BUILD_PATH_PATTERN = Pattern.compile(".*/[0-9]+/api/json");
+
+    private static final Pattern ARTIFACT_PATH_PATTERN = Pattern.compile(".*/[0-9]+/artifact/.*");
+
+    public static JenkinsEndpoint of(String path) {
+        if (path == null) {
+            return OTHER;
+        } else if (ARTIFACT_PATH_PATTERN.matcher(path).matches()) {
+            // Checked first, since an artifact path can end with anything
+            return ARTIFACT;
+        } else if (path.endsWith("/build") || path.endsWith("/buildWithParameters")) {
+            return TRIGGER;
+        } else if (path.contains("/queue/item/")) {
+            return QUEUE_POLL;
+        } else if (path.endsWith("/queue/cancelItem")) {
+            return CANCEL;
+        } else if (path.endsWith("/logText/progressiveText")) {
+            return LOG_POLL;
+        } else if (path.endsWith("/stop")) {
+            return STOP;
+        } else if (path.endsWith("/plugin/rundeck/webhook/")) {
+            return WEBHOOK;
+        } else if (path.endsWith("/crumbIssuer/api/json")) {
+            return CRUMB;
+        } else if (path.endsWith("/queue/api/json")) {
+            return QUEUE_LIST;
+        } else if (path.endsWith("/computer/api/json")) {
+            return COMPUTER_LIST;
+        } else if (BUILD_PATH_PATTERN.matcher(path).matches()) {
+            return BUILD_POLL;
+        } else if (path.endsWith("/api/json")) {
+            return JOB_POLL;
+        }
+        return OTHER;
+    }
+
+    public String getMetricName() {
+        return name().toLowerCase().replace('_', '-');
+    }
+}
@@ -0,0 +1,141 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class JenkinsEndpointMetrics implements JenkinsEndpointMetricsMBean {
+
+    private final JenkinsEndpointMetrics parent;
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    private final LongAdder errors = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final LongAdder bytesReceived = new LongAdder();
+
+    private final LongAdder compressedBytesReceived = new LongAdder();
+
+    private final LatencyHistogram limiterWait = new LatencyHistogram();
+
+    public JenkinsEndpointMetrics(JenkinsEndpointMetrics parent) {
+        this.parent = parent;
+    }
+
+    public void recordRequest(long latencyMillis, boolean error) {
+        latency.record(latencyMillis);
+        if (error) {
+            errors.increment();
+        }
+        if (parent != null) {
+            parent.recordRequest(latencyMillis, error);
+        }
+    }
+
+    public void recordRetry() {
+        retries.increment();
+        if (parent != null) {
+            parent.recordRetry();
+        }
+    }
+
+    public void addBytesSent(long bytes) {
+        bytesSent.add(bytes);
+        if (parent != null) {
+            parent.addBytesSent(bytes);
+        }
+    }
+
+    public void addBytesReceived(long bytes) {
+        bytesReceived.add(bytes);
+        if (parent != null) {
+            parent.addBytesReceived(bytes);
+        }
+    }
+
+    public void addCompressedBytesReceived(long bytes) {
+        compressedBytesReceived.add(bytes);
+        if (parent != null) {
+            parent.addCompressedBytesReceived(bytes);
+        }
+    }
+
+    public void recordLimiterWait(long waitMillis) {
+        limiterWait.record(waitMillis);
+        if (parent != null) {
+            parent.recordLimiterWait(waitMillis);
+        }
+    }
+
+    @Override
+    public long getRequests() {
+        return latency.getCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return bytesSent.sum();
+    }
+
+    @Override
+    public long getBytesReceived() {
+        return bytesReceived.sum();
+    }
+
+    @Override
+    public long getCompressedBytesReceived() {
+        return compressedBytesReceived.sum();
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        return latency.getMean();
+    }
+
+    @Override
+    public long getLatencyMillis50thPercentile() {
+        return latency.getPercentile(0.5);
+    }
+
+    @Override
+    public long getLatencyMillis90thPercentile() {
+        return latency.getPercentile(0.9);
+    }
+
+    @Override
+    public long getLatencyMillis99thPercentile() {
+        return latency.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxLatencyMillis() {
+        return latency.getMax();
+    }
+
+    @Override
+    public long getLimiterWaitMillis() {
+        return limiterWait.getSum();
+    }
+
+    @Override
+    public long getLimiterWaitMillis99thPercentile() {
+        return limiterWait.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxLimiterWaitMillis() {
+        return limiterWait.getMax();
+    }
+}
@@ -0,0 +1,32 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public interface JenkinsEndpointMetricsMBean {
+
+    long getRequests();
+
+    long getErrors();
+
+    long getRetries();
+
+    long getBytesSent();
+
+    long getBytesReceived();
+
+    long getCompressedBytesReceived();
+
+    double getMeanLatencyMillis();
+
+    long getLatencyMillis50thPercentile();
+
+    long getLatencyMillis90thPercentile();
+
+    long getLatencyMillis99thPercentile();
+
+    long getMaxLatencyMillis();
+
+    long getLimiterWaitMillis();
+
+    long getLimiterWaitMillis99thPercentile();
+
+    long getMaxLimiterWaitMillis();
+}
@@ -0,0 +1,194 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class JenkinsFanOutExecutor {
+
+    private static final Logger logger = Logger.getLogger(JenkinsFanOutExecutor.class);
+
+    private final JenkinsControllerRouter router;
+
+    private final ConsoleOutputLogger consoleOutputLogger;
+
+    private final JenkinsBuildPoller poller;
+
+    private final JenkinsMetrics metrics;
+
+    private long timeoutMillis;
+
+    private ConsoleOutputTail consoleOutputTail = ConsoleOutputTail.WHOLE;
+
+    public JenkinsFanOutExecutor(JenkinsControllerRouter router, ConsoleOutputLogger consoleOutputLogger) {
+        this(router, consoleOutputLogger, JenkinsBuildPoller.getInstance());
+    }
+
+    public JenkinsFanOutExecutor(JenkinsControllerRouter router, ConsoleOutputLogger consoleOutputLogger, JenkinsBuildPoller poller) {
+        this(router, consoleOutputLogger, poller, JenkinsMetrics.getInstance());
+    }
+
+    public JenkinsFanOutExecutor(JenkinsControllerRouter router, ConsoleOutputLogger consoleOutputLogger, JenkinsBuildPoller poller, JenkinsMetrics metrics) {
+        this.router = router;
+        this.consoleOutputLogger = consoleOutputLogger;
+        this.poller = poller;
+        this.metrics = metrics;
+    }
+
+    public JenkinsFanOutExecutor setTimeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    public JenkinsFanOutExecutor setConsoleOutputTail(ConsoleOutputTail consoleOutputTail) {
+        this.consoleOutputTail = consoleOutputTail;
+        return this;
+    }
+
+    public List<JenkinsFanOutResult> execute(List<JenkinsBuildRequest> requests, Map<String, String> commonParameters, String token, PollingStrategy pollingStrategy, int maxConcurrency,
+                                             Result failureThreshold, boolean failFast, boolean logConsoleOutput, boolean followConsoleOutput)
+            throws JenkinsClientException, EncoderException, InterruptedException, IOException {
+
+        long deadline = timeoutMillis > 0 ? System.currentTimeMillis() + timeoutMillis : 0;
+        JenkinsFanOutResult[] results = new JenkinsFanOutResult[requests.size()];
+        List<RunningBuild> runningBuilds = new ArrayList<>();
+        // The watches signal when they have console output or have ended, so the step thread sleeps until one does
+        BlockingQueue<RunningBuild> readyBuilds = new LinkedBlockingQueue<>();
+        int next = 0;
+        boolean failed = false;
+        try {
+            while (!runningBuilds.isEmpty() || (next < requests.size() && !(failFast && failed))) {
+                while (runningBuilds.size() < Math.max(1, maxConcurrency) && next < requests.size() && !(failFast && failed)) {
+                    int index = next++;
+                    JenkinsBuildRequest request = requests.get(index);
+                    try {
+                        JenkinsControllerRouter.Assignment assignment = router.assignBuild();
+                        long queueItemId = assignment.build(request.getJobName(), request.getParameters(), token, deadline);
+                        JenkinsBuildWatch watch = poller.watch(assignment.getController(), request.getJobName(), queueItemId, pollingStrategy, logConsoleOutput, followConsoleOutput, false, consoleOutputTail);
+                        String prefix = String.format("[%s] ", request.getLabel(commonParameters));
+                        RunningBuild runningBuild = new RunningBuild(index, request, watch, new PrefixingConsoleOutputLogger(consoleOutputLogger, prefix));
+                        runningBuilds.add(runningBuild);
+                        watch.setListener(() -> runningBuild.signal(readyBuilds));
+                        // Drained once in any case, for what the watch queued before the listener was set
+                        runningBuild.signal(readyBuilds);
+                    } catch (JenkinsClientException | EncoderException | IOException e) {
+                        results[index] = new JenkinsFanOutResult(request, 0, null, e);
+                        failed = true;
+                    }
+                }
+
+                if (failFast && failed) {
+                    abort(runningBuilds, results, new JenkinsBuildCanceledException("Aborted because another build failed"));
+                    break;
+                }
+                if (deadline > 0 && System.currentTimeMillis() >= deadline) {
+                    abort(runningBuilds, results, new JenkinsTimeoutException("Timed out waiting for the builds to finish"));
+                    break;
+                }
+
+                if (runningBuilds.isEmpty()) {
+                    continue;
+                }
+                RunningBuild readyBuild = deadline > 0 ? readyBuilds.poll(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS) : readyBuilds.take();
+                for (; readyBuild != null; readyBuild = readyBuilds.poll()) {
+                    // Cleared before draining, so that console output queued meanwhile signals again
+                    readyBuild.signalled.set(false);
+                    if (!runningBuilds.contains(readyBuild)) {
+                        continue;
+                    }
+                    if (!readyBuild.watch.drain(readyBuild.consoleOutputLogger, 0)) {
+                        if (readyBuild.watch.getFuture().isDone()) {
+                            // The end did not fit in the full queue, so it is only noticed by draining the queue again
+                            readyBuild.signal(readyBuilds);
+                        }
+                        continue;
+                    }
+                    runningBuilds.remove(readyBuild);
+                    readyBuild.consoleOutputLogger.close();
+                    JenkinsFanOutResult result = getResult(readyBuild);
+                    results[readyBuild.index] = result;
+                    failed |= result.isFailed(failureThreshold);
+                }
+            }
+        } catch (InterruptedException e) {
+            for (RunningBuild runningBuild : runningBuilds) {
+                // One build failing to abort must not leave the others running
+                try {
+                    runningBuild.watch.abort();
+                } catch (JenkinsClientException | EncoderException | IOException | RuntimeException abortException) {
+                    logger.warn(String.format("Failed to abort the build of %s. buildNumber=%d", runningBuild.request.getJobName(), runningBuild.watch.getBuildNumber()), abortException);
+                }
+            }
+            throw e;
+        } finally {
+            for (RunningBuild runningBuild : runningBuilds) {
+                runningBuild.watch.cancel();
+            }
+        }
+
+        List<JenkinsFanOutResult> resultList = new ArrayList<>();
+        for (int i = 0; i < results.length; i++) {
+            resultList.add(results[i] != null ? results[i] : new JenkinsFanOutResult(requests.get(i), 0, null, null));
+        }
+        return resultList;
+    }
+
+    private JenkinsFanOutResult getResult(RunningBuild runningBuild) throws InterruptedException {
+        try {
+            Build build = runningBuild.watch.getResult();
+            metrics.recordPhases(runningBuild.watch);
+            return new JenkinsFanOutResult(runningBuild.request, runningBuild.watch.getBuildNumber(), build, null);
+        } catch (JenkinsBuildCanceledException | JenkinsClientException | EncoderException | IOException e) {
+            return new JenkinsFanOutResult(runningBuild.request, runningBuild.watch.getBuildNumber(), null, e);
+        }
+    }
+
+    private void abort(List<RunningBuild> runningBuilds, JenkinsFanOutResult[] results, Exception reason) throws IOException {
+        for (RunningBuild runningBuild : runningBuilds) {
+            Exception exception = reason;
+            try {
+                runningBuild.watch.abort();
+            } catch (JenkinsClientException | EncoderException | IOException | RuntimeException e) {
+                exception = e;
+            }
+            runningBuild.consoleOutputLogger.close();
+            results[runningBuild.index] = new JenkinsFanOutResult(runningBuild.request, runningBuild.watch.getBuildNumber(), null, exception);
+        }
+        runningBuilds.clear();
+    }
+
+    private static final class RunningBuild {
+
+        private final int index;
+
+        private final JenkinsBuildRequest request;
+
+        private final JenkinsBuildWatch watch;
+
+        private final ConsoleOutputLogger consoleOutputLogger;
+
+        private final AtomicBoolean signalled = new AtomicBoolean();
+
+        private RunningBuild(int index, JenkinsBuildRequest request, JenkinsBuildWatch watch, ConsoleOutputLogger consoleOutputLogger) {
+            this.index = index;
+            this.request = request;
+            this.watch = watch;
+            this.consoleOutputLogger = consoleOutputLogger;
+        }
+
+        private void signal(BlockingQueue<RunningBuild> readyBuilds) {
+            // Queued at most once until it is drained, however often the watch signals
+            if (signalled.compareAndSet(false, true)) {
+                readyBuilds.add(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public class JenkinsFanOutResult {
+
+    private final JenkinsBuildRequest request;
+
+    private final int buildNumber;
+
+    private final Build build;
+
+    private final Exception exception;
+
+    public JenkinsFanOutResult(JenkinsBuildRequest request, int buildNumber, Build build, Exception exception) {
+        this.request = request;
+        this.buildNumber = buildNumber;
+        this.build = build;
+        this.exception = exception;
+    }
+
+    public JenkinsBuildRequest getRequest() {
+        return request;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public Build getBuild() {
+        return build;
+    }
+
+    public Exception getException() {
+        return exception;
+    }
+
+    public boolean isTriggered() {
+        return build != null || exception != null;
+    }
+
+    public boolean isFailed(Result failureThreshold) {
+        if (exception != null) {
+            return true;
+        }
+        return build != null && failureThreshold != null && build.getResult().isWorseOrEqualTo(failureThreshold);
+    }
+
+    public String getDescription() {
+        if (exception != null) {
+            return String.format("#%d %s", buildNumber, exception.getMessage());
+        } else if (build != null) {
+            return String.format("#%d %s", buildNumber, build.getResult());
+        }
+        return "not triggered";
+    }
+}
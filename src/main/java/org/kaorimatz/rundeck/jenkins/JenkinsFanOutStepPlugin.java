@@ -0,0 +1,207 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.dtolabs.rundeck.core.Constants;
+import com.dtolabs.rundeck.core.execution.workflow.steps.StepException;
+import com.dtolabs.rundeck.core.execution.workflow.steps.StepFailureReason;
+import com.dtolabs.rundeck.core.plugins.Plugin;
+import com.dtolabs.rundeck.core.plugins.configuration.PropertyScope;
+import com.dtolabs.rundeck.core.plugins.configuration.StringRenderingConstants;
+import com.dtolabs.rundeck.plugins.ServiceNameConstants;
+import com.dtolabs.rundeck.plugins.descriptions.PluginDescription;
+import com.dtolabs.rundeck.plugins.descriptions.PluginProperty;
+import com.dtolabs.rundeck.plugins.descriptions.RenderingOption;
+import com.dtolabs.rundeck.plugins.descriptions.RenderingOptions;
+import com.dtolabs.rundeck.plugins.descriptions.SelectValues;
+import com.dtolabs.rundeck.plugins.step.PluginStepContext;
+import com.dtolabs.rundeck.plugins.step.StepPlugin;
+import org.apache.commons.codec.EncoderException;
+import org.apache.commons.lang.StringUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+@Plugin(name = "jenkins-fan-out", service = ServiceNameConstants.WorkflowStep)
+@PluginDescription(title = "Jenkins Fan-out Build", description = "Build multiple Jenkins jobs in parallel and wait for all of them")
+public class JenkinsFanOutStepPlugin implements StepPlugin {
+
+    @PluginProperty(title = "Job names", description = "The names of the Jenkins jobs to build, one per line", required = true, scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.DISPLAY_TYPE_KEY, value = "MULTI_LINE")
+    private String jobNames;
+
+    @PluginProperty(title = "Parameters", description = "The parameters for every build", scope = PropertyScope.Instance, validatorClass = PropertiesPropertyValidator.class)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.DISPLAY_TYPE_KEY, value = "CODE"),
+            @RenderingOption(key = StringRenderingConstants.CODE_SYNTAX_MODE, value = "properties")
+    })
+    private String parameters;
+
+    @PluginProperty(title = "Parameter matrix", description = "Comma-separated values for each parameter. Every job is built once for each combination of the values", scope = PropertyScope.Instance, validatorClass = PropertiesPropertyValidator.class)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.DISPLAY_TYPE_KEY, value = "CODE"),
+            @RenderingOption(key = StringRenderingConstants.CODE_SYNTAX_MODE, value = "properties")
+    })
+    private String parameterMatrix;
+
+    @PluginProperty(title = "Key storage path for authorization token", description = "The key storage path for the authorization token to trigger the builds", scope = PropertyScope.Instance)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.SELECTION_ACCESSOR_KEY, value = "STORAGE_PATH"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_PATH_ROOT_KEY, value = "keys"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_FILE_META_FILTER_KEY, value = "Rundeck-data-type=password"),
+    })
+    private String authorizationTokenPath;
+
+    @PluginProperty(title = "Maximum concurrency", description = "The maximum number of builds to run at the same time", defaultValue = "10", scope = PropertyScope.Instance)
+    private int maxConcurrency;
+
+    @PluginProperty(title = "Fail fast", description = "Stop the other builds as soon as one build fails instead of waiting for all of them", scope = PropertyScope.Instance)
+    private boolean failFast;
+
+    @PluginProperty(title = "Polling strategy", description = "FIXED polls at the poll interval. ADAPTIVE polls fast at first, backs off up to the maximum poll interval and uses the estimated duration of the build", defaultValue = "FIXED", scope = PropertyScope.Instance)
+    @SelectValues(values = {"FIXED", "ADAPTIVE"})
+    private String pollingStrategy;
+
+    @PluginProperty(title = "Poll interval (seconds)", description = "The interval to wait between polling the builds until they finish with the FIXED polling strategy", defaultValue = "10", scope = PropertyScope.Instance)
+    private int pollInterval;
+
+    @PluginProperty(title = "Maximum poll interval (seconds)", description = "The maximum interval to wait between polling the builds with the ADAPTIVE polling strategy", defaultValue = "60", scope = PropertyScope.Instance)
+    private int maxPollInterval;
+
+    @PluginProperty(title = "Log the console output of the triggered builds", scope = PropertyScope.Instance)
+    private boolean logConsoleOutput;
+
+    @PluginProperty(title = "Follow the console output of the triggered builds", scope = PropertyScope.Instance)
+    private boolean followConsoleOutput;
+
+    @PluginProperty(title = "Batch console output", description = "Log several console output lines as one log entry, which is much faster for large outputs. Always on when the console output is capped", scope = PropertyScope.Instance)
+    private boolean batchConsoleOutput;
+
+    @PluginProperty(title = "Maximum console output size (bytes)", description = "The maximum size of the console output of all builds to log. 0 means unlimited", defaultValue = "0", scope = PropertyScope.Instance)
+    private long maxConsoleOutputBytes;
+
+    @PluginProperty(title = "Maximum console output lines per second", description = "The maximum number of console output lines of all builds to log per second. 0 means unlimited", defaultValue = "0", scope = PropertyScope.Instance)
+    private int maxConsoleOutputLinesPerSecond;
+
+    @PluginProperty(title = "Console output tail size (bytes)", description = "Once a build has finished, fetch only this many bytes from the end of its console output, so that the rest of a huge log is not transferred. Does not apply when the console output is followed. 0 means the whole console output", defaultValue = "0", scope = PropertyScope.Instance)
+    private long consoleOutputTailBytes;
+
+    @PluginProperty(title = "Console output head size (bytes)", description = "The number of bytes to fetch from the start of each console output along with its tail. Only applies when the tail size is set", defaultValue = "0", scope = PropertyScope.Instance)
+    private long consoleOutputHeadBytes;
+
+    @PluginProperty(title = "Timeout (seconds)", description = "The maximum time to wait for the builds to finish. The running builds are aborted when the timeout expires. 0 means no timeout", defaultValue = "0", scope = PropertyScope.Instance)
+    private int timeout;
+
+    @PluginProperty(title = "Failure threshold", description = "Fail the step if any build result is worse or equal to this", scope = PropertyScope.Instance)
+    @SelectValues(values = {"SUCCESS", "UNSTABLE", "FAILURE"})
+    private String failureThreshold;
+
+    @PluginProperty(title = "Connect timeout (seconds)", description = "The timeout for connecting to Jenkins", defaultValue = "10", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int connectTimeout;
+
+    @PluginProperty(title = "Read timeout (seconds)", description = "The timeout for waiting for data from Jenkins", defaultValue = "60", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int readTimeout;
+
+    @PluginProperty(title = "Maximum retries", description = "The maximum number of times to retry a failed status or console output request. A trigger is only retried if it could not connect to Jenkins", defaultValue = "3", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int maxRetries;
+
+    @PluginProperty(title = "Jenkins base URL", description = "The base URL of Jenkins. Separate the URLs of identical controllers with commas to send each build to the least loaded one", scope = PropertyScope.Instance, validatorClass = URIListPropertyValidator.class)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private String baseUrl;
+
+    @PluginProperty(title = "User ID", description = "The ID of the user to access Jenkins", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private String userId;
+
+    @PluginProperty(title = "Key storage path for API token", description = "The key storage path for the API token to access Jenkins", scope = PropertyScope.Instance)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.SELECTION_ACCESSOR_KEY, value = "STORAGE_PATH"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_PATH_ROOT_KEY, value = "keys"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_FILE_META_FILTER_KEY, value = "Rundeck-data-type=password"),
+            @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    })
+    private String apiTokenPath;
+
+    @Override
+    public void executeStep(PluginStepContext context, Map<String, Object> configuration) throws StepException {
+        JenkinsMetrics metrics = new JenkinsMetrics(JenkinsMetrics.getInstance());
+        JenkinsControllerRouter router = JenkinsSteps.buildControllerRouter(JenkinsSteps.newJenkinsClientBuilder(context, baseUrl, userId, JenkinsSteps.getApiToken(apiTokenPath, context))
+                .setMetrics(metrics)
+                .setTimeouts((int) TimeUnit.SECONDS.toMillis(connectTimeout), (int) TimeUnit.SECONDS.toMillis(readTimeout))
+                .setMaxRetries(maxRetries));
+        Map<String, String> commonParameters = JenkinsSteps.parseParameters(parameters);
+        List<JenkinsBuildRequest> requests = createRequests(commonParameters);
+        Result threshold = failureThreshold != null ? Result.valueOf(failureThreshold) : null;
+        PollingStrategy strategy = JenkinsSteps.createPollingStrategy(pollingStrategy, pollInterval, maxPollInterval);
+        List<JenkinsFanOutResult> results;
+        // No head or tail lines, as the console outputs of the builds are interleaved in one log and would be cut as a whole
+        try (ConsoleOutputLogger logger = JenkinsSteps.createConsoleOutputLogger(context.getLogger(), batchConsoleOutput, maxConsoleOutputBytes, maxConsoleOutputLinesPerSecond, 0, 0)) {
+            JenkinsFanOutExecutor executor = new JenkinsFanOutExecutor(router, logger, JenkinsBuildPoller.getInstance(), metrics)
+                    .setTimeout(TimeUnit.SECONDS.toMillis(timeout))
+                    .setConsoleOutputTail(new ConsoleOutputTail(consoleOutputHeadBytes, consoleOutputTailBytes));
+            results = executor.execute(requests, commonParameters, JenkinsSteps.getAuthorizationToken(authorizationTokenPath, context),
+                    strategy, maxConcurrency, threshold, failFast, logConsoleOutput, followConsoleOutput);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StepException(e.getMessage(), e, StepFailureReason.Interrupted);
+        } catch (JenkinsClientException e) {
+            JenkinsSteps.invalidateSecrets(context, e, apiTokenPath, authorizationTokenPath);
+            throw new StepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsFailure);
+        } catch (IOException e) {
+            throw new StepException(e.getMessage(), e, StepFailureReason.IOFailure);
+        } catch (EncoderException e) {
+            throw new StepException(e.getMessage(), e, StepFailureReason.ConfigurationFailure);
+        } finally {
+            context.getLogger().log(Constants.INFO_LEVEL, metrics.getSummary());
+        }
+
+        int failures = 0;
+        for (JenkinsFanOutResult result : results) {
+            context.getLogger().log(Constants.INFO_LEVEL, String.format("%s: %s", result.getRequest().getLabel(commonParameters), result.getDescription()));
+            if (result.isFailed(threshold) || !result.isTriggered()) {
+                failures++;
+            }
+        }
+        if (failures > 0) {
+            String message = String.format("%d of %d builds did not succeed. failureThreshold=%s", failures, results.size(), failureThreshold);
+            throw new StepException(message, JenkinsStepFailureReason.JenkinsBuildFailure);
+        }
+    }
+
+    private List<JenkinsBuildRequest> createRequests(Map<String, String> commonParameters) throws StepException {
+        List<Map<String, String>> combinations = new ArrayList<>();
+        combinations.add(commonParameters);
+        for (Map.Entry<String, String> dimension : new TreeMap<>(JenkinsSteps.parseParameters(parameterMatrix)).entrySet()) {
+            List<Map<String, String>> expanded = new ArrayList<>();
+            for (Map<String, String> combination : combinations) {
+                for (String value : StringUtils.split(dimension.getValue(), ',')) {
+                    Map<String, String> parameters = new HashMap<>(combination);
+                    parameters.put(dimension.getKey(), value.trim());
+                    expanded.add(parameters);
+                }
+            }
+            combinations = expanded;
+        }
+
+        List<JenkinsBuildRequest> requests = new ArrayList<>();
+        for (String jobName : StringUtils.split(StringUtils.defaultString(jobNames), "\r\n")) {
+            if (StringUtils.isBlank(jobName)) {
+                continue;
+            }
+            for (Map<String, String> combination : combinations) {
+                requests.add(new JenkinsBuildRequest(jobName.trim(), Collections.unmodifiableMap(combination)));
+            }
+        }
+        if (requests.isEmpty()) {
+            throw new StepException("jobNames is required", StepFailureReason.ConfigurationFailure);
+        }
+        return requests;
+    }
+}
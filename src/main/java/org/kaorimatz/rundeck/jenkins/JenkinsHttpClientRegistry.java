@@ -0,0 +1,371 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.AuthCache;
+import org.apache.http.client.CookieStore;
+import org.apache.http.client.CredentialsProvider;
+import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.impl.client.BasicAuthCache;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.apache.http.impl.client.BasicCredentialsProvider;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultRedirectStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.protocol.HttpContext;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JenkinsHttpClientRegistry implements Closeable {
+
+    private static final Logger logger = Logger.getLogger(JenkinsHttpClientRegistry.class);
+
+    private static final int MAX_CONNECTIONS_TOTAL = 200;
+
+    private static final int MAX_CONNECTIONS_PER_ROUTE = 50;
+
+    private static final long MAX_KEEP_ALIVE_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
+    private static final long MAX_IDLE_SECONDS = 30;
+
+    private static final long MAX_SESSION_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private static final int IO_THREADS = 2;
+
+    private static final RedirectStrategy NO_REDIRECT_STRATEGY = new DefaultRedirectStrategy() {
+
+        @Override
+        public boolean isRedirected(HttpRequest request, HttpResponse response, HttpContext context) {
+            return false;
+        }
+    };
+
+    static final RequestConfig DEFAULT_REQUEST_CONFIG = RequestConfig.custom()
+            .setConnectTimeout((int) TimeUnit.SECONDS.toMillis(10))
+            .setSocketTimeout((int) TimeUnit.SECONDS.toMillis(60))
+            .setConnectionRequestTimeout((int) TimeUnit.SECONDS.toMillis(60))
+            .build();
+
+    private static final JenkinsHttpClientRegistry INSTANCE = createInstance();
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+
+    private final CloseableHttpClient httpClient;
+
+    private final IdleConnectionEvictor idleConnectionEvictor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final ConcurrentMap<JenkinsSessionKey, Session> sessions = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<JenkinsSessionKey, HttpClient> httpClients = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<JenkinsSessionKey, AsyncHttpClient> asyncHttpClients = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<JenkinsSessionKey, Long> lastUsed = new ConcurrentHashMap<>();
+
+    private PoolingNHttpClientConnectionManager asyncConnectionManager;
+
+    private CloseableHttpAsyncClient asyncHttpClient;
+
+    private boolean closed;
+
+    JenkinsHttpClientRegistry() {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+        connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+        connectionManager.setValidateAfterInactivity((int) TimeUnit.SECONDS.toMillis(2));
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(createKeepAliveStrategy())
+                .setUserAgent(getUserAgent())
+                .setDefaultRequestConfig(DEFAULT_REQUEST_CONFIG)
+                // Retries, including the resend on a stale pooled connection, are left to RetryingHttpClient
+                .disableAutomaticRetries()
+                .disableRedirectHandling()
+                .disableContentCompression()
+                .build();
+
+        idleConnectionEvictor = new IdleConnectionEvictor(connectionManager, MAX_IDLE_SECONDS, TimeUnit.SECONDS);
+        idleConnectionEvictor.start();
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(createThreadFactory("jenkins-http-client-scheduler"));
+        scheduler.scheduleWithFixedDelay(this::evictIdleSessions, MAX_IDLE_SECONDS, MAX_IDLE_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static JenkinsHttpClientRegistry createInstance() {
+        JenkinsHttpClientRegistry registry = new JenkinsHttpClientRegistry();
+        Runtime.getRuntime().addShutdownHook(new Thread(registry::close, "jenkins-http-client-registry-shutdown"));
+        return registry;
+    }
+
+    public static JenkinsHttpClientRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public HttpClient getHttpClient(URI baseUri, String userId, String apiToken) {
+        JenkinsSessionKey key = new JenkinsSessionKey(baseUri, userId, apiToken);
+        touch(key);
+        return httpClients.computeIfAbsent(key, k -> createHttpClient(k, apiToken));
+    }
+
+    public CrumbHttpClient.CrumbCache getCrumbCache(URI baseUri, String userId, String apiToken) {
+        JenkinsSessionKey key = new JenkinsSessionKey(baseUri, userId, apiToken);
+        touch(key);
+        return sessions.computeIfAbsent(key, k -> new Session(k, apiToken)).crumbCache;
+    }
+
+    public AsyncHttpClient getAsyncHttpClient(URI baseUri, String userId, String apiToken) {
+        JenkinsSessionKey key = new JenkinsSessionKey(baseUri, userId, apiToken);
+        touch(key);
+        return asyncHttpClients.computeIfAbsent(key, k -> createAsyncHttpClient(k, apiToken));
+    }
+
+    static String hashApiToken(String apiToken) {
+        return apiToken != null ? DigestUtils.sha256Hex(apiToken) : null;
+    }
+
+    ScheduledExecutorService getScheduler() {
+        return scheduler;
+    }
+
+    private void touch(JenkinsSessionKey key) {
+        lastUsed.put(key, System.currentTimeMillis());
+    }
+
+    private void evictIdleSessions() {
+        // A rotated token leaves its session behind, so sessions not used for a while are dropped
+        long now = System.currentTimeMillis();
+        for (Map.Entry<JenkinsSessionKey, Long> entry : lastUsed.entrySet()) {
+            JenkinsSessionKey key = entry.getKey();
+            if (now - entry.getValue() < MAX_SESSION_IDLE_MILLIS || !lastUsed.remove(key, entry.getValue())) {
+                continue;
+            }
+            httpClients.remove(key);
+            asyncHttpClients.remove(key);
+            sessions.remove(key);
+            logger.debug(String.format("Evicted the idle session of %s", key.getBaseUri()));
+        }
+    }
+
+    private HttpClient createHttpClient(JenkinsSessionKey key, String apiToken) {
+        Session session = sessions.computeIfAbsent(key, k -> new Session(k, apiToken));
+        return request -> {
+            touch(key);
+            addAcceptEncoding(request);
+            return decompress(httpClient.execute(request, session.createContext()));
+        };
+    }
+
+    private AsyncHttpClient createAsyncHttpClient(JenkinsSessionKey key, String apiToken) {
+        // Shares the session with the blocking client, so both send the same cookie
+        Session session = sessions.computeIfAbsent(key, k -> new Session(k, apiToken));
+        return request -> {
+            touch(key);
+            addAcceptEncoding(request);
+            CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+            FutureCallback<HttpResponse> callback = new FutureCallback<HttpResponse>() {
+
+                @Override
+                public void completed(HttpResponse response) {
+                    future.complete(decompress(response));
+                }
+
+                @Override
+                public void failed(Exception e) {
+                    future.completeExceptionally(e);
+                }
+
+                @Override
+                public void cancelled() {
+                    future.cancel(false);
+                }
+            };
+            try {
+                getAsyncTransport().execute(request, session.createContext(), callback);
+            } catch (IOException | RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+            return future;
+        };
+    }
+
+    private synchronized CloseableHttpAsyncClient getAsyncTransport() throws IOException {
+        if (closed) {
+            throw new IOException("The HTTP client registry is closed");
+        }
+        if (asyncHttpClient != null) {
+            return asyncHttpClient;
+        }
+        // Created on first use, since only a few I/O threads are needed for every request in flight
+        IOReactorConfig ioReactorConfig = IOReactorConfig.custom()
+                .setIoThreadCount(IO_THREADS)
+                .setConnectTimeout(DEFAULT_REQUEST_CONFIG.getConnectTimeout())
+                .setSoTimeout(DEFAULT_REQUEST_CONFIG.getSocketTimeout())
+                .build();
+        asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(ioReactorConfig, createThreadFactory("jenkins-http-client-io")));
+        asyncConnectionManager.setMaxTotal(MAX_CONNECTIONS_TOTAL);
+        asyncConnectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_ROUTE);
+
+        asyncHttpClient = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setKeepAliveStrategy(createKeepAliveStrategy())
+                .setUserAgent(getUserAgent())
+                .setDefaultRequestConfig(DEFAULT_REQUEST_CONFIG)
+                .setRedirectStrategy(NO_REDIRECT_STRATEGY)
+                .build();
+        asyncHttpClient.start();
+
+        scheduler.scheduleWithFixedDelay(() -> {
+            asyncConnectionManager.closeExpiredConnections();
+            asyncConnectionManager.closeIdleConnections(MAX_IDLE_SECONDS, TimeUnit.SECONDS);
+        }, MAX_IDLE_SECONDS, MAX_IDLE_SECONDS, TimeUnit.SECONDS);
+        return asyncHttpClient;
+    }
+
+    private static void addAcceptEncoding(HttpUriRequest request) {
+        if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+            request.addHeader(HttpHeaders.ACCEPT_ENCODING, ACCEPT_ENCODING);
+        }
+    }
+
+    private static <T extends HttpResponse> T decompress(T response) {
+        // Decompressed here rather than by HttpClient so that the compressed size can still be measured
+        HttpEntity entity = response.getEntity();
+        if (entity == null || entity.getContentLength() == 0 || entity.getContentEncoding() == null) {
+            return response;
+        }
+        String encoding = entity.getContentEncoding().getValue().trim().toLowerCase(Locale.ROOT);
+        if (encoding.equals("gzip") || encoding.equals("x-gzip") || encoding.equals("deflate")) {
+            response.setEntity(new CompressedHttpEntity(entity, encoding.equals("deflate")));
+            response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+            response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+            response.removeHeaders(HttpHeaders.CONTENT_MD5);
+        }
+        return response;
+    }
+
+    private ConnectionKeepAliveStrategy createKeepAliveStrategy() {
+        return (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            if (duration <= 0 || duration > MAX_KEEP_ALIVE_MILLIS) {
+                return MAX_KEEP_ALIVE_MILLIS;
+            }
+            return duration;
+        };
+    }
+
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format("%s-%d", namePrefix, threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private String getUserAgent() {
+        String title = getClass().getPackage().getImplementationTitle();
+        String version = getClass().getPackage().getImplementationVersion();
+        return String.format("%s/%s", title, version);
+    }
+
+    @Override
+    public void close() {
+        httpClients.clear();
+        asyncHttpClients.clear();
+        sessions.clear();
+        lastUsed.clear();
+        idleConnectionEvictor.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close the HTTP client", e);
+        }
+        connectionManager.shutdown();
+        synchronized (this) {
+            closed = true;
+            if (asyncHttpClient != null) {
+                try {
+                    asyncHttpClient.close();
+                } catch (IOException e) {
+                    logger.warn("Failed to close the asynchronous HTTP client", e);
+                }
+            }
+        }
+        scheduler.shutdownNow();
+    }
+
+    private static final class Session {
+
+        private final CookieStore cookieStore = new BasicCookieStore();
+
+        private final CredentialsProvider credentialsProvider;
+
+        private final AuthCache authCache;
+
+        private final CrumbHttpClient.CrumbCache crumbCache;
+
+        private Session(JenkinsSessionKey key, String apiToken) {
+            crumbCache = new CrumbHttpClient.CrumbCache(key.getBaseUri());
+            HttpHost httpHost = new HttpHost(key.getBaseUri().getHost(), key.getBaseUri().getPort(), key.getBaseUri().getScheme());
+            if (key.getUserId() != null && apiToken != null) {
+                credentialsProvider = new BasicCredentialsProvider();
+                credentialsProvider.setCredentials(new AuthScope(httpHost), new UsernamePasswordCredentials(key.getUserId(), apiToken));
+                authCache = new BasicAuthCache();
+                authCache.put(httpHost, new BasicScheme());
+            } else {
+                credentialsProvider = null;
+                authCache = null;
+            }
+        }
+
+        private HttpClientContext createContext() {
+            // Jenkins binds crumbs to the session, so each credential keeps its own session cookie
+            HttpClientContext httpClientContext = HttpClientContext.create();
+            httpClientContext.setCookieStore(cookieStore);
+            if (credentialsProvider != null) {
+                httpClientContext.setCredentialsProvider(credentialsProvider);
+                httpClientContext.setAuthCache(authCache);
+            }
+            return httpClientContext;
+        }
+    }
+}
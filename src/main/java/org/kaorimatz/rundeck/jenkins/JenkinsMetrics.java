@@ -0,0 +1,136 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.log4j.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.StringJoiner;
+
+public class JenkinsMetrics {
+
+    private static final Logger logger = Logger.getLogger(JenkinsMetrics.class);
+
+    private static final String OBJECT_NAME_DOMAIN = "org.kaorimatz.rundeck.jenkins";
+
+    private static final JenkinsMetrics INSTANCE = createInstance();
+
+    private final Map<JenkinsEndpoint, JenkinsEndpointMetrics> endpointMetrics = new EnumMap<>(JenkinsEndpoint.class);
+
+    private final Map<JenkinsBuildWatch.State, JenkinsPhaseMetrics> phaseMetrics = new EnumMap<>(JenkinsBuildWatch.State.class);
+
+    public JenkinsMetrics() {
+        this(null);
+    }
+
+    public JenkinsMetrics(JenkinsMetrics parent) {
+        for (JenkinsEndpoint endpoint : JenkinsEndpoint.values()) {
+            endpointMetrics.put(endpoint, new JenkinsEndpointMetrics(parent != null ? parent.getEndpointMetrics(endpoint) : null));
+        }
+        for (JenkinsBuildWatch.State state : JenkinsBuildWatch.State.values()) {
+            if (state != JenkinsBuildWatch.State.DONE) {
+                phaseMetrics.put(state, new JenkinsPhaseMetrics(parent != null ? parent.getPhaseMetrics(state) : null));
+            }
+        }
+    }
+
+    private static JenkinsMetrics createInstance() {
+        JenkinsMetrics metrics = new JenkinsMetrics();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (Map.Entry<JenkinsEndpoint, JenkinsEndpointMetrics> entry : metrics.endpointMetrics.entrySet()) {
+                register(server, createObjectName("Endpoint", entry.getKey().getMetricName()), entry.getValue());
+            }
+            for (Map.Entry<JenkinsBuildWatch.State, JenkinsPhaseMetrics> entry : metrics.phaseMetrics.entrySet()) {
+                register(server, createObjectName("BuildPhase", entry.getKey().name().toLowerCase()), entry.getValue());
+            }
+        } catch (JMException e) {
+            logger.warn("Failed to register Jenkins metrics MBeans", e);
+        }
+        return metrics;
+    }
+
+    private static ObjectName createObjectName(String type, String name) throws JMException {
+        return new ObjectName(String.format("%s:type=%s,name=%s", OBJECT_NAME_DOMAIN, type, name));
+    }
+
+    private static void register(MBeanServer server, ObjectName objectName, Object mbean) throws JMException {
+        try {
+            server.registerMBean(mbean, objectName);
+        } catch (InstanceAlreadyExistsException e) {
+            // The plugin has been reloaded in a new class loader
+            server.unregisterMBean(objectName);
+            server.registerMBean(mbean, objectName);
+        }
+    }
+
+    public static JenkinsMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    public JenkinsEndpointMetrics getEndpointMetrics(JenkinsEndpoint endpoint) {
+        return endpointMetrics.get(endpoint);
+    }
+
+    public JenkinsPhaseMetrics getPhaseMetrics(JenkinsBuildWatch.State state) {
+        return phaseMetrics.get(state);
+    }
+
+    public void recordPhases(JenkinsBuildWatch watch) {
+        for (Map.Entry<JenkinsBuildWatch.State, JenkinsPhaseMetrics> entry : phaseMetrics.entrySet()) {
+            long duration = watch.getDuration(entry.getKey());
+            if (duration > 0) {
+                entry.getValue().record(duration);
+            }
+        }
+    }
+
+    public String getSummary() {
+        long requests = 0;
+        long errors = 0;
+        long retries = 0;
+        long bytesSent = 0;
+        long bytesReceived = 0;
+        long compressedBytesReceived = 0;
+        long limiterWaitMillis = 0;
+        for (JenkinsEndpointMetrics metrics : endpointMetrics.values()) {
+            requests += metrics.getRequests();
+            errors += metrics.getErrors();
+            retries += metrics.getRetries();
+            bytesSent += metrics.getBytesSent();
+            bytesReceived += metrics.getBytesReceived();
+            compressedBytesReceived += metrics.getCompressedBytesReceived();
+            limiterWaitMillis += metrics.getLimiterWaitMillis();
+        }
+        StringJoiner summary = new StringJoiner(", ");
+        summary.add(String.format("Jenkins requests: %d (%d errors, %d retries)", requests, errors, retries));
+        summary.add(String.format("sent: %s", formatBytes(bytesSent)));
+        if (compressedBytesReceived > 0) {
+            summary.add(String.format("received: %s (%s compressed)", formatBytes(bytesReceived), formatBytes(compressedBytesReceived)));
+        } else {
+            summary.add(String.format("received: %s", formatBytes(bytesReceived)));
+        }
+        if (limiterWaitMillis > 0) {
+            summary.add(String.format("waited for the request limiter: %.1f s", limiterWaitMillis / 1000.0));
+        }
+        for (Map.Entry<JenkinsBuildWatch.State, JenkinsPhaseMetrics> entry : phaseMetrics.entrySet()) {
+            if (entry.getValue().getCount() > 0) {
+                summary.add(String.format("%s: %.1f s", entry.getKey().name().toLowerCase(), entry.getValue().getTotalMillis() / 1000.0));
+            }
+        }
+        return summary.toString();
+    }
+
+    static String formatBytes(long bytes) {
+        if (bytes < 1024) {
+            return String.format("%d B", bytes);
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KiB", bytes / 1024.0);
+        }
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+}
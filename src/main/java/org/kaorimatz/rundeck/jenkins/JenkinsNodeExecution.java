@@ -0,0 +1,51 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+public class JenkinsNodeExecution {
+
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final Map<String, JenkinsNodeExecution> EXECUTIONS = new HashMap<>();
+
+    private final Semaphore builds;
+
+    private int references;
+
+    private long idleSince;
+
+    private JenkinsNodeExecution(int maxConcurrentBuilds) {
+        this.builds = new Semaphore(maxConcurrentBuilds > 0 ? maxConcurrentBuilds : Integer.MAX_VALUE, true);
+    }
+
+    public static JenkinsNodeExecution join(String key, int maxConcurrentBuilds) {
+        synchronized (EXECUTIONS) {
+            long now = System.currentTimeMillis();
+            // Kept for a while after the last node leaves, since nodes may also run one after another
+            EXECUTIONS.values().removeIf(execution -> execution.references == 0 && now - execution.idleSince >= IDLE_TIMEOUT_MILLIS);
+            // Nodes that expand to a different limit do not share the builds of the others
+            JenkinsNodeExecution execution = EXECUTIONS.computeIfAbsent(key + "#" + maxConcurrentBuilds, k -> new JenkinsNodeExecution(maxConcurrentBuilds));
+            execution.references++;
+            return execution;
+        }
+    }
+
+    public void leave() {
+        synchronized (EXECUTIONS) {
+            if (--references == 0) {
+                idleSince = System.currentTimeMillis();
+            }
+        }
+    }
+
+    public void acquireBuild() throws InterruptedException {
+        builds.acquire();
+    }
+
+    public void releaseBuild() {
+        builds.release();
+    }
+}
@@ -0,0 +1,212 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.dtolabs.rundeck.core.Constants;
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.execution.workflow.steps.StepException;
+import com.dtolabs.rundeck.core.execution.workflow.steps.StepFailureReason;
+import com.dtolabs.rundeck.core.execution.workflow.steps.node.NodeStepException;
+import com.dtolabs.rundeck.core.execution.workflow.steps.node.NodeStepFailureReason;
+import com.dtolabs.rundeck.core.plugins.Plugin;
+import com.dtolabs.rundeck.core.plugins.configuration.PropertyScope;
+import com.dtolabs.rundeck.core.plugins.configuration.StringRenderingConstants;
+import com.dtolabs.rundeck.plugins.ServiceNameConstants;
+import com.dtolabs.rundeck.plugins.descriptions.PluginDescription;
+import com.dtolabs.rundeck.plugins.descriptions.PluginProperty;
+import com.dtolabs.rundeck.plugins.descriptions.RenderingOption;
+import com.dtolabs.rundeck.plugins.descriptions.RenderingOptions;
+import com.dtolabs.rundeck.plugins.descriptions.SelectValues;
+import com.dtolabs.rundeck.plugins.step.NodeStepPlugin;
+import com.dtolabs.rundeck.plugins.step.PluginStepContext;
+import org.apache.commons.codec.EncoderException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+@Plugin(name = "jenkins-node-build", service = ServiceNameConstants.WorkflowNodeStep)
+@PluginDescription(title = "Jenkins Node Build", description = "Build a Jenkins job for each node")
+public class JenkinsNodeStepPlugin implements NodeStepPlugin {
+
+    @PluginProperty(title = "Job name", description = "The name of the Jenkins job to build", required = true, scope = PropertyScope.Instance)
+    private String jobName;
+
+    @PluginProperty(title = "Parameters", description = "The parameters for the build", scope = PropertyScope.Instance, validatorClass = PropertiesPropertyValidator.class)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.DISPLAY_TYPE_KEY, value = "CODE"),
+            @RenderingOption(key = StringRenderingConstants.CODE_SYNTAX_MODE, value = "properties")
+    })
+    private String parameters;
+
+    @PluginProperty(title = "Node parameters", description = "The build parameters to set from node attributes, as parameter=attribute, e.g. TARGET_HOST=hostname", defaultValue = "NODE_NAME=nodename", scope = PropertyScope.Instance, validatorClass = PropertiesPropertyValidator.class)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.DISPLAY_TYPE_KEY, value = "CODE"),
+            @RenderingOption(key = StringRenderingConstants.CODE_SYNTAX_MODE, value = "properties")
+    })
+    private String nodeParameters;
+
+    @PluginProperty(title = "Key storage path for authorization token", description = "The key storage path for the authorization token to trigger the build", scope = PropertyScope.Instance)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.SELECTION_ACCESSOR_KEY, value = "STORAGE_PATH"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_PATH_ROOT_KEY, value = "keys"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_FILE_META_FILTER_KEY, value = "Rundeck-data-type=password"),
+    })
+    private String authorizationTokenPath;
+
+    @PluginProperty(title = "Maximum concurrent builds", description = "The maximum number of builds running at once for the nodes of an execution. The other nodes wait for a build to finish before triggering theirs. 0 means unlimited", defaultValue = "10", scope = PropertyScope.Instance)
+    private int maxConcurrentBuilds;
+
+    @PluginProperty(title = "Wait for the triggered build to finish", scope = PropertyScope.Instance)
+    private boolean waitForBuildToFinish;
+
+    @PluginProperty(title = "Polling strategy", description = "FIXED polls at the poll interval. ADAPTIVE polls fast at first, backs off up to the maximum poll interval and uses the estimated duration of the build", defaultValue = "FIXED", scope = PropertyScope.Instance)
+    @SelectValues(values = {"FIXED", "ADAPTIVE"})
+    private String pollingStrategy;
+
+    @PluginProperty(title = "Poll interval (seconds)", description = "The interval to wait between polling the build until it finishes with the FIXED polling strategy", defaultValue = "10", scope = PropertyScope.Instance)
+    private int pollInterval;
+
+    @PluginProperty(title = "Maximum poll interval (seconds)", description = "The maximum interval to wait between polling the build with the ADAPTIVE polling strategy", defaultValue = "60", scope = PropertyScope.Instance)
+    private int maxPollInterval;
+
+    @PluginProperty(title = "Log the console output of the triggered build", scope = PropertyScope.Instance)
+    private boolean logConsoleOutput;
+
+    @PluginProperty(title = "Follow the console output of the triggered build", scope = PropertyScope.Instance)
+    private boolean followConsoleOutput;
+
+    @PluginProperty(title = "Batch console output", description = "Log several console output lines as one log entry, which is much faster for large outputs", scope = PropertyScope.Instance)
+    private boolean batchConsoleOutput;
+
+    @PluginProperty(title = "Timeout (seconds)", description = "The maximum time to wait for the build to finish. The build is aborted when the timeout expires. 0 means no timeout", defaultValue = "0", scope = PropertyScope.Instance)
+    private int timeout;
+
+    @PluginProperty(title = "Failure threshold", description = "Fail the node if the build result is worse or equal to this", scope = PropertyScope.Instance)
+    @SelectValues(values = {"SUCCESS", "UNSTABLE", "FAILURE"})
+    private String failureThreshold;
+
+    @PluginProperty(title = "Connect timeout (seconds)", description = "The timeout for connecting to Jenkins", defaultValue = "10", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int connectTimeout;
+
+    @PluginProperty(title = "Read timeout (seconds)", description = "The timeout for waiting for data from Jenkins", defaultValue = "60", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int readTimeout;
+
+    @PluginProperty(title = "Maximum retries", description = "The maximum number of times to retry a failed status or console output request. A trigger is only retried if it could not connect to Jenkins", defaultValue = "3", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private int maxRetries;
+
+    @PluginProperty(title = "Jenkins base URL", description = "The base URL of Jenkins. Separate the URLs of identical controllers with commas to send each build to the least loaded one", scope = PropertyScope.Instance, validatorClass = URIListPropertyValidator.class)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private String baseUrl;
+
+    @PluginProperty(title = "User ID", description = "The ID of the user to access Jenkins", scope = PropertyScope.Instance)
+    @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    private String userId;
+
+    @PluginProperty(title = "Key storage path for API token", description = "The key storage path for the API token to access Jenkins", scope = PropertyScope.Instance)
+    @RenderingOptions({
+            @RenderingOption(key = StringRenderingConstants.SELECTION_ACCESSOR_KEY, value = "STORAGE_PATH"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_PATH_ROOT_KEY, value = "keys"),
+            @RenderingOption(key = StringRenderingConstants.STORAGE_FILE_META_FILTER_KEY, value = "Rundeck-data-type=password"),
+            @RenderingOption(key = StringRenderingConstants.GROUPING, value = "secondary")
+    })
+    private String apiTokenPath;
+
+    @Override
+    public void executeNodeStep(PluginStepContext context, Map<String, Object> configuration, INodeEntry entry) throws NodeStepException {
+        String nodeName = entry.getNodename();
+        // Each node builds its own client, as its settings may expand node attributes. The connections, request
+        // limiters and status requests are still shared through the client registry
+        JenkinsMetrics metrics = new JenkinsMetrics(JenkinsMetrics.getInstance());
+        JenkinsControllerRouter router;
+        Map<String, String> buildParameters;
+        String token;
+        PollingStrategy strategy;
+        try {
+            router = JenkinsSteps.buildControllerRouter(JenkinsSteps.newJenkinsClientBuilder(context, baseUrl, userId, JenkinsSteps.getApiToken(apiTokenPath, context))
+                    .setMetrics(metrics)
+                    .setTimeouts((int) TimeUnit.SECONDS.toMillis(connectTimeout), (int) TimeUnit.SECONDS.toMillis(readTimeout))
+                    .setMaxRetries(maxRetries));
+            buildParameters = getBuildParameters(entry);
+            token = JenkinsSteps.getAuthorizationToken(authorizationTokenPath, context);
+            strategy = JenkinsSteps.createPollingStrategy(pollingStrategy, pollInterval, maxPollInterval);
+        } catch (StepException e) {
+            throw new NodeStepException(e.getMessage(), e, e.getFailureReason(), nodeName);
+        }
+
+        JenkinsNodeExecution execution = JenkinsNodeExecution.join(getExecutionKey(context), maxConcurrentBuilds);
+        Build build;
+        try (ConsoleOutputLogger logger = JenkinsSteps.createConsoleOutputLogger(context.getLogger(), batchConsoleOutput)) {
+            execution.acquireBuild();
+            try {
+                JenkinsBuildOptions options = new JenkinsBuildOptions()
+                        .setToken(token)
+                        .setWaitForBuildToFinish(waitForBuildToFinish)
+                        .setPollingStrategy(strategy)
+                        .setLogConsoleOutput(logConsoleOutput)
+                        .setFollowConsoleOutput(followConsoleOutput)
+                        .setTimeout(TimeUnit.SECONDS.toMillis(timeout));
+                build = new JenkinsBuildExecutor(router, logger, JenkinsBuildPoller.getInstance(), metrics).execute(jobName, buildParameters, options).getBuild();
+            } finally {
+                execution.releaseBuild();
+            }
+        } catch (JenkinsBuildCanceledException e) {
+            throw new NodeStepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsBuildCanceled, nodeName);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NodeStepException(e.getMessage(), e, NodeStepFailureReason.Interrupted, nodeName);
+        } catch (JenkinsTimeoutException e) {
+            throw new NodeStepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsBuildTimedOut, nodeName);
+        } catch (JenkinsClientException e) {
+            JenkinsSteps.invalidateSecrets(context, e, apiTokenPath, authorizationTokenPath);
+            throw new NodeStepException(e.getMessage(), e, JenkinsStepFailureReason.JenkinsFailure, nodeName);
+        } catch (IOException e) {
+            throw new NodeStepException(e.getMessage(), e, NodeStepFailureReason.IOFailure, nodeName);
+        } catch (EncoderException e) {
+            throw new NodeStepException(e.getMessage(), e, StepFailureReason.ConfigurationFailure, nodeName);
+        } finally {
+            execution.leave();
+            context.getLogger().log(Constants.INFO_LEVEL, metrics.getSummary());
+        }
+        if (build == null) {
+            return;
+        }
+        context.getLogger().log(Constants.INFO_LEVEL, String.format("%s #%d: %s", jobName, build.getNumber(), build.getResult()));
+        if (failureThreshold != null && build.getResult().isWorseOrEqualTo(Result.valueOf(failureThreshold))) {
+            String message = String.format("Build result is worse or equal to '%s'. result = %s", failureThreshold, build.getResult());
+            throw new NodeStepException(message, JenkinsStepFailureReason.JenkinsBuildFailure, nodeName);
+        }
+    }
+
+    private Map<String, String> getBuildParameters(INodeEntry entry) throws StepException {
+        Map<String, String> buildParameters = new HashMap<>(JenkinsSteps.parseParameters(parameters));
+        for (Map.Entry<String, String> nodeParameter : JenkinsSteps.parseParameters(nodeParameters).entrySet()) {
+            String attribute = nodeParameter.getValue().trim();
+            String value;
+            if ("nodename".equals(attribute)) {
+                value = entry.getNodename();
+            } else if ("hostname".equals(attribute)) {
+                value = entry.getHostname();
+            } else {
+                value = entry.getAttributes() != null ? entry.getAttributes().get(attribute) : null;
+            }
+            if (value != null) {
+                buildParameters.put(nodeParameter.getKey(), value);
+            }
+        }
+        return buildParameters;
+    }
+
+    private static String getExecutionKey(PluginStepContext context) {
+        Map<String, String> job = context.getDataContext() != null ? context.getDataContext().get("job") : null;
+        String executionId = job != null ? job.get("execid") : null;
+        if (executionId == null) {
+            // Nothing to tell the nodes of the same execution apart by, so each node gets its own limit
+            return UUID.randomUUID().toString();
+        }
+        return String.format("%s#%d", executionId, context.getStepNumber());
+    }
+}
@@ -0,0 +1,54 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public class JenkinsPhaseMetrics implements JenkinsPhaseMetricsMBean {
+
+    private final JenkinsPhaseMetrics parent;
+
+    private final LatencyHistogram duration = new LatencyHistogram();
+
+    public JenkinsPhaseMetrics(JenkinsPhaseMetrics parent) {
+        this.parent = parent;
+    }
+
+    public void record(long millis) {
+        duration.record(millis);
+        if (parent != null) {
+            parent.record(millis);
+        }
+    }
+
+    @Override
+    public long getCount() {
+        return duration.getCount();
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return duration.getSum();
+    }
+
+    @Override
+    public double getMeanMillis() {
+        return duration.getMean();
+    }
+
+    @Override
+    public long getMillis50thPercentile() {
+        return duration.getPercentile(0.5);
+    }
+
+    @Override
+    public long getMillis90thPercentile() {
+        return duration.getPercentile(0.9);
+    }
+
+    @Override
+    public long getMillis99thPercentile() {
+        return duration.getPercentile(0.99);
+    }
+
+    @Override
+    public long getMaxMillis() {
+        return duration.getMax();
+    }
+}
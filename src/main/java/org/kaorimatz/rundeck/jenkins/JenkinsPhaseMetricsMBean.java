@@ -0,0 +1,18 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public interface JenkinsPhaseMetricsMBean {
+
+    long getCount();
+
+    long getTotalMillis();
+
+    double getMeanMillis();
+
+    long getMillis50thPercentile();
+
+    long getMillis90thPercentile();
+
+    long getMillis99thPercentile();
+
+    long getMaxMillis();
+}
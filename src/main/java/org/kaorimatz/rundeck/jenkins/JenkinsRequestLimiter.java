@@ -0,0 +1,232 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class JenkinsRequestLimiter {
+
+    private final Lock lock = new ReentrantLock();
+
+    private final Deque<Waiter> highPriorityWaiters = new ArrayDeque<>();
+
+    private final Deque<Waiter> lowPriorityWaiters = new ArrayDeque<>();
+
+    private final ScheduledExecutorService scheduler;
+
+    private double maxRequestsPerSecond;
+
+    private int maxConcurrentRequests;
+
+    private double tokens;
+
+    private long lastRefillTime = System.nanoTime();
+
+    private int concurrentRequests;
+
+    private boolean dispatchScheduled;
+
+    public JenkinsRequestLimiter(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void configure(double maxRequestsPerSecond, int maxConcurrentRequests) {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            if (this.maxRequestsPerSecond == maxRequestsPerSecond && this.maxConcurrentRequests == maxConcurrentRequests) {
+                return;
+            }
+            this.maxRequestsPerSecond = maxRequestsPerSecond;
+            this.maxConcurrentRequests = maxConcurrentRequests;
+            tokens = Math.min(tokens, getBurst());
+            granted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        grant(granted);
+    }
+
+    public long acquire(boolean highPriority, long timeoutMillis) throws IOException {
+        Waiter waiter = enqueue(highPriority);
+        try {
+            return timeoutMillis > 0 ? waiter.future.get(timeoutMillis, TimeUnit.MILLISECONDS) : waiter.future.get();
+        } catch (InterruptedException e) {
+            cancel(waiter);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the Jenkins request limiter");
+        } catch (TimeoutException e) {
+            timeOut(waiter, timeoutMillis);
+            // Granted just before the timeout if it did not complete exceptionally
+            return getGrant(waiter);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    public CompletableFuture<Long> acquireAsync(boolean highPriority, long timeoutMillis) {
+        Waiter waiter = enqueue(highPriority);
+        if (timeoutMillis > 0 && !waiter.future.isDone()) {
+            try {
+                scheduler.schedule(() -> timeOut(waiter, timeoutMillis), timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shutting down. The waiter is granted or left waiting like one without a timeout
+            }
+        }
+        return waiter.future;
+    }
+
+    public void release() {
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            concurrentRequests--;
+            granted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        grant(granted);
+    }
+
+    private Waiter enqueue(boolean highPriority) {
+        Waiter waiter = new Waiter();
+        List<Waiter> granted;
+        lock.lock();
+        try {
+            (highPriority ? highPriorityWaiters : lowPriorityWaiters).addLast(waiter);
+            granted = dispatch();
+        } finally {
+            lock.unlock();
+        }
+        grant(granted);
+        return waiter;
+    }
+
+    private void cancel(Waiter waiter) {
+        boolean removed;
+        lock.lock();
+        try {
+            removed = highPriorityWaiters.remove(waiter) || lowPriorityWaiters.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (!removed) {
+            // Granted just before the interruption
+            release();
+        }
+    }
+
+    private void timeOut(Waiter waiter, long timeoutMillis) {
+        boolean removed;
+        lock.lock();
+        try {
+            removed = highPriorityWaiters.remove(waiter) || lowPriorityWaiters.remove(waiter);
+        } finally {
+            lock.unlock();
+        }
+        if (removed) {
+            // The request has not been sent, so it is as safe to retry as a connect timeout
+            String message = String.format("Timed out waiting for the Jenkins request limiter. timeout=%d ms", timeoutMillis);
+            waiter.future.completeExceptionally(new ConnectionPoolTimeoutException(message));
+        }
+    }
+
+    private static long getGrant(Waiter waiter) throws IOException {
+        try {
+            return waiter.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<Waiter> dispatch() {
+        List<Waiter> granted = new ArrayList<>();
+        refill();
+        while (true) {
+            Deque<Waiter> waiters = !highPriorityWaiters.isEmpty() ? highPriorityWaiters : lowPriorityWaiters;
+            if (waiters.isEmpty()) {
+                return granted;
+            }
+            if (maxConcurrentRequests > 0 && concurrentRequests >= maxConcurrentRequests) {
+                // Dispatched again on release
+                return granted;
+            }
+            if (maxRequestsPerSecond > 0 && tokens < 1) {
+                scheduleDispatch((long) Math.ceil((1 - tokens) / maxRequestsPerSecond * TimeUnit.SECONDS.toNanos(1)));
+                return granted;
+            }
+            if (maxRequestsPerSecond > 0) {
+                tokens -= 1;
+            }
+            concurrentRequests++;
+            granted.add(waiters.pollFirst());
+        }
+    }
+
+    private void scheduleDispatch(long delayNanos) {
+        if (dispatchScheduled) {
+            return;
+        }
+        dispatchScheduled = true;
+        try {
+            scheduler.schedule(() -> {
+                List<Waiter> granted;
+                lock.lock();
+                try {
+                    dispatchScheduled = false;
+                    granted = dispatch();
+                } finally {
+                    lock.unlock();
+                }
+                grant(granted);
+            }, delayNanos, TimeUnit.NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shutting down. The waiters are dispatched again on the next acquire or release
+            dispatchScheduled = false;
+        }
+    }
+
+    private static void grant(List<Waiter> granted) {
+        // Completed outside the lock, since an asynchronous waiter may go on to send its request right away
+        for (Waiter waiter : granted) {
+            waiter.future.complete(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waiter.startTime));
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (maxRequestsPerSecond > 0) {
+            tokens = Math.min(getBurst(), tokens + (now - lastRefillTime) * maxRequestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        }
+        lastRefillTime = now;
+    }
+
+    private double getBurst() {
+        // Allow up to one second worth of requests at once
+        return Math.max(1, maxRequestsPerSecond);
+    }
+
+    private static final class Waiter {
+
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private final long startTime = System.nanoTime();
+    }
+}
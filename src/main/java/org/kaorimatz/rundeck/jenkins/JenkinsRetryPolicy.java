@@ -0,0 +1,113 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+public class JenkinsRetryPolicy {
+
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final double BACKOFF_JITTER = 0.2;
+
+    private final JenkinsCircuitBreaker circuitBreaker;
+
+    private final int maxRetries;
+
+    public JenkinsRetryPolicy(JenkinsCircuitBreaker circuitBreaker, int maxRetries) {
+        this.circuitBreaker = circuitBreaker;
+        this.maxRetries = maxRetries;
+    }
+
+    public JenkinsUnavailableException checkAvailable(HttpUriRequest request) {
+        long waitMillis = isAbort(request) ? 0 : circuitBreaker.getWaitMillis();
+        if (waitMillis <= 0) {
+            return null;
+        }
+        return new JenkinsUnavailableException(String.format("Jenkins is unavailable. Retrying in %d ms. uri=%s", waitMillis, request.getURI()), waitMillis);
+    }
+
+    public void recordFailure(IOException e) {
+        if (isControllerFailure(e)) {
+            circuitBreaker.recordFailure();
+        }
+    }
+
+    public boolean recordStatus(int statusCode) {
+        if (isUnavailable(statusCode)) {
+            circuitBreaker.recordFailure();
+            return false;
+        }
+        circuitBreaker.recordSuccess();
+        return true;
+    }
+
+    public boolean canRetry(HttpUriRequest request, IOException e, int attempt) {
+        // A trigger is only retried if it has certainly not reached Jenkins, so that it is never submitted twice
+        return attempt < maxRetries && (isIdempotent(request) || isConnectFailure(e));
+    }
+
+    public IOException unavailableIfOpen(HttpUriRequest request, IOException e) {
+        long waitMillis = circuitBreaker.getWaitMillis();
+        if (!isIdempotent(request) || waitMillis <= 0) {
+            return e;
+        }
+        return new JenkinsUnavailableException(String.format("Jenkins is unavailable. Retrying in %d ms", waitMillis), waitMillis, e);
+    }
+
+    public static long getBackoffMillis(int attempt) {
+        double delay = Math.min(MAX_BACKOFF_MILLIS, INITIAL_BACKOFF_MILLIS * Math.pow(2, attempt));
+        double factor = 1 + BACKOFF_JITTER * (ThreadLocalRandom.current().nextDouble() * 2 - 1);
+        return (long) (delay * factor);
+    }
+
+    static boolean isIdempotent(HttpUriRequest request) {
+        return "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+    }
+
+    static boolean isAbort(HttpUriRequest request) {
+        // Sent even while the circuit breaker is open, as a step that gives up must not leave its build running
+        JenkinsEndpoint endpoint = JenkinsEndpoint.of(request.getURI().getPath());
+        return endpoint == JenkinsEndpoint.STOP || endpoint == JenkinsEndpoint.CANCEL;
+    }
+
+    static boolean isInterrupted(IOException e) {
+        // Timeouts are subclasses of InterruptedIOException too, but they are worth retrying
+        return e.getClass() == InterruptedIOException.class;
+    }
+
+    static boolean isStaleConnection(HttpUriRequest request, IOException e) {
+        // A pooled connection that Jenkins closed while it was idle fails like this before the request reaches Jenkins
+        return isIdempotent(request) && (e instanceof NoHttpResponseException || (e instanceof SocketException && !(e instanceof ConnectException)));
+    }
+
+    static boolean isControllerFailure(IOException e) {
+        // A request that timed out waiting for the limiter or a pooled connection was never sent, so it says nothing about Jenkins
+        if (e instanceof ConnectionPoolTimeoutException) {
+            return false;
+        }
+        return e instanceof SocketException || e instanceof SocketTimeoutException || e instanceof ConnectTimeoutException
+                || e instanceof UnknownHostException || e instanceof NoHttpResponseException;
+    }
+
+    static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException || e instanceof ConnectTimeoutException;
+    }
+
+    static boolean isUnavailable(int statusCode) {
+        return statusCode == HttpStatus.SC_BAD_GATEWAY || statusCode == HttpStatus.SC_SERVICE_UNAVAILABLE || statusCode == HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+}
@@ -0,0 +1,123 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+public class JenkinsSecretCache {
+
+    private static final JenkinsSecretCache INSTANCE = new JenkinsSecretCache(TimeUnit.SECONDS.toMillis(30), 256);
+
+    private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+
+    private final long ttlMillis;
+
+    private final int maxEntries;
+
+    public JenkinsSecretCache(long ttlMillis, int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    public static JenkinsSecretCache getInstance() {
+        return INSTANCE;
+    }
+
+    public String get(String project, String user, String path, Loader loader) throws IOException {
+        Key key = new Key(project, user, path);
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(key);
+        if (entry != null && now < entry.expirationTime) {
+            return entry.value;
+        }
+        String value = loader.load();
+        entries.put(key, new Entry(value, now + ttlMillis));
+        if (entries.size() > maxEntries) {
+            evict(now);
+        }
+        return value;
+    }
+
+    public void invalidate(String project, String path) {
+        entries.keySet().removeIf(key -> Objects.equals(key.project, project) && Objects.equals(key.path, path));
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> now >= entry.expirationTime);
+        // Still full of live secrets, so drop the ones closest to expiring
+        while (entries.size() > maxEntries) {
+            Map.Entry<Key, Entry> oldest = null;
+            for (Map.Entry<Key, Entry> candidate : entries.entrySet()) {
+                if (oldest == null || candidate.getValue().expirationTime < oldest.getValue().expirationTime) {
+                    oldest = candidate;
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            entries.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    public interface Loader {
+
+        String load() throws IOException;
+    }
+
+    private static final class Entry {
+
+        private final String value;
+
+        private final long expirationTime;
+
+        private Entry(String value, long expirationTime) {
+            this.value = value;
+            this.expirationTime = expirationTime;
+        }
+
+        @Override
+        public String toString() {
+            // Never print the secret
+            return String.format("Entry{expirationTime=%d}", expirationTime);
+        }
+    }
+
+    private static final class Key {
+
+        private final String project;
+
+        private final String user;
+
+        private final String path;
+
+        private Key(String project, String user, String path) {
+            this.project = project;
+            this.user = user;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Key key = (Key) o;
+            return Objects.equals(project, key.project) && Objects.equals(user, key.user) && Objects.equals(path, key.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(project, user, path);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.net.URI;
+import java.util.Objects;
+
+final class JenkinsSessionKey {
+
+    private final URI baseUri;
+
+    private final String userId;
+
+    private final String apiTokenHash;
+
+    JenkinsSessionKey(URI baseUri, String userId, String apiToken) {
+        this.baseUri = baseUri;
+        this.userId = userId;
+        // Only a hash of the token is compared, so that the key can be logged and kept after the session it names is
+        // dropped. The session itself still holds the raw token, as it has to send it to Jenkins
+        this.apiTokenHash = JenkinsHttpClientRegistry.hashApiToken(apiToken);
+    }
+
+    URI getBaseUri() {
+        return baseUri;
+    }
+
+    String getUserId() {
+        return userId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        JenkinsSessionKey key = (JenkinsSessionKey) o;
+        return baseUri.equals(key.baseUri) && Objects.equals(userId, key.userId) && Objects.equals(apiTokenHash, key.apiTokenHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(baseUri, userId, apiTokenHash);
+    }
+}
@@ -0,0 +1,183 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.commons.codec.EncoderException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+public class JenkinsStatusCache {
+
+    private static final int MIN_BUILDS_PER_JOB = 25;
+
+    private static final int MAX_BUILDS_PER_JOB = 400;
+
+    private final SharedSnapshot<Map<Long, QueueItem>> queue = new SharedSnapshot<>();
+
+    private final ConcurrentMap<String, JobSnapshot> jobs = new ConcurrentHashMap<>();
+
+    public QueueItem getQueueItem(JenkinsClient jenkinsClient, long queueItemId, long ttlMillis) throws JenkinsClientException, EncoderException, IOException {
+        Map<Long, QueueItem> queueItems = queue.get(ttlMillis, () -> {
+            Map<Long, QueueItem> items = new HashMap<>();
+            for (QueueItem item : jenkinsClient.getQueue().getItems()) {
+                items.put(item.getId(), item);
+            }
+            return items;
+        });
+        return queueItems.get(queueItemId);
+    }
+
+    public Build getBuild(JenkinsClient jenkinsClient, String jobName, int buildNumber, long ttlMillis) throws JenkinsClientException, EncoderException, IOException {
+        JobSnapshot job = jobs.computeIfAbsent(jobName, name -> new JobSnapshot());
+        int maxBuilds = job.maxBuilds;
+        TreeMap<Integer, Build> builds = job.get(ttlMillis, () -> {
+            TreeMap<Integer, Build> items = new TreeMap<>();
+            for (Build build : jenkinsClient.getJob(jobName, maxBuilds).getBuilds()) {
+                items.put(build.getNumber(), build);
+            }
+            return items;
+        });
+        Build build = builds.get(buildNumber);
+        if (build == null && builds.size() >= maxBuilds && buildNumber < builds.firstKey()) {
+            // The build is older than the builds listed, so list more of them next time
+            job.maxBuilds = Math.min(MAX_BUILDS_PER_JOB, maxBuilds * 2);
+        }
+        return build;
+    }
+
+    public CompletableFuture<QueueItem> getQueueItemAsync(AsyncJenkinsClient jenkinsClient, long queueItemId, long ttlMillis) {
+        return queue.getAsync(ttlMillis, () -> jenkinsClient.getQueueAsync().thenApply(result -> {
+            Map<Long, QueueItem> items = new HashMap<>();
+            for (QueueItem item : result.getItems()) {
+                items.put(item.getId(), item);
+            }
+            return items;
+        })).thenApply(queueItems -> queueItems.get(queueItemId));
+    }
+
+    public CompletableFuture<Build> getBuildAsync(AsyncJenkinsClient jenkinsClient, String jobName, int buildNumber, long ttlMillis) {
+        JobSnapshot job = jobs.computeIfAbsent(jobName, name -> new JobSnapshot());
+        int maxBuilds = job.maxBuilds;
+        return job.getAsync(ttlMillis, () -> jenkinsClient.getJobAsync(jobName, maxBuilds).thenApply(result -> {
+            TreeMap<Integer, Build> items = new TreeMap<>();
+            for (Build build : result.getBuilds()) {
+                items.put(build.getNumber(), build);
+            }
+            return items;
+        })).thenApply(builds -> {
+            Build build = builds.get(buildNumber);
+            if (build == null && builds.size() >= maxBuilds && buildNumber < builds.firstKey()) {
+                job.maxBuilds = Math.min(MAX_BUILDS_PER_JOB, maxBuilds * 2);
+            }
+            return build;
+        });
+    }
+
+    @FunctionalInterface
+    private interface Fetcher<V> {
+
+        V fetch() throws JenkinsClientException, EncoderException, IOException;
+    }
+
+    private static final class JobSnapshot extends SharedSnapshot<TreeMap<Integer, Build>> {
+
+        private volatile int maxBuilds = MIN_BUILDS_PER_JOB;
+    }
+
+    private static class SharedSnapshot<V> {
+
+        private final AtomicReference<Snapshot<V>> current = new AtomicReference<>();
+
+        V get(long ttlMillis, Fetcher<V> fetcher) throws JenkinsClientException, EncoderException, IOException {
+            while (true) {
+                Snapshot<V> snapshot = current.get();
+                if (snapshot != null && !snapshot.isExpired(ttlMillis)) {
+                    // Either fresh or being fetched by another waiter
+                    return snapshot.await();
+                }
+                Snapshot<V> pending = new Snapshot<>();
+                if (!current.compareAndSet(snapshot, pending)) {
+                    continue;
+                }
+                try {
+                    V value = fetcher.fetch();
+                    pending.complete(value);
+                    return value;
+                } catch (JenkinsClientException | EncoderException | IOException | RuntimeException e) {
+                    pending.fail(e);
+                    throw e;
+                }
+            }
+        }
+
+        CompletableFuture<V> getAsync(long ttlMillis, Supplier<CompletableFuture<V>> fetcher) {
+            while (true) {
+                Snapshot<V> snapshot = current.get();
+                if (snapshot != null && !snapshot.isExpired(ttlMillis)) {
+                    return snapshot.future;
+                }
+                Snapshot<V> pending = new Snapshot<>();
+                if (!current.compareAndSet(snapshot, pending)) {
+                    continue;
+                }
+                CompletableFuture<V> future;
+                try {
+                    future = fetcher.get();
+                } catch (RuntimeException e) {
+                    future = CompletableFutures.failed(e);
+                }
+                future.whenComplete((value, throwable) -> {
+                    if (throwable != null) {
+                        pending.fail(CompletableFutures.unwrap(throwable));
+                    } else {
+                        pending.complete(value);
+                    }
+                });
+                return pending.future;
+            }
+        }
+    }
+
+    private static final class Snapshot<V> {
+
+        private final CompletableFuture<V> future = new CompletableFuture<>();
+
+        private volatile long fetchedTime;
+
+        private void complete(V value) {
+            fetchedTime = System.currentTimeMillis();
+            future.complete(value);
+        }
+
+        private void fail(Throwable throwable) {
+            fetchedTime = System.currentTimeMillis();
+            future.completeExceptionally(throwable);
+        }
+
+        private boolean isExpired(long ttlMillis) {
+            if (!future.isDone()) {
+                return false;
+            }
+            return future.isCompletedExceptionally() || System.currentTimeMillis() - fetchedTime >= ttlMillis;
+        }
+
+        private V await() throws JenkinsClientException, EncoderException, IOException {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                throw CompletableFutures.rethrow(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.log4j.Logger;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Holds the status cache of each credential, shared by the steps that use it
+public class JenkinsStatusCaches {
+
+    private static final Logger logger = Logger.getLogger(JenkinsStatusCaches.class);
+
+    private static final long MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final JenkinsStatusCaches INSTANCE = new JenkinsStatusCaches();
+
+    private final ConcurrentMap<JenkinsSessionKey, JenkinsStatusCache> statusCaches = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<JenkinsSessionKey, Long> lastUsed = new ConcurrentHashMap<>();
+
+    private final AtomicLong lastEviction = new AtomicLong(System.currentTimeMillis());
+
+    public static JenkinsStatusCaches getInstance() {
+        return INSTANCE;
+    }
+
+    public JenkinsStatusCache getStatusCache(URI baseUri, String userId, String apiToken) {
+        // Keyed by credentials as well, so that a step never sees builds its user is not allowed to see
+        JenkinsSessionKey key = new JenkinsSessionKey(baseUri, userId, apiToken);
+        long now = System.currentTimeMillis();
+        lastUsed.put(key, now);
+        evictIdleStatusCaches(now);
+        return statusCaches.computeIfAbsent(key, k -> new JenkinsStatusCache());
+    }
+
+    private void evictIdleStatusCaches(long now) {
+        // Swept as steps start rather than on a timer, as an idle cache only costs memory. A rotated token leaves
+        // its cache behind, so caches not used for a while are dropped
+        long last = lastEviction.get();
+        if (now - last < MAX_IDLE_MILLIS || !lastEviction.compareAndSet(last, now)) {
+            return;
+        }
+        for (Map.Entry<JenkinsSessionKey, Long> entry : lastUsed.entrySet()) {
+            JenkinsSessionKey key = entry.getKey();
+            if (now - entry.getValue() < MAX_IDLE_MILLIS || !lastUsed.remove(key, entry.getValue())) {
+                continue;
+            }
+            statusCaches.remove(key);
+            logger.debug(String.format("Evicted the idle status cache of %s", key.getBaseUri()));
+        }
+    }
+}
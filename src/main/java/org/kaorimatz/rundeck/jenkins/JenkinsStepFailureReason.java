@@ -3,7 +3,9 @@ package org.kaorimatz.rundeck.jenkins;
 import com.dtolabs.rundeck.core.execution.workflow.steps.FailureReason;
 
 public enum JenkinsStepFailureReason implements FailureReason {
+    JenkinsArtifactDownloadFailure,
     JenkinsBuildCanceled,
     JenkinsBuildFailure,
+    JenkinsBuildTimedOut,
     JenkinsFailure,
 }
@@ -0,0 +1,182 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.dtolabs.rundeck.core.execution.workflow.steps.StepException;
+import com.dtolabs.rundeck.core.execution.workflow.steps.StepFailureReason;
+import com.dtolabs.rundeck.core.storage.ResourceMeta;
+import com.dtolabs.rundeck.plugins.PluginLogger;
+import com.dtolabs.rundeck.plugins.step.PluginStepContext;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.HttpStatus;
+import org.rundeck.storage.api.StorageException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+public final class JenkinsSteps {
+
+    private static final long INITIAL_POLL_INTERVAL = TimeUnit.SECONDS.toMillis(1);
+
+    private static final double POLL_INTERVAL_MULTIPLIER = 2;
+
+    private static final double POLL_INTERVAL_JITTER = 0.2;
+
+    private JenkinsSteps() {
+    }
+
+    public static PollingStrategy createPollingStrategy(String pollingStrategy, int pollInterval, int maxPollInterval) throws StepException {
+        // Steps saved before the strategy was configurable keep polling at their poll interval
+        if (StringUtils.isBlank(pollingStrategy) || "FIXED".equals(pollingStrategy)) {
+            return new FixedPollingStrategy(TimeUnit.SECONDS.toMillis(pollInterval));
+        }
+        if ("ADAPTIVE".equals(pollingStrategy)) {
+            return new AdaptivePollingStrategy(INITIAL_POLL_INTERVAL, TimeUnit.SECONDS.toMillis(maxPollInterval), POLL_INTERVAL_MULTIPLIER, POLL_INTERVAL_JITTER);
+        }
+        String message = String.format("Unknown polling strategy, pollingStrategy=%s", pollingStrategy);
+        throw new StepException(message, StepFailureReason.ConfigurationFailure);
+    }
+
+    public static ConsoleOutputLogger createConsoleOutputLogger(PluginLogger pluginLogger, boolean batch) {
+        return createConsoleOutputLogger(pluginLogger, batch, 0, 0, 0, 0);
+    }
+
+    public static ConsoleOutputLogger createConsoleOutputLogger(PluginLogger pluginLogger, boolean batch, long maxBytes, int maxLinesPerSecond, int headLines, int tailLines) {
+        // Each line stays its own log entry unless the output is capped or batching is asked for
+        if (batch || maxBytes > 0 || maxLinesPerSecond > 0 || headLines > 0 || tailLines > 0) {
+            return new BatchingConsoleOutputLogger(pluginLogger, maxBytes, maxLinesPerSecond, headLines, tailLines);
+        }
+        return new DefaultConsoleOutputLogger(pluginLogger);
+    }
+
+    public static String getApiToken(String path, PluginStepContext context) throws StepException {
+        try {
+            return readValueFromKeyStorage(context, path);
+        } catch (StorageException | IOException e) {
+            String message = String.format("Failed to get API token from Key Storage, apiTokenPath=%s", path);
+            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
+        }
+    }
+
+    public static String getAuthorizationToken(String path, PluginStepContext context) throws StepException {
+        try {
+            return readValueFromKeyStorage(context, path);
+        } catch (StorageException | IOException e) {
+            String message = String.format("Failed to get authorization token from Key Storage, authorizationTokenPath=%s", path);
+            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
+        }
+    }
+
+    public static void invalidateSecrets(PluginStepContext context, JenkinsClientException e, String... paths) {
+        if (e.getStatusCode() != HttpStatus.SC_UNAUTHORIZED) {
+            return;
+        }
+        // The token may have been rotated in Key Storage since it was cached
+        for (String path : paths) {
+            if (StringUtils.isNotBlank(path)) {
+                JenkinsSecretCache.getInstance().invalidate(context.getFrameworkProject(), path);
+            }
+        }
+    }
+
+    private static String readValueFromKeyStorage(PluginStepContext context, String path) throws IOException {
+        if (StringUtils.isBlank(path)) {
+            return null;
+        }
+        Map<String, String> job = context.getDataContext() != null ? context.getDataContext().get("job") : null;
+        String user = job != null ? job.get("username") : null;
+        // Key Storage access depends on the user, so a secret is only shared between executions of the same user
+        if (user == null) {
+            return readValueFromStorageTree(context, path);
+        }
+        return JenkinsSecretCache.getInstance().get(context.getFrameworkProject(), user, path, () -> readValueFromStorageTree(context, path));
+    }
+
+    private static String readValueFromStorageTree(PluginStepContext context, String path) throws IOException {
+        ResourceMeta contents = context.getExecutionContext().getStorageTree().getResource(path).getContents();
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        contents.writeContent(stream);
+        return stream.toString();
+    }
+
+    public static JenkinsControllerRouter buildControllerRouter(String baseUrl, String userId, String apiToken) throws StepException {
+        return buildControllerRouter(baseUrl, userId, apiToken, JenkinsMetrics.getInstance());
+    }
+
+    public static JenkinsControllerRouter buildControllerRouter(String baseUrl, String userId, String apiToken, JenkinsMetrics metrics) throws StepException {
+        return buildControllerRouter(newJenkinsClientBuilder(baseUrl, userId, apiToken).setMetrics(metrics));
+    }
+
+    public static DefaultJenkinsClientBuilder newJenkinsClientBuilder(PluginStepContext context, String baseUrl, String userId, String apiToken) throws StepException {
+        // The request limits are configured for the whole server, not by the step
+        JenkinsControllerRegistry.getInstance().loadRequestLimits(context.getFramework().getPropertyLookup());
+        return newJenkinsClientBuilder(baseUrl, userId, apiToken);
+    }
+
+    public static DefaultJenkinsClientBuilder newJenkinsClientBuilder(String baseUrl, String userId, String apiToken) throws StepException {
+        if (StringUtils.isBlank(baseUrl)) {
+            throw new StepException("baseUrl is required", StepFailureReason.ConfigurationFailure);
+        }
+        return new DefaultJenkinsClientBuilder(baseUrl)
+                .setUserId(StringUtils.trimToNull(userId))
+                .setApiToken(StringUtils.trimToNull(apiToken));
+    }
+
+    public static JenkinsControllerRouter buildControllerRouter(DefaultJenkinsClientBuilder builder) throws StepException {
+        try {
+            return builder.buildRouter();
+        } catch (URISyntaxException e) {
+            String message = String.format("Invalid Jenkins base URL. baseUrl=%s", builder.getBaseUrl());
+            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
+        }
+    }
+
+    public static JenkinsCallback registerCallback(String callbackUrl) throws StepException {
+        URI callbackBaseUri;
+        try {
+            callbackBaseUri = new URI(callbackUrl);
+        } catch (URISyntaxException e) {
+            String message = String.format("Invalid callback URL. callbackUrl=%s", callbackUrl);
+            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
+        }
+        int port = callbackBaseUri.getPort();
+        if (port == -1) {
+            if (!"http".equalsIgnoreCase(callbackBaseUri.getScheme())) {
+                // The listener speaks plain HTTP, so the port behind a TLS proxy cannot be guessed from the scheme
+                String message = String.format("The callback URL must specify the port of the callback listener. callbackUrl=%s", callbackUrl);
+                throw new StepException(message, StepFailureReason.ConfigurationFailure);
+            }
+            port = 80;
+        }
+        try {
+            return JenkinsCallbackServer.register(port, callbackBaseUri);
+        } catch (IOException e) {
+            String message = String.format("Failed to start the callback listener. port=%d", port);
+            throw new StepException(message, e, StepFailureReason.IOFailure);
+        }
+    }
+
+    public static Map<String, String> parseParameters(String parametersString) throws StepException {
+        if (StringUtils.isBlank(parametersString)) {
+            return Collections.emptyMap();
+        }
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader(parametersString));
+        } catch (IOException e) {
+            String message = String.format("Unable to parse parameters. parameters=%s", parametersString);
+            throw new StepException(message, e, StepFailureReason.ConfigurationFailure);
+        }
+        Map<String, String> parameters = new HashMap<>();
+        for (String key : properties.stringPropertyNames()) {
+            parameters.put(key, properties.getProperty(key));
+        }
+        return parameters;
+    }
+}
@@ -0,0 +1,8 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public class JenkinsTimeoutException extends JenkinsClientException {
+
+    public JenkinsTimeoutException(String message) {
+        super(message);
+    }
+}
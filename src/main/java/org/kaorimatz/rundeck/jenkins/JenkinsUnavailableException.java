@@ -0,0 +1,22 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.io.IOException;
+
+public class JenkinsUnavailableException extends IOException {
+
+    private final long retryAfterMillis;
+
+    public JenkinsUnavailableException(String message, long retryAfterMillis) {
+        super(message);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public JenkinsUnavailableException(String message, long retryAfterMillis, Throwable cause) {
+        super(message, cause);
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
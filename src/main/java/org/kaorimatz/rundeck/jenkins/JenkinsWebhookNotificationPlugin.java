@@ -14,9 +14,11 @@ import org.dom4j.Document;
 import org.dom4j.DocumentHelper;
 import org.dom4j.Element;
 
-import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 @Plugin(name = "jenkins-webhook", service = ServiceNameConstants.Notification)
 @PluginDescription(title = "Jenkins Webhook", description = "Send execution events to Jenkins webhook to trigger builds")
@@ -34,12 +36,23 @@ public class JenkinsWebhookNotificationPlugin implements NotificationPlugin {
     @Password
     private String apiToken;
 
+    @PluginProperty(title = "Spool directory", description = "The directory to spool undelivered events to so that they survive a restart", scope = PropertyScope.Project)
+    private String spoolDirectory;
+
+    @PluginProperty(title = "Maximum delivery time (minutes)", description = "How long to keep retrying an event that could not be delivered before giving up on it", defaultValue = "60", scope = PropertyScope.Project)
+    private int maxDeliveryTime;
+
     @Override
     public boolean postNotification(String trigger, Map executionData, Map config) {
         if (StringUtils.isBlank(baseUrl)) {
             logger.error("baseUrl is required");
             return false;
         }
+        if (StringUtils.split(baseUrl, ", \t\r\n").length > 1) {
+            // Unlike a build, an event is not routed between controllers
+            logger.error(String.format("baseUrl must be a single URL. baseUrl=%s", baseUrl));
+            return false;
+        }
 
         JenkinsClient jenkinsClient;
         try {
@@ -54,10 +67,9 @@ public class JenkinsWebhookNotificationPlugin implements NotificationPlugin {
 
         Document document = createNotificationDocument(executionData);
 
-        try {
-            jenkinsClient.deliver(document);
-        } catch (IOException | JenkinsClientException e) {
-            logger.error(String.format("Failed to deliver an event. trigger=%s", trigger), e);
+        Path spoolPath = StringUtils.isBlank(spoolDirectory) ? null : Paths.get(spoolDirectory.trim());
+        if (!WebhookDeliveryQueue.getInstance().submit(baseUrl, jenkinsClient, document, spoolPath, TimeUnit.MINUTES.toMillis(maxDeliveryTime))) {
+            logger.error(String.format("Failed to queue an event. trigger=%s", trigger));
             return false;
         }
 
@@ -0,0 +1,22 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Job {
+
+    private final List<Build> builds;
+
+    @JsonCreator
+    public Job(@JsonProperty("builds") List<Build> builds) {
+        this.builds = builds;
+    }
+
+    public List<Build> getBuilds() {
+        return builds;
+    }
+}
@@ -0,0 +1,76 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public final class JsonTree {
+
+    private static final ConcurrentMap<Class<?>, String> TREES = new ConcurrentHashMap<>();
+
+    private JsonTree() {
+    }
+
+    public static String of(Class<?> type) {
+        String tree = TREES.get(type);
+        if (tree == null) {
+            // Nested types are built recursively, which computeIfAbsent does not allow
+            tree = build(type);
+            TREES.putIfAbsent(type, tree);
+        }
+        return tree;
+    }
+
+    private static String build(Class<?> type) {
+        Constructor<?> creator = findCreator(type);
+        if (creator == null) {
+            throw new IllegalArgumentException(String.format("No @JsonCreator constructor. type=%s", type.getName()));
+        }
+        StringJoiner tree = new StringJoiner(",");
+        Type[] parameterTypes = creator.getGenericParameterTypes();
+        Annotation[][] parameterAnnotations = creator.getParameterAnnotations();
+        for (int i = 0; i < parameterTypes.length; i++) {
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (annotation instanceof JsonProperty) {
+                    String name = ((JsonProperty) annotation).value();
+                    Class<?> elementType = getElementType(parameterTypes[i]);
+                    if (findCreator(elementType) != null) {
+                        tree.add(String.format("%s[%s]", name, of(elementType)));
+                    } else {
+                        tree.add(name);
+                    }
+                }
+            }
+        }
+        return tree.toString();
+    }
+
+    private static Class<?> getElementType(Type type) {
+        if (type instanceof ParameterizedType) {
+            ParameterizedType parameterizedType = (ParameterizedType) type;
+            // Jenkins applies the same tree to each element of an array
+            if (parameterizedType.getRawType() == List.class && parameterizedType.getActualTypeArguments()[0] instanceof Class) {
+                return (Class<?>) parameterizedType.getActualTypeArguments()[0];
+            }
+            return (Class<?>) parameterizedType.getRawType();
+        }
+        return (Class<?>) type;
+    }
+
+    private static Constructor<?> findCreator(Class<?> type) {
+        for (Constructor<?> constructor : type.getDeclaredConstructors()) {
+            if (constructor.isAnnotationPresent(JsonCreator.class)) {
+                return constructor;
+            }
+        }
+        return null;
+    }
+}
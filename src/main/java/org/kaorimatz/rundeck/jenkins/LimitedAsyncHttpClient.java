@@ -0,0 +1,43 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+
+import java.util.concurrent.CompletableFuture;
+
+public class LimitedAsyncHttpClient implements AsyncHttpClient {
+
+    private final AsyncHttpClient httpClient;
+
+    private final JenkinsRequestLimiter limiter;
+
+    private final JenkinsMetrics metrics;
+
+    public LimitedAsyncHttpClient(AsyncHttpClient httpClient, JenkinsRequestLimiter limiter, JenkinsMetrics metrics) {
+        this.httpClient = httpClient;
+        this.limiter = limiter;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+        JenkinsEndpoint endpoint = JenkinsEndpoint.of(request.getURI().getPath());
+        return limiter.acquireAsync(LimitedHttpClient.isHighPriority(endpoint), LimitedHttpClient.getTimeoutMillis(request)).thenCompose(waitMillis -> {
+            metrics.getEndpointMetrics(endpoint).recordLimiterWait(waitMillis);
+            CompletableFuture<HttpResponse> future;
+            try {
+                future = httpClient.execute(request);
+            } catch (RuntimeException e) {
+                limiter.release();
+                throw e;
+            }
+            future.whenComplete((response, throwable) -> {
+                if (throwable != null) {
+                    limiter.release();
+                }
+            });
+            // Released like a blocking response, once the body has been read or the response closed
+            return future.thenApply(response -> new LimitedHttpClient.LimitedHttpResponse(response, limiter::release));
+        });
+    }
+}
@@ -0,0 +1,160 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.message.BasicHttpResponse;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class LimitedHttpClient implements HttpClient {
+
+    private final HttpClient httpClient;
+
+    private final JenkinsRequestLimiter limiter;
+
+    private final JenkinsMetrics metrics;
+
+    public LimitedHttpClient(HttpClient httpClient, JenkinsRequestLimiter limiter, JenkinsMetrics metrics) {
+        this.httpClient = httpClient;
+        this.limiter = limiter;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        JenkinsEndpoint endpoint = JenkinsEndpoint.of(request.getURI().getPath());
+        long waitMillis = limiter.acquire(isHighPriority(endpoint), getTimeoutMillis(request));
+        metrics.getEndpointMetrics(endpoint).recordLimiterWait(waitMillis);
+        CloseableHttpResponse response;
+        try {
+            response = httpClient.execute(request);
+        } catch (IOException | RuntimeException e) {
+            limiter.release();
+            throw e;
+        }
+        return new LimitedHttpResponse(response, limiter::release);
+    }
+
+    static long getTimeoutMillis(HttpUriRequest request) {
+        RequestConfig requestConfig = request instanceof HttpRequestBase ? ((HttpRequestBase) request).getConfig() : null;
+        if (requestConfig == null) {
+            requestConfig = JenkinsHttpClientRegistry.DEFAULT_REQUEST_CONFIG;
+        }
+        // Waiting for the limiter is bounded like waiting for a pooled connection
+        return Math.max(0, requestConfig.getConnectionRequestTimeout());
+    }
+
+    static boolean isHighPriority(JenkinsEndpoint endpoint) {
+        switch (endpoint) {
+            case TRIGGER:
+            case STOP:
+            case CANCEL:
+            case CRUMB:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static final class LimitedHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        private final HttpResponse response;
+
+        private final Runnable release;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        LimitedHttpResponse(HttpResponse response, Runnable release) {
+            super(response.getStatusLine());
+            this.response = response;
+            this.release = release;
+            setHeaders(response.getAllHeaders());
+            HttpEntity entity = response.getEntity();
+            if (entity != null) {
+                setEntity(new LimitedHttpEntity(entity));
+            } else {
+                release();
+            }
+        }
+
+        private void release() {
+            // Released once the body has been read or the response closed, so that the limit also bounds the
+            // transfers in progress. Whichever happens first releases the permit
+            if (released.compareAndSet(false, true)) {
+                release.run();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (response instanceof Closeable) {
+                    ((Closeable) response).close();
+                }
+            } finally {
+                release();
+            }
+        }
+
+        private final class LimitedHttpEntity extends HttpEntityWrapper {
+
+            private LimitedHttpEntity(HttpEntity entity) {
+                super(entity);
+            }
+
+            @Override
+            public InputStream getContent() throws IOException {
+                return new FilterInputStream(super.getContent()) {
+
+                    @Override
+                    public int read() throws IOException {
+                        int b = super.read();
+                        if (b == -1) {
+                            release();
+                        }
+                        return b;
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        int n = super.read(b, off, len);
+                        if (n == -1) {
+                            release();
+                        }
+                        return n;
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            release();
+                        }
+                    }
+                };
+            }
+
+            @Override
+            public void writeTo(OutputStream outputStream) throws IOException {
+                try (InputStream inputStream = getContent()) {
+                    byte[] buffer = new byte[8192];
+                    int n;
+                    while ((n = inputStream.read(buffer)) != -1) {
+                        outputStream.write(buffer, 0, n);
+                    }
+                }
+            }
+        }
+    }
+}
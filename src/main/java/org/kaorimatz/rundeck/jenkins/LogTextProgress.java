@@ -0,0 +1,21 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public class LogTextProgress {
+
+    private final long position;
+
+    private final boolean complete;
+
+    public LogTextProgress(long position, boolean complete) {
+        this.position = position;
+        this.complete = complete;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    public boolean isComplete() {
+        return complete;
+    }
+}
@@ -0,0 +1,10 @@
+package org.kaorimatz.rundeck.jenkins;
+
+public interface PollingStrategy {
+
+    long getQueuedDelay(int attempt);
+
+    long getRunningDelay(int attempt, Build build);
+
+    long getLoggingDelay(int attempt);
+}
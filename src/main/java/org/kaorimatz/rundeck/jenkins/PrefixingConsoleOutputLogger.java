@@ -0,0 +1,61 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import java.io.IOException;
+
+public class PrefixingConsoleOutputLogger implements ConsoleOutputLogger {
+
+    private static final int MAX_LINE_LENGTH = 65536;
+
+    private final ConsoleOutputLogger consoleOutputLogger;
+
+    private final String prefix;
+
+    private final StringBuilder line = new StringBuilder();
+
+    public PrefixingConsoleOutputLogger(ConsoleOutputLogger consoleOutputLogger, String prefix) {
+        this.consoleOutputLogger = consoleOutputLogger;
+        this.prefix = prefix;
+    }
+
+    @Override
+    public void log(String consoleOutput) throws IOException {
+        int offset = 0;
+        for (int i = 0; i < consoleOutput.length(); i++) {
+            if (consoleOutput.charAt(i) == '\n') {
+                appendPrefix();
+                line.append(consoleOutput, offset, i + 1);
+                consoleOutputLogger.log(line.toString());
+                line.setLength(0);
+                offset = i + 1;
+            }
+        }
+        if (offset < consoleOutput.length()) {
+            appendPrefix();
+            line.append(consoleOutput, offset, consoleOutput.length());
+        }
+        if (line.length() >= MAX_LINE_LENGTH) {
+            consoleOutputLogger.log(line.append('\n').toString());
+            line.setLength(0);
+        }
+    }
+
+    private void appendPrefix() {
+        if (line.length() == 0) {
+            line.append(prefix);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        consoleOutputLogger.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (line.length() > 0) {
+            consoleOutputLogger.log(line.append('\n').toString());
+            line.setLength(0);
+        }
+        consoleOutputLogger.flush();
+    }
+}
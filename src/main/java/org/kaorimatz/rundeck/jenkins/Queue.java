@@ -0,0 +1,22 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class Queue {
+
+    private final List<QueueItem> items;
+
+    @JsonCreator
+    public Queue(@JsonProperty("items") List<QueueItem> items) {
+        this.items = items;
+    }
+
+    public List<QueueItem> getItems() {
+        return items;
+    }
+}
@@ -11,10 +11,13 @@ public class QueueItem {
 
     private final boolean cancelled;
 
+    private final long id;
+
     @JsonCreator
-    public QueueItem(@JsonProperty("executable") Executable executable, @JsonProperty("cancelled") boolean cancelled) {
+    public QueueItem(@JsonProperty("executable") Executable executable, @JsonProperty("cancelled") boolean cancelled, @JsonProperty("id") long id) {
         this.executable = executable;
         this.cancelled = cancelled;
+        this.id = id;
     }
 
     public Executable getExecutable() {
@@ -24,4 +27,8 @@ public class QueueItem {
     public boolean isCancelled() {
         return cancelled;
     }
+
+    public long getId() {
+        return id;
+    }
 }
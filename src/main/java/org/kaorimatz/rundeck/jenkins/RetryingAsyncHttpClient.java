@@ -0,0 +1,98 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class RetryingAsyncHttpClient implements AsyncHttpClient {
+
+    private final AsyncHttpClient httpClient;
+
+    private final JenkinsRetryPolicy retryPolicy;
+
+    private final RequestConfig requestConfig;
+
+    private final JenkinsMetrics metrics;
+
+    private final ScheduledExecutorService scheduler;
+
+    public RetryingAsyncHttpClient(AsyncHttpClient httpClient, JenkinsRetryPolicy retryPolicy, RequestConfig requestConfig, JenkinsMetrics metrics,
+                                   ScheduledExecutorService scheduler) {
+        this.httpClient = httpClient;
+        this.retryPolicy = retryPolicy;
+        this.requestConfig = requestConfig;
+        this.metrics = metrics;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> execute(HttpUriRequest request) {
+        if (requestConfig != null && request instanceof HttpRequestBase && ((HttpRequestBase) request).getConfig() == null) {
+            ((HttpRequestBase) request).setConfig(requestConfig);
+        }
+        CompletableFuture<HttpResponse> future = new CompletableFuture<>();
+        execute(request, 0, future);
+        return future;
+    }
+
+    private void execute(HttpUriRequest request, int attempt, CompletableFuture<HttpResponse> future) {
+        JenkinsUnavailableException unavailable = retryPolicy.checkAvailable(request);
+        if (unavailable != null) {
+            future.completeExceptionally(unavailable);
+            return;
+        }
+        httpClient.execute(request).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                if (!(cause instanceof IOException) || JenkinsRetryPolicy.isInterrupted((IOException) cause)) {
+                    future.completeExceptionally(cause);
+                    return;
+                }
+                retryPolicy.recordFailure((IOException) cause);
+                if (!retryPolicy.canRetry(request, (IOException) cause, attempt)) {
+                    future.completeExceptionally(retryPolicy.unavailableIfOpen(request, (IOException) cause));
+                    return;
+                }
+                backoff(request, attempt, future);
+                return;
+            }
+
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (retryPolicy.recordStatus(statusCode) || !JenkinsRetryPolicy.isIdempotent(request)) {
+                future.complete(response);
+                return;
+            }
+            String body;
+            try {
+                body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : null;
+            } catch (IOException e) {
+                body = null;
+            }
+            IOException exception = new IOException(String.format("Unexpected response status code. statusCode=%d, body=%s", statusCode, body));
+            if (!retryPolicy.canRetry(request, exception, attempt)) {
+                future.completeExceptionally(retryPolicy.unavailableIfOpen(request, exception));
+                return;
+            }
+            backoff(request, attempt, future);
+        });
+    }
+
+    private void backoff(HttpUriRequest request, int attempt, CompletableFuture<HttpResponse> future) {
+        metrics.getEndpointMetrics(JenkinsEndpoint.of(request.getURI().getPath())).recordRetry();
+        try {
+            // No thread waits for the retry
+            scheduler.schedule(() -> execute(request, attempt + 1, future), JenkinsRetryPolicy.getBackoffMillis(attempt), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+
+public class RetryingHttpClient implements HttpClient {
+
+    private final HttpClient httpClient;
+
+    private final JenkinsRetryPolicy retryPolicy;
+
+    private final RequestConfig requestConfig;
+
+    private final JenkinsMetrics metrics;
+
+    public RetryingHttpClient(HttpClient httpClient, JenkinsRetryPolicy retryPolicy, RequestConfig requestConfig, JenkinsMetrics metrics) {
+        this.httpClient = httpClient;
+        this.retryPolicy = retryPolicy;
+        this.requestConfig = requestConfig;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) throws IOException {
+        if (requestConfig != null && request instanceof HttpRequestBase && ((HttpRequestBase) request).getConfig() == null) {
+            ((HttpRequestBase) request).setConfig(requestConfig);
+        }
+        JenkinsUnavailableException unavailable = retryPolicy.checkAvailable(request);
+        if (unavailable != null) {
+            throw unavailable;
+        }
+
+        CloseableHttpResponse response;
+        try {
+            response = send(request);
+        } catch (IOException e) {
+            if (JenkinsRetryPolicy.isInterrupted(e)) {
+                throw e;
+            }
+            retryPolicy.recordFailure(e);
+            if (!retryPolicy.canRetry(request, e, 0)) {
+                throw retryPolicy.unavailableIfOpen(request, e);
+            }
+            throw retryLater(request, e);
+        }
+
+        int statusCode = response.getStatusLine().getStatusCode();
+        if (retryPolicy.recordStatus(statusCode) || !JenkinsRetryPolicy.isIdempotent(request)) {
+            return response;
+        }
+        String body;
+        try {
+            body = response.getEntity() != null ? EntityUtils.toString(response.getEntity()) : null;
+        } finally {
+            response.close();
+        }
+        IOException exception = new IOException(String.format("Unexpected response status code. statusCode=%d, body=%s", statusCode, body));
+        if (!retryPolicy.canRetry(request, exception, 0)) {
+            throw retryPolicy.unavailableIfOpen(request, exception);
+        }
+        throw retryLater(request, exception);
+    }
+
+    private CloseableHttpResponse send(HttpUriRequest request) throws IOException {
+        try {
+            return httpClient.execute(request);
+        } catch (IOException e) {
+            if (!JenkinsRetryPolicy.isStaleConnection(request, e)) {
+                throw e;
+            }
+            // Sent again at once on a fresh connection, as the request never reached Jenkins
+            metrics.getEndpointMetrics(JenkinsEndpoint.of(request.getURI().getPath())).recordRetry();
+            return httpClient.execute(request);
+        }
+    }
+
+    private JenkinsUnavailableException retryLater(HttpUriRequest request, IOException e) {
+        metrics.getEndpointMetrics(JenkinsEndpoint.of(request.getURI().getPath())).recordRetry();
+        long backoffMillis = JenkinsRetryPolicy.getBackoffMillis(0);
+        // Waited out by the caller, which reschedules itself or waits on its own thread, rather than by sleeping here.
+        // Repeated failures open the circuit breaker, which then spaces out the retries further
+        String message = String.format("Request to Jenkins failed. Retrying in %d ms. uri=%s", backoffMillis, request.getURI());
+        return new JenkinsUnavailableException(message, backoffMillis, e);
+    }
+}
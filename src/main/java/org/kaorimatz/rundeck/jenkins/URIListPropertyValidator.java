@@ -0,0 +1,23 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.dtolabs.rundeck.core.plugins.configuration.PropertyValidator;
+import com.dtolabs.rundeck.core.plugins.configuration.ValidationException;
+import org.apache.commons.lang.StringUtils;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+public class URIListPropertyValidator implements PropertyValidator {
+
+    @Override
+    public boolean isValid(String value) throws ValidationException {
+        for (String uri : StringUtils.split(value, ", \t\r\n")) {
+            try {
+                new URI(uri);
+            } catch (URISyntaxException e) {
+                throw new ValidationException("Invalid URL: " + e.getMessage(), e);
+            }
+        }
+        return true;
+    }
+}
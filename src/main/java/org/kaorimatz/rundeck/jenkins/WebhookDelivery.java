@@ -0,0 +1,72 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.dom4j.Document;
+
+import java.nio.file.Path;
+
+public class WebhookDelivery {
+
+    private final String baseUrl;
+
+    private volatile JenkinsClient jenkinsClient;
+
+    private final Document document;
+
+    private final Path spoolFile;
+
+    private final long expiryTime;
+
+    private int attempts;
+
+    private volatile boolean anonymous;
+
+    public WebhookDelivery(String baseUrl, JenkinsClient jenkinsClient, Document document, Path spoolFile, long maxAgeMillis) {
+        this.baseUrl = baseUrl;
+        this.jenkinsClient = jenkinsClient;
+        this.document = document;
+        this.spoolFile = spoolFile;
+        this.expiryTime = System.currentTimeMillis() + maxAgeMillis;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public JenkinsClient getJenkinsClient() {
+        return jenkinsClient;
+    }
+
+    public WebhookDelivery setJenkinsClient(JenkinsClient jenkinsClient) {
+        this.jenkinsClient = jenkinsClient;
+        return this;
+    }
+
+    public Document getDocument() {
+        return document;
+    }
+
+    public Path getSpoolFile() {
+        return spoolFile;
+    }
+
+    public boolean isExpired() {
+        return System.currentTimeMillis() >= expiryTime;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public int incrementAttempts() {
+        return ++attempts;
+    }
+
+    public boolean isAnonymous() {
+        return anonymous;
+    }
+
+    public WebhookDelivery setAnonymous(boolean anonymous) {
+        this.anonymous = anonymous;
+        return this;
+    }
+}
@@ -0,0 +1,328 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpStatus;
+import org.apache.log4j.Logger;
+import org.dom4j.Document;
+import org.dom4j.DocumentException;
+import org.dom4j.DocumentHelper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class WebhookDeliveryQueue {
+
+    private static final Logger logger = Logger.getLogger(WebhookDeliveryQueue.class);
+
+    private static final Logger deadLetterLogger = Logger.getLogger(WebhookDeliveryQueue.class.getName() + ".deadLetter");
+
+    private static final int CAPACITY = 10000;
+
+    private static final int MAX_BACKOFF_SHIFT = 20;
+
+    private static final long INITIAL_RETRY_DELAY = TimeUnit.SECONDS.toMillis(1);
+
+    private static final long MAX_RETRY_DELAY = TimeUnit.MINUTES.toMillis(5);
+
+    private static final String SPOOL_FILE_SUFFIX = ".properties";
+
+    private static final String DEAD_LETTER_DIRECTORY = "dead-letter";
+
+    private static final WebhookDeliveryQueue INSTANCE = new WebhookDeliveryQueue();
+
+    private final ConcurrentMap<String, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final ExecutorService workers;
+
+    private final ScheduledExecutorService retryScheduler;
+
+    private final Set<Path> recoveredSpools = ConcurrentHashMap.newKeySet();
+
+    private final Set<Path> spoolFiles = ConcurrentHashMap.newKeySet();
+
+    // Spooled events that Jenkins refused without credentials, waiting for a configuration that has them
+    private final ConcurrentMap<String, Queue<WebhookDelivery>> unclaimedDeliveries = new ConcurrentHashMap<>();
+
+    WebhookDeliveryQueue() {
+        retryScheduler = Executors.newSingleThreadScheduledExecutor(createThreadFactory("jenkins-webhook-retry"));
+        // Each Jenkins has its own lane, drained by one thread at a time, so a slow one holds up only its own events
+        workers = Executors.newCachedThreadPool(createThreadFactory("jenkins-webhook-worker"));
+    }
+
+    public static WebhookDeliveryQueue getInstance() {
+        return INSTANCE;
+    }
+
+    private static ThreadFactory createThreadFactory(String namePrefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, String.format("%s-%d", namePrefix, threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public boolean submit(String baseUrl, JenkinsClient jenkinsClient, Document document, Path spoolDirectory, long maxAgeMillis) {
+        Path spoolFile = null;
+        if (spoolDirectory != null) {
+            recover(spoolDirectory, baseUrl, jenkinsClient, maxAgeMillis);
+            claim(baseUrl, jenkinsClient);
+            try {
+                spoolFile = spool(baseUrl, document, spoolDirectory);
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to spool an event. spoolDirectory=%s", spoolDirectory), e);
+            }
+        }
+        WebhookDelivery delivery = new WebhookDelivery(baseUrl, jenkinsClient, document, spoolFile, maxAgeMillis);
+        if (!getLane(baseUrl).offer(delivery)) {
+            logger.error(String.format("Webhook delivery queue is full. baseUrl=%s, capacity=%d", baseUrl, CAPACITY));
+            // The event is reported as rejected, so it must not be replayed after a restart either
+            removeSpoolFile(delivery);
+            return false;
+        }
+        return true;
+    }
+
+    private Lane getLane(String baseUrl) {
+        return lanes.computeIfAbsent(baseUrl, Lane::new);
+    }
+
+    private Path spool(String baseUrl, Document document, Path spoolDirectory) throws IOException {
+        Files.createDirectories(spoolDirectory);
+        String fileName = String.format("%d-%s", System.currentTimeMillis(), UUID.randomUUID());
+        Path temporaryFile = spoolDirectory.resolve(fileName + ".tmp");
+        Path spoolFile = spoolDirectory.resolve(fileName + SPOOL_FILE_SUFFIX);
+        Properties properties = new Properties();
+        properties.setProperty("baseUrl", baseUrl);
+        properties.setProperty("document", document.asXML());
+        try (OutputStream outputStream = Files.newOutputStream(temporaryFile)) {
+            properties.store(outputStream, null);
+        }
+        spoolFiles.add(spoolFile);
+        Files.move(temporaryFile, spoolFile, StandardCopyOption.ATOMIC_MOVE);
+        return spoolFile;
+    }
+
+    private void recover(Path spoolDirectory, String baseUrl, JenkinsClient jenkinsClient, long maxAgeMillis) {
+        // Every event left by an earlier run is replayed as soon as the spool directory is first used, whichever Jenkins it is for
+        if (!Files.isDirectory(spoolDirectory) || !recoveredSpools.add(spoolDirectory.toAbsolutePath())) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(spoolDirectory, "*" + SPOOL_FILE_SUFFIX)) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to list spooled events. spoolDirectory=%s", spoolDirectory), e);
+            return;
+        }
+        Collections.sort(files);
+        for (Path file : files) {
+            if (spoolFiles.contains(file)) {
+                continue;
+            }
+            Properties properties = new Properties();
+            try (InputStream inputStream = Files.newInputStream(file)) {
+                properties.load(inputStream);
+            } catch (IOException e) {
+                logger.warn(String.format("Failed to read a spooled event. file=%s", file), e);
+                continue;
+            }
+            String spooledBaseUrl = properties.getProperty("baseUrl");
+            Document document;
+            try {
+                document = DocumentHelper.parseText(properties.getProperty("document"));
+            } catch (DocumentException e) {
+                logger.warn(String.format("Failed to parse a spooled event. file=%s", file), e);
+                continue;
+            }
+            WebhookDelivery delivery;
+            if (baseUrl.equals(spooledBaseUrl)) {
+                delivery = new WebhookDelivery(spooledBaseUrl, jenkinsClient, document, file, maxAgeMillis);
+            } else {
+                // The API token is never spooled, so an event for another Jenkins is tried without credentials first
+                try {
+                    JenkinsClient anonymousClient = new DefaultJenkinsClientBuilder(spooledBaseUrl).build();
+                    delivery = new WebhookDelivery(spooledBaseUrl, anonymousClient, document, file, maxAgeMillis).setAnonymous(true);
+                } catch (URISyntaxException | RuntimeException e) {
+                    logger.warn(String.format("Invalid base URL in a spooled event. file=%s, baseUrl=%s", file, spooledBaseUrl), e);
+                    continue;
+                }
+            }
+            spoolFiles.add(file);
+            if (!getLane(spooledBaseUrl).offer(delivery)) {
+                spoolFiles.remove(file);
+                logger.error(String.format("Webhook delivery queue is full. Leaving the rest of the spooled events. spoolDirectory=%s", spoolDirectory));
+                recoveredSpools.remove(spoolDirectory.toAbsolutePath());
+                return;
+            }
+        }
+    }
+
+    private void claim(String baseUrl, JenkinsClient jenkinsClient) {
+        Queue<WebhookDelivery> deliveries = unclaimedDeliveries.remove(baseUrl);
+        if (deliveries == null) {
+            return;
+        }
+        WebhookDelivery delivery;
+        while ((delivery = deliveries.poll()) != null) {
+            delivery.setJenkinsClient(jenkinsClient).setAnonymous(false);
+            if (!getLane(baseUrl).offer(delivery)) {
+                deadLetter(delivery, null);
+            }
+        }
+    }
+
+    private void deliver(WebhookDelivery delivery) {
+        try {
+            delivery.getJenkinsClient().deliver(delivery.getDocument());
+        } catch (JenkinsUnavailableException e) {
+            // Jenkins is known to be down, so the event waits for it without using up an attempt
+            if (delivery.isExpired()) {
+                deadLetter(delivery, e);
+                return;
+            }
+            long delay = Math.max(INITIAL_RETRY_DELAY, e.getRetryAfterMillis());
+            logger.debug(String.format("Jenkins is unavailable. Retrying in %d ms. baseUrl=%s", delay, delivery.getBaseUrl()));
+            schedule(delivery, delay);
+            return;
+        } catch (IOException | JenkinsClientException | RuntimeException e) {
+            if (delivery.isAnonymous() && isAuthenticationFailure(e)) {
+                // Kept spooled until a configuration for the Jenkins submits an event with its credentials
+                logger.info(String.format("Jenkins refused a spooled event without credentials. Holding it for the configured credentials. baseUrl=%s",
+                        delivery.getBaseUrl()));
+                unclaimedDeliveries.computeIfAbsent(delivery.getBaseUrl(), baseUrl -> new ConcurrentLinkedQueue<>()).add(delivery);
+                return;
+            }
+            int attempts = delivery.incrementAttempts();
+            // Retried for a time rather than a number of attempts, so that an event outlives a Jenkins restart
+            if (delivery.isExpired()) {
+                deadLetter(delivery, e);
+                return;
+            }
+            long delay = Math.min(MAX_RETRY_DELAY, INITIAL_RETRY_DELAY << Math.min(attempts - 1, MAX_BACKOFF_SHIFT));
+            logger.warn(String.format("Failed to deliver an event. Retrying in %d ms. baseUrl=%s, attempts=%d", delay, delivery.getBaseUrl(), attempts), e);
+            schedule(delivery, delay);
+            return;
+        }
+        removeSpoolFile(delivery);
+    }
+
+    private static boolean isAuthenticationFailure(Exception e) {
+        if (!(e instanceof JenkinsClientException)) {
+            return false;
+        }
+        int statusCode = ((JenkinsClientException) e).getStatusCode();
+        return statusCode == HttpStatus.SC_UNAUTHORIZED || statusCode == HttpStatus.SC_FORBIDDEN;
+    }
+
+    private void schedule(WebhookDelivery delivery, long delay) {
+        retryScheduler.schedule(() -> retry(delivery), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void retry(WebhookDelivery delivery) {
+        if (!getLane(delivery.getBaseUrl()).offer(delivery)) {
+            deadLetter(delivery, null);
+        }
+    }
+
+    private void deadLetter(WebhookDelivery delivery, Exception cause) {
+        deadLetterLogger.error(String.format("Giving up delivering an event. baseUrl=%s, attempts=%d, document=%s",
+                delivery.getBaseUrl(), delivery.getAttempts(), delivery.getDocument().asXML()), cause);
+        Path spoolFile = delivery.getSpoolFile();
+        if (spoolFile == null) {
+            return;
+        }
+        try {
+            Path deadLetterDirectory = Files.createDirectories(spoolFile.resolveSibling(DEAD_LETTER_DIRECTORY));
+            Files.move(spoolFile, deadLetterDirectory.resolve(spoolFile.getFileName()), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to move a spooled event to the dead letter directory. file=%s", spoolFile), e);
+        }
+        spoolFiles.remove(spoolFile);
+    }
+
+    private void removeSpoolFile(WebhookDelivery delivery) {
+        Path spoolFile = delivery.getSpoolFile();
+        if (spoolFile == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(spoolFile);
+        } catch (IOException e) {
+            logger.warn(String.format("Failed to remove a spooled event. file=%s", spoolFile), e);
+        }
+        spoolFiles.remove(spoolFile);
+    }
+
+    private final class Lane {
+
+        private final String baseUrl;
+
+        private final BlockingQueue<WebhookDelivery> deliveries = new LinkedBlockingQueue<>(CAPACITY);
+
+        private final AtomicBoolean draining = new AtomicBoolean();
+
+        private Lane(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        private boolean offer(WebhookDelivery delivery) {
+            if (!deliveries.offer(delivery)) {
+                return false;
+            }
+            startDraining();
+            return true;
+        }
+
+        private void startDraining() {
+            if (!draining.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                workers.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                logger.error(String.format("Failed to start delivering events. baseUrl=%s", baseUrl), e);
+            }
+        }
+
+        private void drain() {
+            WebhookDelivery delivery;
+            while ((delivery = deliveries.poll()) != null) {
+                deliver(delivery);
+            }
+            draining.set(false);
+            // An event may have been offered after the last poll but before the lane was released
+            if (!deliveries.isEmpty()) {
+                startDraining();
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class BatchingConsoleOutputLoggerTest {
+
+    private final RecordingPluginLogger pluginLogger = new RecordingPluginLogger();
+
+    @Test
+    public void joinsLinesSplitAcrossChunks() throws Exception {
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger)) {
+            logger.log("first li");
+            logger.log("ne\r\nsecond ");
+            logger.log("line\nlast");
+        }
+        assertEquals(Arrays.asList("first line", "second line", "last"), pluginLogger.getLines());
+    }
+
+    @Test
+    public void logsLinesInBatches() throws Exception {
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger)) {
+            for (int i = 0; i < 10; i++) {
+                logger.log(String.format("line %d\n", i));
+            }
+        }
+        assertEquals(Collections.singletonList("line 0\nline 1\nline 2\nline 3\nline 4\nline 5\nline 6\nline 7\nline 8\nline 9"), pluginLogger.getMessages());
+    }
+
+    @Test
+    public void keepsHeadAndTail() throws Exception {
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger, 0, 0, 2, 2)) {
+            for (int i = 0; i < 10; i++) {
+                logger.log(String.format("line %d\n", i));
+            }
+        }
+        assertEquals(Arrays.asList("line 0", "line 1", "... 6 lines omitted ...", "line 8", "line 9"), pluginLogger.getLines());
+    }
+
+    @Test
+    public void truncatesAtMaxBytes() throws Exception {
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger, 14, 0, 0, 0)) {
+            for (int i = 0; i < 10; i++) {
+                logger.log(String.format("line %d\n", i));
+            }
+        }
+        assertEquals(Arrays.asList("line 0", "line 1", "... console output truncated at 14 bytes ..."), pluginLogger.getLines());
+    }
+
+    @Test
+    public void suppressesLinesOverTheRateLimit() throws Exception {
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger, 0, 3, 0, 0)) {
+            for (int i = 0; i < 10; i++) {
+                logger.log(String.format("line %d\n", i));
+            }
+        }
+        assertEquals(Arrays.asList("line 0", "line 1", "line 2", "... 7 lines suppressed by the rate limit of 3 lines per second ..."), pluginLogger.getLines());
+    }
+}
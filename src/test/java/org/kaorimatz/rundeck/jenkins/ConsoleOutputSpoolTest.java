@@ -0,0 +1,55 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ConsoleOutputSpoolTest {
+
+    private static List<String> drain(ConsoleOutputSpool spool) throws Exception {
+        List<String> consoleOutputs = new ArrayList<>();
+        String consoleOutput;
+        while ((consoleOutput = spool.next()) != null) {
+            consoleOutputs.add(consoleOutput);
+        }
+        return consoleOutputs;
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    @Test
+    public void keepsTheOrderAcrossMemoryAndFile() throws Exception {
+        String large = repeat('x', 40 * 1024);
+        try (ConsoleOutputSpool spool = new ConsoleOutputSpool()) {
+            spool.log("first\n");
+            spool.log(large);
+            spool.log("last\n");
+            assertEquals(Arrays.asList("first\n", large, "last\n"), drain(spool));
+        }
+    }
+
+    @Test
+    public void isReusedOnceDrained() throws Exception {
+        String large = repeat('y', 40 * 1024);
+        try (ConsoleOutputSpool spool = new ConsoleOutputSpool()) {
+            spool.log("first\n");
+            spool.log(large);
+            assertEquals(Arrays.asList("first\n", large), drain(spool));
+
+            spool.log(large);
+            spool.log("second\n");
+            assertEquals(Arrays.asList(large, "second\n"), drain(spool));
+
+            spool.log("third\n");
+            assertEquals(Arrays.asList("third\n"), drain(spool));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class CrumbHttpClientTest {
+
+    private StubJenkinsServer server;
+
+    private JenkinsMetrics metrics;
+
+    private JenkinsClient jenkinsClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubJenkinsServer(4).setCrumbRequired(true).setQueueDelayMillis(60000);
+        metrics = new JenkinsMetrics();
+        jenkinsClient = new DefaultJenkinsClientBuilder(server.getBaseUrl()).setMetrics(metrics).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void reusesTheCrumb() throws Exception {
+        jenkinsClient.build("crumb/reuse", Collections.emptyMap(), null);
+        jenkinsClient.build("crumb/reuse", Collections.emptyMap(), null);
+
+        assertEquals(1, server.getRequestCount(JenkinsEndpoint.CRUMB));
+        assertEquals(2, server.getRequestCount(JenkinsEndpoint.TRIGGER));
+        assertEquals(1, metrics.getEndpointMetrics(JenkinsEndpoint.CRUMB).getRequests());
+    }
+
+    @Test
+    public void refreshesTheCrumbOnceItIsRejected() throws Exception {
+        jenkinsClient.build("crumb/refresh", Collections.emptyMap(), null);
+        server.invalidateSessions();
+        jenkinsClient.build("crumb/refresh", Collections.emptyMap(), null);
+
+        assertEquals(2, server.getRequestCount(JenkinsEndpoint.CRUMB));
+        assertEquals(3, server.getRequestCount(JenkinsEndpoint.TRIGGER));
+        assertEquals(1, server.getErrorCount(JenkinsEndpoint.TRIGGER));
+    }
+
+    @Test
+    public void refreshesTheCrumbOnAnyForbiddenResponse() throws Exception {
+        server.setCrumbRejection("<html><body>Forbidden</body></html>");
+        jenkinsClient.build("crumb/forbidden", Collections.emptyMap(), null);
+        server.invalidateSessions();
+        jenkinsClient.build("crumb/forbidden", Collections.emptyMap(), null);
+
+        assertEquals(2, server.getRequestCount(JenkinsEndpoint.CRUMB));
+        assertEquals(3, server.getRequestCount(JenkinsEndpoint.TRIGGER));
+        assertEquals(2, metrics.getEndpointMetrics(JenkinsEndpoint.CRUMB).getRequests());
+    }
+}
@@ -0,0 +1,32 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class DefaultConsoleOutputLoggerTest {
+
+    private final RecordingPluginLogger pluginLogger = new RecordingPluginLogger();
+
+    @Test
+    public void logsEachLineOnItsOwn() throws Exception {
+        try (ConsoleOutputLogger logger = new DefaultConsoleOutputLogger(pluginLogger)) {
+            logger.log("first line\nsecond line\r\n\nfourth line\n");
+        }
+        assertEquals(Arrays.asList("first line", "second line", "", "fourth line"), pluginLogger.getMessages());
+    }
+
+    @Test
+    public void joinsLinesSplitAcrossChunks() throws Exception {
+        try (ConsoleOutputLogger logger = new DefaultConsoleOutputLogger(pluginLogger)) {
+            logger.log("first li");
+            logger.log("ne\r");
+            logger.log("\nsecond ");
+            logger.log("line\nlast");
+            assertEquals(Arrays.asList("first line", "second line"), pluginLogger.getMessages());
+        }
+        assertEquals(Arrays.asList("first line", "second line", "last"), pluginLogger.getMessages());
+    }
+}
@@ -0,0 +1,113 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JenkinsArtifactDownloaderTest {
+
+    private static final int ARTIFACT_BYTES = 1 << 20;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubJenkinsServer server;
+
+    private JenkinsClient jenkinsClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubJenkinsServer(4).setQueueDelayMillis(0).setBuildDurationMillis(100).setArtifactBytes(ARTIFACT_BYTES);
+        jenkinsClient = new DefaultJenkinsClientBuilder(server.getBaseUrl()).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void downloadsAndVerifiesArtifacts() throws Exception {
+        Build build = runBuild("artifact/download");
+        Path directory = temporaryFolder.getRoot().toPath();
+
+        List<Path> paths = new JenkinsArtifactDownloader(jenkinsClient).download("artifact/download", build.getNumber(), directory);
+
+        assertEquals(2, paths.size());
+        assertArrayEquals(getArtifact(), Files.readAllBytes(directory.resolve("target/app.jar")));
+    }
+
+    @Test
+    public void resumesInterruptedTransfers() throws Exception {
+        Build build = runBuild("artifact/resume");
+        Path directory = temporaryFolder.getRoot().toPath();
+        server.setArtifactTransferFailures(2);
+
+        new JenkinsArtifactDownloader(jenkinsClient).setIncludes("target/app.jar").download("artifact/resume", build.getNumber(), directory);
+
+        assertArrayEquals(getArtifact(), Files.readAllBytes(directory.resolve("target/app.jar")));
+        assertFalse(Files.exists(directory.resolve(String.format("target/app.jar.artifact_resume-%d.part", build.getNumber()))));
+        assertEquals(2, server.getErrorCount(JenkinsEndpoint.ARTIFACT));
+    }
+
+    @Test
+    public void resumesPartFilesLeftByEarlierSteps() throws Exception {
+        Build build = runBuild("artifact/left");
+        Path directory = temporaryFolder.getRoot().toPath();
+        Files.createDirectories(directory.resolve("target"));
+        Path part = directory.resolve(String.format("target/app.jar.artifact_left-%d.part", build.getNumber()));
+        Files.write(part, Arrays.copyOf(getArtifact(), ARTIFACT_BYTES / 2));
+        Path stalePart = directory.resolve(String.format("target/app.jar.artifact_left-%d.part", build.getNumber() + 1));
+        Files.write(stalePart, new byte[1]);
+        JenkinsMetrics metrics = new JenkinsMetrics();
+
+        new JenkinsArtifactDownloader(new DefaultJenkinsClientBuilder(server.getBaseUrl()).setMetrics(metrics).build())
+                .setIncludes("target/app.jar").download("artifact/left", build.getNumber(), directory);
+
+        assertArrayEquals(getArtifact(), Files.readAllBytes(directory.resolve("target/app.jar")));
+        // Only the second half of the artifact and its checksum file are transferred
+        assertTrue(metrics.getEndpointMetrics(JenkinsEndpoint.ARTIFACT).getBytesReceived() < ARTIFACT_BYTES / 2 + 1024);
+        assertFalse(Files.exists(part));
+        assertFalse(Files.exists(stalePart));
+    }
+
+    @Test
+    public void skipsArtifactsAlreadyDownloaded() throws Exception {
+        Build build = runBuild("artifact/skip");
+        Path directory = temporaryFolder.getRoot().toPath();
+        new JenkinsArtifactDownloader(jenkinsClient).download("artifact/skip", build.getNumber(), directory);
+        long requests = server.getRequestCount(JenkinsEndpoint.ARTIFACT);
+
+        new JenkinsArtifactDownloader(jenkinsClient).download("artifact/skip", build.getNumber(), directory);
+
+        // Only the checksum file is downloaded again
+        assertEquals(requests + 1, server.getRequestCount(JenkinsEndpoint.ARTIFACT));
+    }
+
+    private Build runBuild(String jobName) throws Exception {
+        return new JenkinsBuildExecutor(new JenkinsControllerRouter(jenkinsClient), new BatchingConsoleOutputLogger(new RecordingPluginLogger()))
+                .execute(jobName, Collections.emptyMap(), new JenkinsBuildOptions().setPollingStrategy(new FixedPollingStrategy(100)))
+                .getBuild();
+    }
+
+    private static byte[] getArtifact() {
+        byte[] bytes = new byte[ARTIFACT_BYTES];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,79 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+public class JenkinsBuildCoalescerTest {
+
+    private static final int STEPS = 4;
+
+    private final ExecutorService steps = Executors.newFixedThreadPool(STEPS);
+
+    private StubJenkinsServer server;
+
+    private JenkinsControllerRouter router;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubJenkinsServer(4).setQueueDelayMillis(100).setBuildDurationMillis(500).setLogLinesPerSecond(20);
+        router = new DefaultJenkinsClientBuilder(server.getBaseUrl()).buildRouter();
+    }
+
+    @After
+    public void tearDown() {
+        steps.shutdownNow();
+        server.close();
+    }
+
+    @Test
+    public void triggersIdenticalBuildsOnce() throws Exception {
+        List<RecordingPluginLogger> pluginLoggers = new ArrayList<>();
+        List<Future<Build>> builds = new ArrayList<>();
+        for (int i = 0; i < STEPS; i++) {
+            RecordingPluginLogger pluginLogger = new RecordingPluginLogger();
+            pluginLoggers.add(pluginLogger);
+            builds.add(steps.submit(() -> execute("coalescer/same", Collections.singletonMap("BRANCH", "main"), pluginLogger)));
+        }
+
+        for (Future<Build> build : builds) {
+            assertEquals(Result.SUCCESS, build.get().getResult());
+            assertEquals(1, build.get().getNumber());
+        }
+        assertEquals(1, server.getRequestCount(JenkinsEndpoint.TRIGGER));
+        // Every step logs the console output of the shared build
+        for (RecordingPluginLogger pluginLogger : pluginLoggers) {
+            assertEquals(JenkinsBuildExecutorTest.getStubLines(0, 10), pluginLogger.getLines());
+        }
+    }
+
+    @Test
+    public void triggersBuildsWithDifferentParametersSeparately() throws Exception {
+        Future<Build> main = steps.submit(() -> execute("coalescer/different", Collections.singletonMap("BRANCH", "main"), new RecordingPluginLogger()));
+        Future<Build> feature = steps.submit(() -> execute("coalescer/different", Collections.singletonMap("BRANCH", "feature"), new RecordingPluginLogger()));
+
+        assertEquals(Result.SUCCESS, main.get().getResult());
+        assertEquals(Result.SUCCESS, feature.get().getResult());
+        assertEquals(2, server.getRequestCount(JenkinsEndpoint.TRIGGER));
+    }
+
+    private Build execute(String jobName, Map<String, String> parameters, RecordingPluginLogger pluginLogger) throws Exception {
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger)) {
+            JenkinsBuildOptions options = new JenkinsBuildOptions()
+                    .setPollingStrategy(new FixedPollingStrategy(100))
+                    .setLogConsoleOutput(true)
+                    .setCoalesceWindow(5000);
+            return new JenkinsBuildExecutor(router, logger).execute(jobName, parameters, options).getBuild();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JenkinsBuildExecutorTest {
+
+    private final RecordingPluginLogger pluginLogger = new RecordingPluginLogger();
+
+    private StubJenkinsServer server;
+
+    private JenkinsControllerRouter router;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubJenkinsServer(4).setQueueDelayMillis(100).setBuildDurationMillis(500).setLogLinesPerSecond(20);
+        router = new DefaultJenkinsClientBuilder(server.getBaseUrl()).buildRouter();
+    }
+
+    private static JenkinsBuildOptions options() {
+        return new JenkinsBuildOptions().setPollingStrategy(new FixedPollingStrategy(100));
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void waitsForTheBuildAndLogsItsConsoleOutput() throws Exception {
+        Build build;
+        try (ConsoleOutputLogger logger = new DefaultConsoleOutputLogger(pluginLogger)) {
+            build = new JenkinsBuildExecutor(router, logger)
+                    .execute("executor/follow", Collections.emptyMap(), options().setLogConsoleOutput(true).setFollowConsoleOutput(true)).getBuild();
+        }
+
+        assertEquals(Result.SUCCESS, build.getResult());
+        assertEquals(1, build.getNumber());
+        assertEquals(getStubLines(0, 10), pluginLogger.getMessages());
+        assertEquals(1, server.getRequestCount(JenkinsEndpoint.TRIGGER));
+    }
+
+    @Test
+    public void logsTheConsoleOutputOnceTheBuildHasFinished() throws Exception {
+        Build build;
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger)) {
+            build = new JenkinsBuildExecutor(router, logger)
+                    .execute("executor/after", Collections.emptyMap(), options().setLogConsoleOutput(true)).getBuild();
+        }
+
+        assertEquals(Result.SUCCESS, build.getResult());
+        assertEquals(getStubLines(0, 10), pluginLogger.getLines());
+    }
+
+    @Test
+    public void logsOnlyTheTailOfTheConsoleOutput() throws Exception {
+        int lineLength = getStubLines(0, 1).get(0).length() + 1;
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger)) {
+            JenkinsBuildOptions options = options()
+                    .setLogConsoleOutput(true)
+                    .setConsoleOutputTail(new ConsoleOutputTail(lineLength, 2 * lineLength));
+            new JenkinsBuildExecutor(router, logger).execute("executor/tail", Collections.emptyMap(), options);
+        }
+
+        List<String> expected = new ArrayList<>(getStubLines(0, 1));
+        expected.add(String.format("... %s of console output omitted ...", JenkinsMetrics.formatBytes(7 * lineLength)));
+        expected.addAll(getStubLines(8, 10));
+        assertEquals(expected, pluginLogger.getLines());
+    }
+
+    @Test
+    public void streamsTheConsoleOutputAsynchronously() throws Exception {
+        Build build = new JenkinsBuildExecutor(router, new BatchingConsoleOutputLogger(new RecordingPluginLogger()))
+                .execute("executor/async", Collections.emptyMap(), options()).getBuild();
+
+        LogTextProgress logText;
+        try (ConsoleOutputLogger logger = new DefaultConsoleOutputLogger(pluginLogger)) {
+            logText = new DefaultJenkinsClientBuilder(server.getBaseUrl()).build().getLogTextAsync("executor/async", build.getNumber(), 0, logger).get();
+        }
+
+        assertTrue(logText.isComplete());
+        assertEquals(getStubLines(0, 10), pluginLogger.getMessages());
+    }
+
+    @Test
+    public void abortsTheBuildOnTimeout() throws Exception {
+        server.setBuildDurationMillis(60000);
+        try (ConsoleOutputLogger logger = new BatchingConsoleOutputLogger(pluginLogger)) {
+            JenkinsBuildOptions options = options()
+                    .setTimeout(3000);
+            new JenkinsBuildExecutor(router, logger).execute("executor/timeout", Collections.emptyMap(), options);
+            fail();
+        } catch (JenkinsTimeoutException e) {
+            assertEquals(1, server.getRequestCount(JenkinsEndpoint.STOP));
+        }
+    }
+
+    @Test
+    public void doesNotWaitUnlessAsked() throws Exception {
+        JenkinsBuildResult result = new JenkinsBuildExecutor(router, new BatchingConsoleOutputLogger(pluginLogger))
+                .execute("executor/nowait", Collections.emptyMap(), options().setWaitForBuildToFinish(false).setLogConsoleOutput(true));
+
+        assertEquals(null, result.getBuild());
+        // Returned even without waiting, so that the caller can still reach the build
+        assertEquals(URI.create(server.getBaseUrl()), result.getController().getBaseUri());
+        assertEquals(1, server.getRequestCount(JenkinsEndpoint.TRIGGER));
+        assertEquals(0, server.getRequestCount(JenkinsEndpoint.QUEUE_POLL));
+    }
+
+    static List<String> getStubLines(int from, int to) {
+        List<String> lines = new ArrayList<>();
+        for (int line = from; line < to; line++) {
+            lines.add(String.format("[stub] line %010d", line));
+        }
+        return lines;
+    }
+}
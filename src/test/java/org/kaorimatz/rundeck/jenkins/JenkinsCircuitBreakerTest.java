@@ -0,0 +1,44 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JenkinsCircuitBreakerTest {
+
+    private final JenkinsCircuitBreaker circuitBreaker = new JenkinsCircuitBreaker(URI.create("http://jenkins.example.com"));
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        assertEquals(0, circuitBreaker.getWaitMillis());
+
+        circuitBreaker.recordFailure();
+        long waitMillis = circuitBreaker.getWaitMillis();
+        assertTrue(waitMillis > 0);
+        assertTrue(waitMillis <= TimeUnit.SECONDS.toMillis(30));
+    }
+
+    @Test
+    public void closesOnSuccess() {
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+        circuitBreaker.recordSuccess();
+        assertEquals(0, circuitBreaker.getWaitMillis());
+    }
+
+    @Test
+    public void countsOnlyConsecutiveFailures() {
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordFailure();
+        circuitBreaker.recordSuccess();
+        circuitBreaker.recordFailure();
+        assertEquals(0, circuitBreaker.getWaitMillis());
+    }
+}
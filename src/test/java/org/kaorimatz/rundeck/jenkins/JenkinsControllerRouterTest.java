@@ -0,0 +1,84 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class JenkinsControllerRouterTest {
+
+    private StubJenkinsServer busyServer;
+
+    private StubJenkinsServer idleServer;
+
+    private JenkinsControllerRouter router;
+
+    @Before
+    public void setUp() throws Exception {
+        busyServer = new StubJenkinsServer(4).setExecutors(1);
+        idleServer = new StubJenkinsServer(4).setExecutors(8);
+        router = new DefaultJenkinsClientBuilder(busyServer.getBaseUrl() + "," + idleServer.getBaseUrl()).buildRouter();
+    }
+
+    @After
+    public void tearDown() {
+        busyServer.close();
+        idleServer.close();
+    }
+
+    @Test
+    public void routesToTheControllerWithTheMostIdleExecutors() {
+        JenkinsClient controller = router.assignBuild().getController();
+
+        assertEquals(URI.create(idleServer.getBaseUrl()), controller.getBaseUri());
+        assertEquals(1, busyServer.getRequestCount(JenkinsEndpoint.COMPUTER_LIST));
+        assertEquals(1, idleServer.getRequestCount(JenkinsEndpoint.COMPUTER_LIST));
+    }
+
+    @Test
+    public void countsBuildsAssignedSinceTheLastSample() {
+        idleServer.setExecutors(2);
+
+        int busyServerBuilds = 0;
+        for (int i = 0; i < 3; i++) {
+            if (router.assignBuild().getController().getBaseUri().equals(URI.create(busyServer.getBaseUrl()))) {
+                busyServerBuilds++;
+            }
+        }
+
+        // The idle controller is picked until its assigned builds have used up its spare executors
+        assertEquals(1, busyServerBuilds);
+        assertEquals(1, idleServer.getRequestCount(JenkinsEndpoint.COMPUTER_LIST));
+    }
+
+    @Test
+    public void stopsCountingBuildsThatFailedToTrigger() throws Exception {
+        idleServer.setExecutors(2);
+
+        for (int i = 0; i < 3; i++) {
+            JenkinsControllerRouter.Assignment assignment = router.assignBuild();
+            assertEquals(URI.create(idleServer.getBaseUrl()), assignment.getController().getBaseUri());
+            idleServer.setErrorRate(1);
+            try {
+                assignment.build("router/job", Collections.emptyMap(), null, System.currentTimeMillis() + 1000);
+                fail();
+            } catch (JenkinsClientException | IOException e) {
+                // The build never reached the controller, so it no longer counts against it
+            }
+            idleServer.setErrorRate(0);
+        }
+    }
+
+    @Test
+    public void findsControllersByBaseUri() {
+        assertEquals(URI.create(busyServer.getBaseUrl()), router.getController(URI.create(busyServer.getBaseUrl())).getBaseUri());
+        assertNull(router.getController(URI.create("http://127.0.0.1:1")));
+    }
+}
@@ -0,0 +1,59 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class JenkinsFanOutExecutorTest {
+
+    private final RecordingPluginLogger pluginLogger = new RecordingPluginLogger();
+
+    private StubJenkinsServer server;
+
+    private JenkinsControllerRouter router;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubJenkinsServer(4).setQueueDelayMillis(100).setBuildDurationMillis(500).setLogLinesPerSecond(20);
+        router = new DefaultJenkinsClientBuilder(server.getBaseUrl()).buildRouter();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void logsTheConsoleOutputOfEveryBuild() throws Exception {
+        List<JenkinsBuildRequest> requests = Arrays.asList(
+                new JenkinsBuildRequest("fan-out/a", Collections.emptyMap()),
+                new JenkinsBuildRequest("fan-out/b", Collections.emptyMap()),
+                new JenkinsBuildRequest("fan-out/c", Collections.emptyMap()));
+        List<JenkinsFanOutResult> results;
+        try (ConsoleOutputLogger logger = new DefaultConsoleOutputLogger(pluginLogger)) {
+            results = new JenkinsFanOutExecutor(router, logger)
+                    .setTimeout(10000)
+                    .execute(requests, Collections.emptyMap(), null, new FixedPollingStrategy(100), 2, Result.FAILURE, false, true, true);
+        }
+
+        for (JenkinsFanOutResult result : results) {
+            assertEquals(Result.SUCCESS, result.getBuild().getResult());
+        }
+        for (JenkinsBuildRequest request : requests) {
+            List<String> lines = new ArrayList<>();
+            for (String message : pluginLogger.getMessages()) {
+                if (message.startsWith(String.format("[%s] ", request.getJobName()))) {
+                    lines.add(message.substring(request.getJobName().length() + 3));
+                }
+            }
+            assertEquals(JenkinsBuildExecutorTest.getStubLines(0, 10), lines);
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.apache.http.util.EntityUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JenkinsRequestLimiterTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    private final JenkinsRequestLimiter limiter = new JenkinsRequestLimiter(scheduler);
+
+    @After
+    public void tearDown() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void limitsConcurrentRequests() throws Exception {
+        limiter.configure(0, 1);
+        limiter.acquire(false, 0);
+        CompletableFuture<Long> waiter = limiter.acquireAsync(false, 0);
+        assertFalse(waiter.isDone());
+
+        limiter.release();
+        waiter.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void grantsHighPriorityRequestsFirst() throws Exception {
+        limiter.configure(0, 1);
+        limiter.acquire(false, 0);
+        CompletableFuture<Long> lowPriority = limiter.acquireAsync(false, 0);
+        CompletableFuture<Long> highPriority = limiter.acquireAsync(true, 0);
+
+        limiter.release();
+        highPriority.get(1, TimeUnit.SECONDS);
+        assertFalse(lowPriority.isDone());
+
+        limiter.release();
+        lowPriority.get(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void timesOutWaitingRequests() throws Exception {
+        limiter.configure(0, 1);
+        limiter.acquire(false, 0);
+        try {
+            limiter.acquire(false, 50);
+            fail();
+        } catch (ConnectionPoolTimeoutException e) {
+            // The request was never sent, so it is safe to retry
+        }
+
+        // The timed out request does not hold on to a permit
+        limiter.release();
+        limiter.acquire(false, 1000);
+    }
+
+    @Test
+    public void limitsRequestRate() throws Exception {
+        limiter.configure(50, 0);
+        long startTime = System.nanoTime();
+        for (int i = 0; i < 25; i++) {
+            limiter.acquire(false, 0);
+            limiter.release();
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        assertTrue(String.format("elapsed=%d ms", elapsed), elapsed >= 400);
+    }
+
+    @Test
+    public void holdsThePermitUntilTheResponseIsRead() throws Exception {
+        limiter.configure(0, 1);
+        HttpClient httpClient = new LimitedHttpClient(new StubHttpClient(request -> {
+            BasicHttpResponse response = StubHttpClient.response(HttpStatus.SC_OK);
+            response.setEntity(new StringEntity("console output", StandardCharsets.UTF_8));
+            return response;
+        }), limiter, new JenkinsMetrics());
+
+        CloseableHttpResponse response = httpClient.execute(new HttpGet("http://jenkins.example.com/job/a/1/consoleText"));
+        CompletableFuture<Long> waiter = limiter.acquireAsync(false, 0);
+        assertFalse(waiter.isDone());
+
+        assertEquals("console output", EntityUtils.toString(response.getEntity()));
+        waiter.get(1, TimeUnit.SECONDS);
+        limiter.release();
+
+        // Closing the response after reading it does not release the permit twice
+        response.close();
+        limiter.acquire(false, 0);
+        assertFalse(limiter.acquireAsync(false, 0).isDone());
+    }
+
+    @Test
+    public void releasesThePermitWhenTheResponseIsClosedUnread() throws Exception {
+        limiter.configure(0, 1);
+        AsyncHttpClient httpClient = new LimitedAsyncHttpClient(request -> {
+            BasicHttpResponse response = StubHttpClient.response(HttpStatus.SC_OK);
+            response.setEntity(new StringEntity("console output", StandardCharsets.UTF_8));
+            return CompletableFuture.completedFuture(response);
+        }, limiter, new JenkinsMetrics());
+
+        HttpResponse response = httpClient.execute(new HttpGet("http://jenkins.example.com/job/a/1/consoleText")).get(1, TimeUnit.SECONDS);
+        CompletableFuture<Long> waiter = limiter.acquireAsync(false, 0);
+        assertFalse(waiter.isDone());
+
+        ((Closeable) response).close();
+        waiter.get(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,37 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.dtolabs.rundeck.plugins.PluginLogger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class RecordingPluginLogger implements PluginLogger {
+
+    private final List<String> messages = new ArrayList<>();
+
+    public synchronized void log(int level, String message) {
+        messages.add(message);
+    }
+
+    public void log(int level, String message, Map eventMeta) {
+        log(level, message);
+    }
+
+    public void event(String eventType, String message, Map eventMeta) {
+        log(0, message);
+    }
+
+    public synchronized List<String> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    public synchronized List<String> getLines() {
+        List<String> lines = new ArrayList<>();
+        for (String message : messages) {
+            lines.addAll(Arrays.asList(message.split("\n", -1)));
+        }
+        return lines;
+    }
+}
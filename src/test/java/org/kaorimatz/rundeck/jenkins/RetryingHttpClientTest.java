@@ -0,0 +1,111 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpStatus;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class RetryingHttpClientTest {
+
+    private static final URI BASE_URI = URI.create("http://jenkins.example.com");
+
+    private final JenkinsCircuitBreaker circuitBreaker = new JenkinsCircuitBreaker(BASE_URI);
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private RetryingHttpClient createHttpClient(int maxRetries, Integer... statusCodes) {
+        Deque<Integer> responses = new ArrayDeque<>(Arrays.asList(statusCodes));
+        HttpClient httpClient = new StubHttpClient(request -> {
+            requests.incrementAndGet();
+            int statusCode = responses.size() > 1 ? responses.poll() : responses.peek();
+            return StubHttpClient.response(statusCode);
+        });
+        return createHttpClient(maxRetries, httpClient);
+    }
+
+    private RetryingHttpClient createHttpClient(int maxRetries, HttpClient httpClient) {
+        return new RetryingHttpClient(httpClient, new JenkinsRetryPolicy(circuitBreaker, maxRetries), null, new JenkinsMetrics());
+    }
+
+    @Test
+    public void leavesTheBackoffToTheCaller() throws Exception {
+        RetryingHttpClient httpClient = createHttpClient(1, HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_OK);
+        long start = System.currentTimeMillis();
+        try {
+            httpClient.execute(new HttpGet(BASE_URI.resolve("/job/a/api/json")));
+            fail();
+        } catch (JenkinsUnavailableException e) {
+            assertTrue(e.getRetryAfterMillis() > 0);
+        }
+        // The backoff is not slept on the calling thread
+        assertTrue(System.currentTimeMillis() - start < 500);
+        assertEquals(1, requests.get());
+
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(BASE_URI.resolve("/job/a/api/json")))) {
+            assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        }
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void resendsRequestsOnStaleConnections() throws Exception {
+        HttpClient staleHttpClient = request -> {
+            if (requests.incrementAndGet() == 1) {
+                throw new NoHttpResponseException("The target server failed to respond");
+            }
+            return new StubHttpClient(r -> StubHttpClient.response(HttpStatus.SC_OK)).execute(request);
+        };
+        RetryingHttpClient httpClient = createHttpClient(0, staleHttpClient);
+        try (CloseableHttpResponse response = httpClient.execute(new HttpGet(BASE_URI.resolve("/job/a/api/json")))) {
+            assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        }
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void doesNotRetryTriggers() throws Exception {
+        RetryingHttpClient httpClient = createHttpClient(3, HttpStatus.SC_SERVICE_UNAVAILABLE, HttpStatus.SC_CREATED);
+        try (CloseableHttpResponse response = httpClient.execute(new HttpPost(BASE_URI.resolve("/job/a/build")))) {
+            assertEquals(HttpStatus.SC_SERVICE_UNAVAILABLE, response.getStatusLine().getStatusCode());
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void failsFastWhileTheCircuitBreakerIsOpen() throws Exception {
+        RetryingHttpClient httpClient = createHttpClient(0, HttpStatus.SC_OK);
+        for (int i = 0; i < 3; i++) {
+            circuitBreaker.recordFailure();
+        }
+        try {
+            httpClient.execute(new HttpGet(BASE_URI.resolve("/job/a/api/json")));
+            fail();
+        } catch (JenkinsUnavailableException e) {
+            assertEquals(0, requests.get());
+        }
+
+        // Aborting a build must not wait for Jenkins to come back
+        try (CloseableHttpResponse response = httpClient.execute(new HttpPost(BASE_URI.resolve("/job/a/1/stop")))) {
+            assertEquals(HttpStatus.SC_OK, response.getStatusLine().getStatusCode());
+        }
+        assertEquals(1, requests.get());
+    }
+
+    @Test(expected = IOException.class)
+    public void givesUpAfterMaxRetries() throws Exception {
+        createHttpClient(0, HttpStatus.SC_BAD_GATEWAY).execute(new HttpGet(BASE_URI.resolve("/job/a/api/json")));
+    }
+}
@@ -0,0 +1,40 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.message.BasicHttpResponse;
+
+import java.util.function.Function;
+
+public class StubHttpClient implements HttpClient {
+
+    private final Function<HttpUriRequest, HttpResponse> handler;
+
+    public StubHttpClient(Function<HttpUriRequest, HttpResponse> handler) {
+        this.handler = handler;
+    }
+
+    public static BasicHttpResponse response(int statusCode) {
+        return new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, null);
+    }
+
+    @Override
+    public CloseableHttpResponse execute(HttpUriRequest request) {
+        return new StubHttpResponse(handler.apply(request));
+    }
+
+    private static final class StubHttpResponse extends BasicHttpResponse implements CloseableHttpResponse {
+
+        private StubHttpResponse(HttpResponse response) {
+            super(response.getStatusLine());
+            setHeaders(response.getAllHeaders());
+            setEntity(response.getEntity());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
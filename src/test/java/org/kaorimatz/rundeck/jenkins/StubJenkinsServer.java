@@ -0,0 +1,667 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+public class StubJenkinsServer implements Closeable {
+
+    private static final Pattern QUEUE_ITEM_PATTERN = Pattern.compile("/queue/item/(\\d+)/api/json");
+
+    private static final Pattern BUILD_PATTERN = Pattern.compile("((?:/job/[^/]+)+)/(\\d+)/(api/json|logText/progressiveText|stop)");
+
+    private static final Pattern ARTIFACT_PATTERN = Pattern.compile("((?:/job/[^/]+)+)/(\\d+)/artifact/(.+)");
+
+    private static final Pattern BYTE_RANGE_PATTERN = Pattern.compile("bytes=(\\d+)-");
+
+    private static final String ARTIFACT_PATH = "target/app.jar";
+
+    private static final String CHECKSUM_PATH = ARTIFACT_PATH + ".sha256";
+
+    private static final Pattern JOB_PATTERN = Pattern.compile("((?:/job/[^/]+)+)/api/json");
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("\\{(\\d+),(\\d+)}$");
+
+    private static final Pattern TRIGGER_PATTERN = Pattern.compile("((?:/job/[^/]+)+)/(build|buildWithParameters)");
+
+    private static final Pattern START_PATTERN = Pattern.compile("(?:^|&)start=(\\d+)");
+
+    private static final Pattern ID_PATTERN = Pattern.compile("(?:^|&)id=(\\d+)");
+
+    private static final String SESSION_COOKIE = "JSESSIONID.stub";
+
+    private static final int LINE_LENGTH = String.format("[stub] line %010d%n", 0).length();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong queueItemIds = new AtomicLong();
+
+    private final ConcurrentMap<Long, QueueEntry> queueEntries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, AtomicInteger> buildNumbers = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, BuildEntry> buildEntries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, String> crumbs = new ConcurrentHashMap<>();
+
+    private final Map<JenkinsEndpoint, LongAdder> requestCounts = new EnumMap<>(JenkinsEndpoint.class);
+
+    private final Map<JenkinsEndpoint, LongAdder> errorCounts = new EnumMap<>(JenkinsEndpoint.class);
+
+    private final AtomicInteger artifactTransferFailures = new AtomicInteger();
+
+    private volatile long latencyMillis;
+
+    private volatile long queueDelayMillis;
+
+    private volatile long buildDurationMillis = 10000;
+
+    private volatile int logLinesPerSecond = 100;
+
+    private volatile double errorRate;
+
+    private volatile String callbackParameter = "RUNDECK_CALLBACK_URL";
+
+    private volatile boolean crumbRequired;
+
+    private volatile String crumbRejection = "<html><body>Error 403 No valid crumb was included in the request</body></html>";
+
+    private volatile boolean compression = true;
+
+    private volatile int executors = 2;
+
+    private volatile byte[] artifact;
+
+    private volatile String artifactMd5;
+
+    private volatile String artifactSha256;
+
+    public StubJenkinsServer(int threads) throws IOException {
+        for (JenkinsEndpoint endpoint : JenkinsEndpoint.values()) {
+            requestCounts.put(endpoint, new LongAdder());
+            errorCounts.put(endpoint, new LongAdder());
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, String.format("stub-jenkins-server-%d", threadNumber.incrementAndGet()));
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "stub-jenkins-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return String.format("http://127.0.0.1:%d", server.getAddress().getPort());
+    }
+
+    public StubJenkinsServer setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+        return this;
+    }
+
+    public StubJenkinsServer setQueueDelayMillis(long queueDelayMillis) {
+        this.queueDelayMillis = queueDelayMillis;
+        return this;
+    }
+
+    public StubJenkinsServer setBuildDurationMillis(long buildDurationMillis) {
+        this.buildDurationMillis = buildDurationMillis;
+        return this;
+    }
+
+    public StubJenkinsServer setLogLinesPerSecond(int logLinesPerSecond) {
+        this.logLinesPerSecond = logLinesPerSecond;
+        return this;
+    }
+
+    public StubJenkinsServer setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    public StubJenkinsServer setCallbackParameter(String callbackParameter) {
+        this.callbackParameter = callbackParameter;
+        return this;
+    }
+
+    public StubJenkinsServer setCrumbRequired(boolean crumbRequired) {
+        this.crumbRequired = crumbRequired;
+        return this;
+    }
+
+    public StubJenkinsServer setCrumbRejection(String crumbRejection) {
+        this.crumbRejection = crumbRejection;
+        return this;
+    }
+
+    public StubJenkinsServer setCompression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public StubJenkinsServer setExecutors(int executors) {
+        this.executors = executors;
+        return this;
+    }
+
+    public StubJenkinsServer setArtifactBytes(int artifactBytes) {
+        if (artifactBytes <= 0) {
+            artifact = null;
+            return this;
+        }
+        byte[] bytes = new byte[artifactBytes];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (i % 251);
+        }
+        try {
+            artifactMd5 = toHex(MessageDigest.getInstance("MD5").digest(bytes));
+            artifactSha256 = toHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        artifact = bytes;
+        return this;
+    }
+
+    public StubJenkinsServer setArtifactTransferFailures(int artifactTransferFailures) {
+        this.artifactTransferFailures.set(artifactTransferFailures);
+        return this;
+    }
+
+    public void invalidateSessions() {
+        crumbs.clear();
+    }
+
+    public long getRequestCount(JenkinsEndpoint endpoint) {
+        return requestCounts.get(endpoint).sum();
+    }
+
+    public long getErrorCount(JenkinsEndpoint endpoint) {
+        return errorCounts.get(endpoint).sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream inputStream = exchange.getRequestBody()) {
+            byte[] buffer = new byte[8192];
+            while (inputStream.read(buffer) != -1) {
+                // Discard the request body so that the connection can be reused
+            }
+        }
+        String path = exchange.getRequestURI().getRawPath();
+        String query = exchange.getRequestURI().getRawQuery();
+        JenkinsEndpoint endpoint = JenkinsEndpoint.of(path);
+        requestCounts.get(endpoint).increment();
+        try {
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            errorCounts.get(endpoint).increment();
+            respond(exchange, 503, "text/plain", "Service Unavailable");
+            return;
+        }
+        if (crumbRequired && "POST".equals(exchange.getRequestMethod()) && !hasValidCrumb(exchange)) {
+            errorCounts.get(endpoint).increment();
+            respond(exchange, 403, "text/html", crumbRejection);
+            return;
+        }
+        switch (endpoint) {
+            case TRIGGER:
+                handleTrigger(exchange, path, query);
+                break;
+            case QUEUE_POLL:
+                handleQueueItem(exchange, path);
+                break;
+            case QUEUE_LIST:
+                handleQueue(exchange);
+                break;
+            case COMPUTER_LIST:
+                handleComputer(exchange);
+                break;
+            case JOB_POLL:
+                handleJob(exchange, path, query);
+                break;
+            case CANCEL:
+                handleCancel(exchange, query);
+                break;
+            case BUILD_POLL:
+            case LOG_POLL:
+            case STOP:
+                handleBuild(exchange, path, query);
+                break;
+            case ARTIFACT:
+                handleArtifact(exchange, path);
+                break;
+            case WEBHOOK:
+                respond(exchange, 200, "text/plain", "");
+                break;
+            case CRUMB:
+                handleCrumb(exchange);
+                break;
+            default:
+                respond(exchange, 404, "text/plain", "Not Found");
+                break;
+        }
+    }
+
+    private void handleCrumb(HttpExchange exchange) throws IOException {
+        if (!crumbRequired) {
+            respond(exchange, 404, "text/plain", "Not Found");
+            return;
+        }
+        String sessionId = getSessionId(exchange);
+        if (sessionId == null || !crumbs.containsKey(sessionId)) {
+            sessionId = UUID.randomUUID().toString();
+            crumbs.put(sessionId, UUID.randomUUID().toString());
+            exchange.getResponseHeaders().add("Set-Cookie", String.format("%s=%s; Path=/; HttpOnly", SESSION_COOKIE, sessionId));
+        }
+        respond(exchange, 200, "application/json", String.format("{\"crumb\":\"%s\",\"crumbRequestField\":\"Jenkins-Crumb\"}", crumbs.get(sessionId)));
+    }
+
+    private boolean hasValidCrumb(HttpExchange exchange) {
+        String sessionId = getSessionId(exchange);
+        String crumb = exchange.getRequestHeaders().getFirst("Jenkins-Crumb");
+        return sessionId != null && crumb != null && crumb.equals(crumbs.get(sessionId));
+    }
+
+    private static String getSessionId(HttpExchange exchange) {
+        List<String> cookies = exchange.getRequestHeaders().get("Cookie");
+        if (cookies == null) {
+            return null;
+        }
+        for (String header : cookies) {
+            for (String cookie : header.split(";")) {
+                String[] pair = cookie.trim().split("=", 2);
+                if (pair.length == 2 && pair[0].equals(SESSION_COOKIE)) {
+                    return pair[1];
+                }
+            }
+        }
+        return null;
+    }
+
+    private void handleTrigger(HttpExchange exchange, String path, String query) throws IOException {
+        Matcher matcher = TRIGGER_PATTERN.matcher(path);
+        if (!matcher.matches() || !"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 404, "text/plain", "Not Found");
+            return;
+        }
+        long queueItemId = queueItemIds.incrementAndGet();
+        String callbackUrl = getQueryParameter(query, callbackParameter);
+        QueueEntry queueEntry = new QueueEntry(toJobName(matcher.group(1)), System.currentTimeMillis() + queueDelayMillis, callbackUrl);
+        queueEntries.put(queueItemId, queueEntry);
+        scheduler.schedule(queueEntry::getBuildNumber, queueDelayMillis, TimeUnit.MILLISECONDS);
+        exchange.getResponseHeaders().add("Location", String.format("%s/queue/item/%d/", getBaseUrl(), queueItemId));
+        respond(exchange, 201, null, null);
+    }
+
+    private void handleQueueItem(HttpExchange exchange, String path) throws IOException {
+        Matcher matcher = QUEUE_ITEM_PATTERN.matcher(path);
+        QueueEntry queueEntry = matcher.matches() ? queueEntries.get(Long.parseLong(matcher.group(1))) : null;
+        if (queueEntry == null) {
+            respond(exchange, 404, "text/plain", "Not Found");
+            return;
+        }
+        int buildNumber = queueEntry.getBuildNumber();
+        if (buildNumber > 0) {
+            respond(exchange, 200, "application/json", String.format("{\"cancelled\":false,\"executable\":{\"number\":%d}}", buildNumber));
+        } else {
+            respond(exchange, 200, "application/json", String.format("{\"cancelled\":%b}", queueEntry.cancelled));
+        }
+    }
+
+    private void handleQueue(HttpExchange exchange) throws IOException {
+        StringJoiner items = new StringJoiner(",");
+        for (Map.Entry<Long, QueueEntry> entry : queueEntries.entrySet()) {
+            if (entry.getValue().getBuildNumber() == 0 && !entry.getValue().cancelled) {
+                items.add(String.format("{\"id\":%d}", entry.getKey()));
+            }
+        }
+        respond(exchange, 200, "application/json", String.format("{\"items\":[%s]}", items));
+    }
+
+    private void handleComputer(HttpExchange exchange) throws IOException {
+        int busyExecutors = 0;
+        for (BuildEntry buildEntry : buildEntries.values()) {
+            if (buildEntry.isBuilding()) {
+                busyExecutors++;
+            }
+        }
+        int totalExecutors = executors;
+        respond(exchange, 200, "application/json", String.format("{\"busyExecutors\":%d,\"totalExecutors\":%d}", Math.min(busyExecutors, totalExecutors), totalExecutors));
+    }
+
+    private void handleJob(HttpExchange exchange, String path, String query) throws IOException {
+        Matcher matcher = JOB_PATTERN.matcher(path);
+        if (!matcher.matches()) {
+            respond(exchange, 404, "text/plain", "Not Found");
+            return;
+        }
+        String jobName = toJobName(matcher.group(1));
+        String tree = getQueryParameter(query, "tree");
+        Matcher rangeMatcher = RANGE_PATTERN.matcher(tree != null ? tree : "");
+        boolean range = rangeMatcher.find();
+        int from = range ? Integer.parseInt(rangeMatcher.group(1)) : 0;
+        int to = range ? Integer.parseInt(rangeMatcher.group(2)) : Integer.MAX_VALUE;
+        AtomicInteger lastNumber = buildNumbers.get(jobName);
+        StringJoiner builds = new StringJoiner(",");
+        for (int number = lastNumber != null ? lastNumber.get() - from : 0, i = from; number > 0 && i < to; number--, i++) {
+            BuildEntry buildEntry = buildEntries.get(jobName + "#" + number);
+            if (buildEntry != null) {
+                builds.add(toJson(number, buildEntry));
+            }
+        }
+        respond(exchange, 200, "application/json", String.format("{\"builds\":[%s]}", builds));
+    }
+
+    private void handleCancel(HttpExchange exchange, String query) throws IOException {
+        Matcher matcher = ID_PATTERN.matcher(query != null ? query : "");
+        QueueEntry queueEntry = matcher.find() ? queueEntries.get(Long.parseLong(matcher.group(1))) : null;
+        if (queueEntry != null) {
+            queueEntry.cancel();
+        }
+        respond(exchange, 302, null, null);
+    }
+
+    private void handleBuild(HttpExchange exchange, String path, String query) throws IOException {
+        Matcher matcher = BUILD_PATTERN.matcher(path);
+        BuildEntry buildEntry = matcher.matches() ? buildEntries.get(toJobName(matcher.group(1)) + "#" + matcher.group(2)) : null;
+        if (buildEntry == null) {
+            respond(exchange, 404, "text/plain", "Not Found");
+            return;
+        }
+        switch (matcher.group(3)) {
+            case "api/json":
+                respond(exchange, 200, "application/json", toJson(Integer.parseInt(matcher.group(2)), buildEntry));
+                break;
+            case "logText/progressiveText":
+                Matcher startMatcher = START_PATTERN.matcher(query != null ? query : "");
+                long start = startMatcher.find() ? Long.parseLong(startMatcher.group(1)) : 0;
+                respondLogText(exchange, buildEntry, start);
+                break;
+            default:
+                buildEntry.stop();
+                respond(exchange, 302, null, null);
+                break;
+        }
+    }
+
+    private String toJson(int number, BuildEntry buildEntry) {
+        boolean building = buildEntry.isBuilding();
+        String result = building ? "null" : buildEntry.stopped ? "\"ABORTED\"" : "\"SUCCESS\"";
+        String artifacts = "";
+        if (artifact != null && !building) {
+            artifacts = String.format(",\"artifacts\":[{\"relativePath\":\"%s\",\"fileName\":\"app.jar\"},{\"relativePath\":\"%s\",\"fileName\":\"app.jar.sha256\"}]"
+                    + ",\"fingerprint\":[{\"fileName\":\"app.jar\",\"hash\":\"%s\"}]", ARTIFACT_PATH, CHECKSUM_PATH, artifactMd5);
+        }
+        return String.format("{\"number\":%d,\"building\":%b,\"result\":%s,\"timestamp\":%d,\"estimatedDuration\":%d%s}",
+                number, building, result, buildEntry.startTime, buildDurationMillis, artifacts);
+    }
+
+    private void handleArtifact(HttpExchange exchange, String path) throws IOException {
+        Matcher matcher = ARTIFACT_PATTERN.matcher(path);
+        BuildEntry buildEntry = matcher.matches() ? buildEntries.get(toJobName(matcher.group(1)) + "#" + matcher.group(2)) : null;
+        byte[] bytes = artifact;
+        if (buildEntry == null || bytes == null || buildEntry.isBuilding()) {
+            respond(exchange, 404, "text/plain", "Not Found");
+            return;
+        }
+        if (matcher.group(3).equals(CHECKSUM_PATH)) {
+            respond(exchange, 200, "text/plain", String.format("%s  app.jar%n", artifactSha256));
+            return;
+        } else if (!matcher.group(3).equals(ARTIFACT_PATH)) {
+            respond(exchange, 404, "text/plain", "Not Found");
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher rangeMatcher = BYTE_RANGE_PATTERN.matcher(range != null ? range : "");
+        int from = rangeMatcher.matches() ? (int) Math.min(Long.parseLong(rangeMatcher.group(1)), Integer.MAX_VALUE) : 0;
+        exchange.getResponseHeaders().add("Content-Type", "application/java-archive");
+        exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+        if (from >= bytes.length) {
+            exchange.getResponseHeaders().add("Content-Range", String.format("bytes */%d", bytes.length));
+            exchange.sendResponseHeaders(416, -1);
+            exchange.close();
+            return;
+        }
+        int statusCode = 200;
+        if (from > 0) {
+            statusCode = 206;
+            exchange.getResponseHeaders().add("Content-Range", String.format("bytes %d-%d/%d", from, bytes.length - 1, bytes.length));
+        }
+        // Drop some transfers halfway through, so that they have to be resumed
+        boolean drop = errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate
+                || artifactTransferFailures.getAndUpdate(failures -> Math.max(0, failures - 1)) > 0;
+        int to = drop ? from + (bytes.length - from) / 2 : bytes.length;
+        if (to < bytes.length) {
+            errorCounts.get(JenkinsEndpoint.ARTIFACT).increment();
+        }
+        OutputStream outputStream = getResponseBody(exchange, statusCode, bytes.length - from);
+        try {
+            outputStream.write(bytes, from, to - from);
+        } finally {
+            if (to == bytes.length) {
+                outputStream.close();
+            } else {
+                // Closing before all the bytes are written drops the connection
+                exchange.close();
+            }
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : bytes) {
+            builder.append(String.format("%02x", b));
+        }
+        return builder.toString();
+    }
+
+    private void respondLogText(HttpExchange exchange, BuildEntry buildEntry, long start) throws IOException {
+        boolean building = buildEntry.isBuilding();
+        long size = buildEntry.getLogLines() * LINE_LENGTH;
+        long from = Math.min(start, size);
+        exchange.getResponseHeaders().add("Content-Type", "text/plain;charset=UTF-8");
+        exchange.getResponseHeaders().add("X-Text-Size", String.valueOf(size));
+        if (building) {
+            exchange.getResponseHeaders().add("X-More-Data", "true");
+        }
+        long length = size - from;
+        if (length == 0 || "HEAD".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        try (OutputStream outputStream = getResponseBody(exchange, 200, length)) {
+            for (long line = from / LINE_LENGTH; line * LINE_LENGTH < size; line++) {
+                byte[] bytes = String.format("[stub] line %010d%n", line).getBytes(StandardCharsets.UTF_8);
+                int offset = (int) Math.max(0, from - line * LINE_LENGTH);
+                outputStream.write(bytes, offset, bytes.length - offset);
+            }
+        }
+    }
+
+    private void respond(HttpExchange exchange, int statusCode, String contentType, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            exchange.close();
+            return;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        if (bytes.length == 0) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            exchange.close();
+            return;
+        }
+        try (OutputStream outputStream = getResponseBody(exchange, statusCode, bytes.length)) {
+            outputStream.write(bytes);
+        }
+    }
+
+    private OutputStream getResponseBody(HttpExchange exchange, int statusCode, long length) throws IOException {
+        String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        if (!compression || acceptEncoding == null || !acceptEncoding.contains("gzip")) {
+            exchange.sendResponseHeaders(statusCode, length);
+            return exchange.getResponseBody();
+        }
+        // Like Jenkins, compress on the fly and send the result chunked
+        exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(statusCode, 0);
+        return new GZIPOutputStream(exchange.getResponseBody());
+    }
+
+    private static String getQueryParameter(String query, String name) throws IOException {
+        if (query == null) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int index = parameter.indexOf('=');
+            if (index > 0 && URLDecoder.decode(parameter.substring(0, index), "UTF-8").equals(name)) {
+                return URLDecoder.decode(parameter.substring(index + 1), "UTF-8");
+            }
+        }
+        return null;
+    }
+
+    private void sendCallback(String callbackUrl) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(callbackUrl).openConnection();
+            connection.setRequestMethod("POST");
+            connection.getResponseCode();
+            connection.disconnect();
+        } catch (IOException e) {
+            // Jenkins jobs are expected to ignore callback failures as well
+        }
+    }
+
+    private static String toJobName(String jobPath) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        for (String segment : jobPath.substring("/job/".length()).split("/job/")) {
+            if (builder.length() > 0) {
+                builder.append('/');
+            }
+            builder.append(URLDecoder.decode(segment, "UTF-8"));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    private final class QueueEntry {
+
+        private final String jobName;
+
+        private final long readyTime;
+
+        private final String callbackUrl;
+
+        private volatile boolean cancelled;
+
+        private volatile int buildNumber;
+
+        private QueueEntry(String jobName, long readyTime, String callbackUrl) {
+            this.jobName = jobName;
+            this.readyTime = readyTime;
+            this.callbackUrl = callbackUrl;
+        }
+
+        private synchronized int getBuildNumber() {
+            if (buildNumber == 0 && !cancelled && System.currentTimeMillis() >= readyTime) {
+                int number = buildNumbers.computeIfAbsent(jobName, name -> new AtomicInteger()).incrementAndGet();
+                buildEntries.put(jobName + "#" + number, new BuildEntry(System.currentTimeMillis()));
+                if (callbackUrl != null) {
+                    scheduler.schedule(() -> sendCallback(callbackUrl), buildDurationMillis, TimeUnit.MILLISECONDS);
+                }
+                buildNumber = number;
+            }
+            return buildNumber;
+        }
+
+        private synchronized void cancel() {
+            if (buildNumber == 0) {
+                cancelled = true;
+            }
+        }
+    }
+
+    private final class BuildEntry {
+
+        private final long startTime;
+
+        private volatile long endTime;
+
+        private volatile boolean stopped;
+
+        private BuildEntry(long startTime) {
+            this.startTime = startTime;
+            this.endTime = startTime + buildDurationMillis;
+        }
+
+        private boolean isBuilding() {
+            return System.currentTimeMillis() < endTime;
+        }
+
+        private long getLogLines() {
+            long elapsed = Math.min(System.currentTimeMillis(), endTime) - startTime;
+            return elapsed * logLinesPerSecond / 1000;
+        }
+
+        private void stop() {
+            long now = System.currentTimeMillis();
+            if (now < endTime) {
+                endTime = now;
+                stopped = true;
+            }
+        }
+    }
+}
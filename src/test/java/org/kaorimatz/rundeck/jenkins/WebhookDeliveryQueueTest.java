@@ -0,0 +1,145 @@
+package org.kaorimatz.rundeck.jenkins;
+
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WebhookDeliveryQueueTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private StubJenkinsServer server;
+
+    private JenkinsClient jenkinsClient;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new StubJenkinsServer(4);
+        jenkinsClient = new DefaultJenkinsClientBuilder(server.getBaseUrl()).build();
+    }
+
+    @After
+    public void tearDown() {
+        server.close();
+    }
+
+    @Test
+    public void deliversEventsAndRemovesTheirSpoolFiles() throws Exception {
+        Path spoolDirectory = temporaryFolder.getRoot().toPath();
+        WebhookDeliveryQueue queue = new WebhookDeliveryQueue();
+
+        for (int i = 0; i < 3; i++) {
+            assertTrue(queue.submit(server.getBaseUrl(), jenkinsClient, createDocument(i), spoolDirectory, TimeUnit.MINUTES.toMillis(1)));
+        }
+
+        awaitRequests(JenkinsEndpoint.WEBHOOK, 3);
+        awaitEmpty(spoolDirectory);
+    }
+
+    @Test
+    public void retriesUndeliveredEvents() throws Exception {
+        WebhookDeliveryQueue queue = new WebhookDeliveryQueue();
+        assertTrue(queue.submit(server.getBaseUrl(), jenkinsClient, createDocument(0), null, TimeUnit.MINUTES.toMillis(1)));
+        awaitRequests(JenkinsEndpoint.WEBHOOK, 1);
+
+        server.setErrorRate(1);
+        assertTrue(queue.submit(server.getBaseUrl(), jenkinsClient, createDocument(1), null, TimeUnit.MINUTES.toMillis(1)));
+        await(() -> server.getErrorCount(JenkinsEndpoint.WEBHOOK) == 1);
+        server.setErrorRate(0);
+
+        awaitRequests(JenkinsEndpoint.WEBHOOK, 3);
+        assertEquals(1, server.getErrorCount(JenkinsEndpoint.WEBHOOK));
+    }
+
+    @Test
+    public void recoversEventsSpooledForAnyJenkins() throws Exception {
+        Path spoolDirectory = temporaryFolder.getRoot().toPath();
+        try (StubJenkinsServer otherServer = new StubJenkinsServer(4)) {
+            spool(spoolDirectory, "1-a", server.getBaseUrl(), createDocument(0));
+            spool(spoolDirectory, "2-b", otherServer.getBaseUrl(), createDocument(1));
+            WebhookDeliveryQueue queue = new WebhookDeliveryQueue();
+
+            assertTrue(queue.submit(server.getBaseUrl(), jenkinsClient, createDocument(2), spoolDirectory, TimeUnit.MINUTES.toMillis(1)));
+
+            awaitRequests(JenkinsEndpoint.WEBHOOK, 2);
+            await(() -> otherServer.getRequestCount(JenkinsEndpoint.WEBHOOK) >= 1);
+            assertEquals(1, otherServer.getRequestCount(JenkinsEndpoint.WEBHOOK));
+            awaitEmpty(spoolDirectory);
+        }
+    }
+
+    @Test
+    public void doesNotHoldUpEventsBehindASlowJenkins() throws Exception {
+        try (StubJenkinsServer slowServer = new StubJenkinsServer(4)) {
+            slowServer.setLatencyMillis(TimeUnit.SECONDS.toMillis(2));
+            JenkinsClient slowClient = new DefaultJenkinsClientBuilder(slowServer.getBaseUrl()).build();
+            WebhookDeliveryQueue queue = new WebhookDeliveryQueue();
+            for (int i = 0; i < 4; i++) {
+                assertTrue(queue.submit(slowServer.getBaseUrl(), slowClient, createDocument(i), null, TimeUnit.MINUTES.toMillis(1)));
+            }
+
+            long start = System.nanoTime();
+            assertTrue(queue.submit(server.getBaseUrl(), jenkinsClient, createDocument(4), null, TimeUnit.MINUTES.toMillis(1)));
+            awaitRequests(JenkinsEndpoint.WEBHOOK, 1);
+
+            assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < TimeUnit.SECONDS.toMillis(2));
+        }
+    }
+
+    private static void spool(Path spoolDirectory, String name, String baseUrl, Document document) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("baseUrl", baseUrl);
+        properties.setProperty("document", document.asXML());
+        try (OutputStream outputStream = Files.newOutputStream(spoolDirectory.resolve(name + ".properties"))) {
+            properties.store(outputStream, null);
+        }
+    }
+
+    static Document createDocument(int id) {
+        Document document = DocumentHelper.createDocument();
+        document.addElement("notification").addElement("executions").addElement("execution").addAttribute("id", String.valueOf(id));
+        return document;
+    }
+
+    private void awaitRequests(JenkinsEndpoint endpoint, long count) throws InterruptedException {
+        await(() -> server.getRequestCount(endpoint) >= count);
+        assertEquals(count, server.getRequestCount(endpoint));
+    }
+
+    static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    static void awaitEmpty(Path directory) throws Exception {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (System.currentTimeMillis() < deadline) {
+            try (Stream<Path> files = Files.list(directory)) {
+                if (!files.anyMatch(Files::isRegularFile)) {
+                    return;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError(String.format("Spool files left in %s", directory));
+    }
+}